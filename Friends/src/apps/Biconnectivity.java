@@ -0,0 +1,237 @@
+package apps;
+
+import java.util.Arrays;
+
+/**
+ * Finds the articulation points (connectors), bridges and biconnected components of a graph in
+ * one depth-first pass (Hopcroft and Tarjan). The depth-first search keeps its own stack of
+ * people in an int array instead of recursing, so chains of any length are fine, and all state
+ * is kept in primitive arrays indexed by person number or by position in the rows of friends.
+ *
+ * For each person, dfsnum is the order in which the search first reached them, and back is the
+ * smallest dfsnum reachable from their subtree through at most one edge back up the tree. A
+ * person p with a child v such that back[v] >= dfsnum[p] separates v's subtree from the rest,
+ * and if back[v] > dfsnum[p] the edge (p, v) is a bridge. The root of a search is a connector if
+ * it has more than one child.
+ *
+ * Components are made up from the edges of the graph, so a person with no friends is in none.
+ */
+public class Biconnectivity {
+
+	// graph examined
+	private final GraphView g;
+
+	// articulation points, as a bitset over person numbers
+	private final long[] articulation;
+
+	// number of articulation points
+	private int articulationCount;
+
+	// bridges, as pairs of person numbers back to back
+	private int[] bridges;
+
+	// number of bridges
+	private int bridgeCount;
+
+	// people of each component, back to back: component c runs from componentOffsets[c] up to componentOffsets[c+1]
+	private int[] componentOffsets, componentPeople;
+
+	// number of components
+	private int componentCount;
+
+	/**
+	 * Examines a graph.
+	 *
+	 * @param g Graph
+	 */
+	public Biconnectivity(GraphView g) {
+		this.g = g;
+		int n = g.size();
+		articulation = new long[(n + 63) >>> 6];
+		bridges = new int[16];
+		componentOffsets = new int[16];
+		componentPeople = new int[16];
+		run();
+	}
+
+	private void run() {
+		int n = g.size();
+		int[] dfsnum = new int[n]; // 0 until reached
+		int[] back = new int[n];
+		int[] parent = new int[n];
+		int[] next = new int[n]; // next position in each person's row to look at
+		int[] treeEdge = new int[n]; // position in neighbors of the edge each person was reached by
+		boolean[] skippedParent = new boolean[n]; // true once the edge back to the parent was skipped
+		int[] stack = new int[n];
+		int[] edges = new int[16]; // positions in neighbors of the edges of the open components
+		int edgeCount = 0;
+		int[] stamp = new int[n]; // last component each person was added to, plus one, so 0 is none
+		int counter = 0;
+
+		for (int root = 0; root < n; root++) {
+			if (dfsnum[root] != 0) {
+				continue;
+			}
+			int top = 0;
+			stack[top++] = root;
+			dfsnum[root] = back[root] = ++counter;
+			parent[root] = -1;
+			next[root] = g.offset(root);
+			int rootChildren = 0;
+
+			while (top > 0) {
+				int v = stack[top-1];
+				if (next[v] < g.offset(v+1)) {
+					int e = next[v]++;
+					int w = g.neighbor(e);
+					if (w == parent[v] && !skippedParent[v]) {
+						// The tree edge back to the parent; any other edge to it is a real cycle
+						skippedParent[v] = true;
+					} else if (dfsnum[w] == 0) {
+						// Tree edge, go down to w
+						if (edgeCount == edges.length) {
+							edges = Arrays.copyOf(edges, edgeCount*2);
+						}
+						edges[edgeCount++] = e;
+						parent[w] = v;
+						treeEdge[w] = e;
+						dfsnum[w] = back[w] = ++counter;
+						next[w] = g.offset(w);
+						stack[top++] = w;
+						if (v == root) {
+							rootChildren++;
+						}
+					} else if (dfsnum[w] < dfsnum[v]) {
+						// Back edge up to an ancestor. Edges down to descendants were seen from the other end already
+						if (edgeCount == edges.length) {
+							edges = Arrays.copyOf(edges, edgeCount*2);
+						}
+						edges[edgeCount++] = e;
+						back[v] = Math.min(back[v], dfsnum[w]);
+					}
+				} else {
+					// Done with v, go back up to its parent
+					top--;
+					int p = parent[v];
+					if (p < 0) {
+						continue;
+					}
+					back[p] = Math.min(back[p], back[v]);
+					if (back[v] >= dfsnum[p]) {
+						// p separates v's subtree: unless p is the root with one child, p is a connector
+						if (p != root || rootChildren > 1) {
+							articulation[p >>> 6] |= 1L << p;
+						}
+						// The edges down to v's tree edge on the edge stack make up one component. Everyone
+						// in it but p was reached by one of these edges, so their far ends are enough
+						int c = addComponent();
+						addPerson(p, stamp, c);
+						do {
+							addPerson(g.neighbor(edges[--edgeCount]), stamp, c);
+						} while (edges[edgeCount] != treeEdge[v]);
+						if (back[v] > dfsnum[p]) {
+							addBridge(p, v);
+						}
+					}
+				}
+			}
+		}
+		for (long word : articulation) {
+			articulationCount += Long.bitCount(word);
+		}
+	}
+
+	private int addComponent() {
+		if (componentCount + 2 > componentOffsets.length) {
+			componentOffsets = Arrays.copyOf(componentOffsets, componentOffsets.length*2);
+		}
+		componentOffsets[componentCount+1] = componentOffsets[componentCount];
+		return componentCount++;
+	}
+
+	private void addPerson(int v, int[] stamp, int c) {
+		if (stamp[v] == c + 1) {
+			return; // Already in this component
+		}
+		stamp[v] = c + 1;
+		int at = componentOffsets[c+1];
+		if (at == componentPeople.length) {
+			componentPeople = Arrays.copyOf(componentPeople, at*2);
+		}
+		componentPeople[at] = v;
+		componentOffsets[c+1] = at + 1;
+	}
+
+	private void addBridge(int u, int v) {
+		if (2*bridgeCount + 2 > bridges.length) {
+			bridges = Arrays.copyOf(bridges, bridges.length*2);
+		}
+		bridges[2*bridgeCount] = u;
+		bridges[2*bridgeCount+1] = v;
+		bridgeCount++;
+	}
+
+	/**
+	 * Tells if a person is an articulation point (connector).
+	 *
+	 * @param v Person number
+	 * @return True if removing v leaves more components than before
+	 */
+	public boolean isArticulationPoint(int v) {
+		return (articulation[v >>> 6] & 1L << v) != 0;
+	}
+
+	/**
+	 * Returns all articulation points.
+	 *
+	 * @return Person numbers, in increasing order
+	 */
+	public int[] articulationPoints() {
+		int[] points = new int[articulationCount];
+		int count = 0;
+		for (int i = 0; i < articulation.length; i++) {
+			for (long word = articulation[i]; word != 0; word &= word - 1) {
+				points[count++] = i << 6 | Long.numberOfTrailingZeros(word);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Returns the number of bridges.
+	 *
+	 * @return Number of bridges
+	 */
+	public int bridgeCount() {
+		return bridgeCount;
+	}
+
+	/**
+	 * Returns a bridge, an edge whose removal leaves more components than before.
+	 *
+	 * @param b Bridge number, from 0 to bridgeCount()-1
+	 * @return The two people of the bridge, parent in the search first
+	 */
+	public int[] bridge(int b) {
+		return new int[] {bridges[2*b], bridges[2*b+1]};
+	}
+
+	/**
+	 * Returns the number of biconnected components.
+	 *
+	 * @return Number of components
+	 */
+	public int componentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns the people of a biconnected component. Articulation points are in more than one.
+	 *
+	 * @param c Component number, from 0 to componentCount()-1
+	 * @return Person numbers
+	 */
+	public int[] component(int c) {
+		return Arrays.copyOfRange(componentPeople, componentOffsets[c], componentOffsets[c+1]);
+	}
+}
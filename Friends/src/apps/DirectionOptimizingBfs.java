@@ -0,0 +1,259 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Breadth-first search that switches direction by level (Beamer's direction-optimizing BFS).
+ * While the frontier is small, each frontier person looks at their friends (top-down). Once the
+ * friend lists of the frontier hold more than about 1/ALPHA of the friend lists still unexplored,
+ * the search goes bottom-up instead: each person not yet reached scans their own friends for any
+ * one in the frontier, kept as a bitset, and stops at the first found. In a social graph the
+ * middle levels hold most people, and bottom-up steps skip most of their edges. When the frontier
+ * shrinks below 1/BETA of all people, the search goes top-down again.
+ *
+ * An engine keeps its arrays from search to search, so it allocates nothing per query, and a
+ * search clears only the people the last one reached, so a short query costs only what it
+ * explores. It is not safe to use from more than one thread at a time; make one engine per thread.
+ */
+public class DirectionOptimizingBfs {
+
+	/**
+	 * Go bottom-up when the frontier's edges exceed the unexplored edges divided by this.
+	 */
+	static final int ALPHA = 14;
+
+	/**
+	 * Go back top-down when the frontier has fewer people than all people divided by this.
+	 */
+	static final int BETA = 24;
+
+	// graph searched
+	private final Graph g;
+
+	// distance of each person from the source, -1 if not reached
+	private final int[] dist;
+
+	// person each was reached from, -1 if not reached; the source is its own parent
+	private final int[] parent;
+
+	// people at the current level, and at the next
+	private int[] frontier, next;
+
+	// current frontier as a bitset, only filled in for bottom-up steps
+	private final long[] frontierBits;
+
+	// everyone the last search reached, in the order reached, so the next can clear just them
+	private final int[] reached;
+	private int reachedCount;
+
+	// source of the last search, -1 if none yet
+	private int source = -1;
+
+	// number of levels done bottom-up in the last search
+	private int bottomUpLevels;
+
+	/**
+	 * Makes an engine for a graph.
+	 *
+	 * @param g Graph to search
+	 */
+	public DirectionOptimizingBfs(Graph g) {
+		this.g = g;
+		int n = g.size();
+		dist = new int[n];
+		parent = new int[n];
+		frontier = new int[n];
+		next = new int[n];
+		frontierBits = new long[(n + 63) >>> 6];
+		reached = new int[n];
+		Arrays.fill(dist, -1);
+		Arrays.fill(parent, -1);
+	}
+
+	/**
+	 * Searches from a person, reaching everyone who can be reached.
+	 *
+	 * @param source Person number to search from
+	 */
+	public void search(int source) {
+		search(source, -1);
+	}
+
+	/**
+	 * Searches from a person until a target is reached, or everyone who can be reached is.
+	 * Distances are only known up to the target's level afterwards.
+	 *
+	 * @param source Person number to search from
+	 * @param target Person number to stop at, -1 to search everything
+	 */
+	public void search(int source, int target) {
+		int n = g.size();
+		for (int k = 0; k < reachedCount; k++) {
+			dist[reached[k]] = -1;
+			parent[reached[k]] = -1;
+		}
+		this.source = source;
+		bottomUpLevels = 0;
+		dist[source] = 0;
+		parent[source] = source;
+		reached[0] = source;
+		reachedCount = 1;
+		frontier[0] = source;
+		int size = 1;
+		long frontierEdges = g.degree(source);
+		long unexploredEdges = g.neighbors.length - frontierEdges;
+		boolean bottomUp = false;
+
+		for (int level = 0; size > 0 && (target < 0 || dist[target] < 0); level++) {
+			if (!bottomUp && frontierEdges > unexploredEdges / ALPHA) {
+				bottomUp = true;
+			} else if (bottomUp && size < n / BETA) {
+				bottomUp = false;
+			}
+			int count = bottomUp ? bottomUpStep(size, level) : topDownStep(size, level);
+			if (bottomUp) {
+				bottomUpLevels++;
+			}
+			frontierEdges = 0;
+			for (int k = 0; k < count; k++) {
+				frontierEdges += g.degree(next[k]);
+			}
+			unexploredEdges -= frontierEdges;
+			System.arraycopy(next, 0, reached, reachedCount, count);
+			reachedCount += count;
+			int[] t = frontier;
+			frontier = next;
+			next = t;
+			size = count;
+		}
+	}
+
+	/**
+	 * Expands the frontier from its own friend lists.
+	 *
+	 * @return number of people in the next level
+	 */
+	private int topDownStep(int size, int level) {
+		int count = 0;
+		for (int k = 0; k < size; k++) {
+			int v = frontier[k];
+			for (int e = g.offsets[v]; e < g.offsets[v+1]; e++) {
+				int w = g.neighbors[e];
+				if (dist[w] < 0) {
+					dist[w] = level + 1;
+					parent[w] = v;
+					next[count++] = w;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Lets every person not reached yet look for a friend in the frontier.
+	 *
+	 * @return number of people in the next level
+	 */
+	private int bottomUpStep(int size, int level) {
+		for (int k = 0; k < size; k++) {
+			frontierBits[frontier[k] >>> 6] |= 1L << frontier[k];
+		}
+		int count = 0;
+		for (int w = 0; w < dist.length; w++) {
+			if (dist[w] >= 0) {
+				continue;
+			}
+			for (int e = g.offsets[w]; e < g.offsets[w+1]; e++) {
+				int v = g.neighbors[e];
+				if ((frontierBits[v >>> 6] & 1L << v) != 0) {
+					dist[w] = level + 1;
+					parent[w] = v;
+					next[count++] = w;
+					break; // One parent is enough, skip the rest of the friends
+				}
+			}
+		}
+		for (int k = 0; k < size; k++) {
+			frontierBits[frontier[k] >>> 6] = 0;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the distance of a person from the source of the last search.
+	 *
+	 * @param v Person number
+	 * @return Number of friendships on a shortest chain, -1 if not reached
+	 */
+	public int distance(int v) {
+		return dist[v];
+	}
+
+	/**
+	 * Returns the person another was reached from in the last search.
+	 *
+	 * @param v Person number
+	 * @return Parent on a shortest chain from the source, -1 if not reached
+	 */
+	public int parent(int v) {
+		return parent[v];
+	}
+
+	/**
+	 * Returns the number of levels the last search did bottom-up.
+	 *
+	 * @return Number of bottom-up levels
+	 */
+	public int bottomUpLevels() {
+		return bottomUpLevels;
+	}
+
+	/**
+	 * Returns the distance between two people.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return Number of friendships on a shortest chain, -1 if there is none or a name is unknown
+	 */
+	public int distance(String p1, String p2) {
+		Integer v1 = g.map.get(p1), v2 = g.map.get(p2);
+		if (v1 == null || v2 == null) {
+			return -1;
+		}
+		search(v1, v2);
+		return dist[v2];
+	}
+
+	/**
+	 * Tells if there is a chain between two people.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return True if p2 can be reached from p1
+	 */
+	public boolean reachable(String p1, String p2) {
+		return distance(p1, p2) >= 0;
+	}
+
+	/**
+	 * Finds a shortest chain between two people, as Friends.shortestChain does.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return Names from p1 to p2, null if there is no chain or a name is unknown
+	 */
+	public ArrayList<String> chain(String p1, String p2) {
+		if (distance(p1, p2) < 0) {
+			return null;
+		}
+		ArrayList<String> chain = new ArrayList<>();
+		for (int v = g.map.get(p2); v != source; v = parent[v]) {
+			chain.add(g.names[v]);
+		}
+		chain.add(g.names[source]);
+		Collections.reverse(chain);
+		return chain;
+	}
+}
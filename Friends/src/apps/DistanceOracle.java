@@ -0,0 +1,395 @@
+package apps;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers "how far apart are these two people" from distances to a few landmark people,
+ * precomputed by one breadth-first search from each landmark. By the triangle inequality, for
+ * every landmark l reaching both u and v,
+ *
+ *   |d(l,u) - d(l,v)|  <=  d(u,v)  <=  d(l,u) + d(l,v)
+ *
+ * so the best bounds over all landmarks cost one pass over u's and v's landmark distances. A
+ * landmark that reaches one of them but not the other shows there is no chain at all.
+ *
+ * Distances are stored person by person, so the landmark distances of one person are side by
+ * side, in bytes if every distance fits in one, else in chars (16 bits), else in ints. Each
+ * search's distances are stored as soon as it finishes, widening the table if they do not fit,
+ * so at most one int per person per search running is held besides the table.
+ *
+ * distance() finds the exact distance with a breadth-first search from both ends, which stops
+ * once the levels searched add up to the upper bound, and drops anyone whose distance from their
+ * end plus the lower bound from them to the other end exceeds it, since no chain through them
+ * can be a shortest one.
+ */
+public class DistanceOracle {
+
+	/**
+	 * How landmarks are picked.
+	 */
+	public enum Selection {
+		/** The people with the most friends, who tend to be central */
+		DEGREE,
+		/** People picked at random */
+		RANDOM
+	}
+
+	/**
+	 * Upper bound returned when no landmark reaches both people.
+	 */
+	public static final int UNKNOWN = Integer.MAX_VALUE;
+
+	// graph examined
+	private final Graph g;
+
+	// landmark person numbers
+	private final int[] landmarks;
+
+	// distance from landmark l to person v at v*landmarks.length + l, all ones if not reached;
+	// only one of the three is used, the narrowest every distance fits in
+	private final byte[] bytes;
+	private final char[] chars;
+	private final int[] ints;
+
+	// search work spaces: marks, queue and the last stamp used, pooled between searches
+	private final ScratchPool<int[][]> scratch;
+
+	/**
+	 * Picks landmarks and searches from each, in parallel.
+	 *
+	 * @param g Graph
+	 * @param count Number of landmarks, at most the number of people
+	 * @param selection How to pick them
+	 * @param seed Seed for random picks, and for breaking degree ties
+	 * @param pool Pool to search in
+	 */
+	public DistanceOracle(Graph g, int count, Selection selection, long seed, ForkJoinPool pool) {
+		this.g = g;
+		int n = g.size();
+		count = Math.min(count, n);
+		long size = (long) n * count;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(count + " landmarks for " + n + " people do not fit in an array");
+		}
+		landmarks = pick(g, count, selection, seed);
+
+		// Search from each landmark, storing its distances as it finishes
+		Table table = new Table((int) size, count);
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				RecursiveAction[] searches = new RecursiveAction[landmarks.length];
+				for (int l = 0; l < landmarks.length; l++) {
+					int landmark = l;
+					searches[l] = new RecursiveAction() {
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						protected void compute() {
+							table.store(landmark, search(landmarks[landmark]));
+						}
+					};
+				}
+				invokeAll(searches);
+			}
+		});
+
+		bytes = table.bytes;
+		chars = table.chars;
+		ints = table.ints;
+		scratch = new ScratchPool<>(() -> new int[][] {new int[n], new int[n], new int[1]});
+	}
+
+	/**
+	 * Landmark distances while they are being stored, in the narrowest array every distance
+	 * stored so far fits in. Distances of -1 (not reached) are stored as all ones.
+	 */
+	private static final class Table {
+		final int count;
+		byte[] bytes;
+		char[] chars;
+		int[] ints;
+
+		Table(int size, int count) {
+			this.count = count;
+			bytes = new byte[size];
+		}
+
+		/**
+		 * Stores the distances from a landmark, first widening the table if one does not fit.
+		 */
+		synchronized void store(int l, int[] dist) {
+			int max = 0;
+			for (int d : dist) {
+				max = Math.max(max, d);
+			}
+			if (bytes != null && max >= 0xff) {
+				int size = bytes.length;
+				if (max < 0xffff) {
+					chars = new char[size];
+					for (int at = 0; at < size; at++) {
+						chars[at] = bytes[at] == -1 ? 0xffff : (char) (bytes[at] & 0xff);
+					}
+				} else {
+					ints = new int[size];
+					for (int at = 0; at < size; at++) {
+						ints[at] = bytes[at] == -1 ? -1 : bytes[at] & 0xff;
+					}
+				}
+				bytes = null;
+			}
+			if (chars != null && max >= 0xffff) {
+				ints = new int[chars.length];
+				for (int at = 0; at < ints.length; at++) {
+					ints[at] = chars[at] == 0xffff ? -1 : chars[at];
+				}
+				chars = null;
+			}
+			for (int v = 0; v < dist.length; v++) {
+				int at = v*count + l;
+				if (bytes != null) {
+					bytes[at] = (byte) dist[v]; // -1 is all ones
+				} else if (chars != null) {
+					chars[at] = (char) dist[v];
+				} else {
+					ints[at] = dist[v];
+				}
+			}
+		}
+	}
+
+	private static int[] pick(Graph g, int count, Selection selection, long seed) {
+		int n = g.size();
+		Integer[] people = new Integer[n];
+		for (int v = 0; v < n; v++) {
+			people[v] = v;
+		}
+		// Shuffle first, so degree ties are broken at random too
+		Random random = new Random(seed);
+		for (int i = n-1; i > 0; i--) {
+			int j = random.nextInt(i+1);
+			Integer t = people[i];
+			people[i] = people[j];
+			people[j] = t;
+		}
+		if (selection == Selection.DEGREE) {
+			Arrays.sort(people, (a, b) -> Integer.compare(g.degree(b), g.degree(a)));
+		}
+		int[] picked = new int[count];
+		for (int l = 0; l < count; l++) {
+			picked[l] = people[l];
+		}
+		return picked;
+	}
+
+	private int[] search(int source) {
+		int n = g.size();
+		int[] dist = new int[n];
+		Arrays.fill(dist, -1);
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		dist[source] = 0;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = g.offsets[v]; e < g.offsets[v+1]; e++) {
+				int w = g.neighbors[e];
+				if (dist[w] < 0) {
+					dist[w] = dist[v] + 1;
+					queue[tail++] = w;
+				}
+			}
+		}
+		return dist;
+	}
+
+	/**
+	 * Returns the distance from a landmark to a person.
+	 *
+	 * @return Distance, -1 if not reached
+	 */
+	private int dist(int v, int l) {
+		int at = v*landmarks.length + l;
+		if (bytes != null) {
+			return bytes[at] == -1 ? -1 : bytes[at] & 0xff;
+		} else if (chars != null) {
+			return chars[at] == 0xffff ? -1 : chars[at];
+		}
+		return ints[at];
+	}
+
+	/**
+	 * Returns the landmarks.
+	 *
+	 * @return Person numbers of the landmarks
+	 */
+	public int[] landmarks() {
+		return landmarks.clone();
+	}
+
+	/**
+	 * Returns a lower bound on the distance between two people.
+	 *
+	 * @param u First person number
+	 * @param v Second person number
+	 * @return At most the number of friendships on a shortest chain; -1 if there is certainly
+	 *         no chain
+	 */
+	public int lowerBound(int u, int v) {
+		if (u == v) {
+			return 0;
+		}
+		int lower = 1;
+		for (int l = 0; l < landmarks.length; l++) {
+			int du = dist(u, l), dv = dist(v, l);
+			if ((du < 0) != (dv < 0)) {
+				return -1; // The landmark reaches one but not the other
+			}
+			if (du >= 0) {
+				lower = Math.max(lower, Math.abs(du - dv));
+			}
+		}
+		return lower;
+	}
+
+	/**
+	 * Returns an upper bound on the distance between two people.
+	 *
+	 * @param u First person number
+	 * @param v Second person number
+	 * @return At least the number of friendships on a shortest chain; -1 if there is certainly
+	 *         no chain, UNKNOWN if no landmark reaches either
+	 */
+	public int upperBound(int u, int v) {
+		if (u == v) {
+			return 0;
+		}
+		int upper = UNKNOWN;
+		for (int l = 0; l < landmarks.length; l++) {
+			int du = dist(u, l), dv = dist(v, l);
+			if ((du < 0) != (dv < 0)) {
+				return -1;
+			}
+			if (du >= 0) {
+				upper = Math.min(upper, du + dv);
+			}
+		}
+		return upper;
+	}
+
+	/**
+	 * Finds the exact distance between two people, searching only where the bounds allow.
+	 *
+	 * @param u First person number
+	 * @param v Second person number
+	 * @return Number of friendships on a shortest chain, -1 if there is none
+	 */
+	public int distance(int u, int v) {
+		int lower = lowerBound(u, v), upper = upperBound(u, v);
+		if (lower == upper || lower < 0) {
+			return lower;
+		}
+
+		int[][] space = scratch.take();
+		int distance = searchBetween(u, v, upper, space);
+		scratch.give(space);
+		return distance;
+	}
+
+	/**
+	 * Searches from both ends for the distance between two people, no further than an upper bound.
+	 */
+	private int searchBetween(int u, int v, int upper, int[][] space) {
+		// Marked with stamps so the work space need not be cleared: the side from u marks with
+		// stamp, the side from v with stamp+1
+		int[] mark = space[0], queue = space[1];
+		if (space[2][0] >= Integer.MAX_VALUE - 2) {
+			Arrays.fill(mark, 0);
+			space[2][0] = 0;
+		}
+		int stamp = space[2][0] += 2;
+		// The queue holds u's side from the front and v's side from the back
+		int headU = 0, tailU = 0, headV = queue.length, tailV = queue.length;
+		queue[tailU++] = u;
+		mark[u] = stamp;
+		queue[--tailV] = v;
+		mark[v] = stamp + 1;
+		int levelU = 0, levelV = 0;
+		while (headU < tailU && tailV < headV) {
+			// No chain of levelU+levelV friendships or fewer, and upper is reached by one
+			if (levelU + levelV + 1 >= upper) {
+				return upper;
+			}
+			boolean fromU = tailU - headU <= headV - tailV;
+			int own = fromU ? stamp : stamp + 1, other = fromU ? stamp + 1 : stamp;
+			int target = fromU ? v : u;
+			int level = fromU ? levelU : levelV;
+			if (fromU) {
+				int end = tailU;
+				for (; headU < end; headU++) {
+					int x = queue[headU];
+					for (int e = g.offsets[x]; e < g.offsets[x+1]; e++) {
+						int w = g.neighbors[e];
+						if (mark[w] == other) {
+							return levelU + levelV + 1;
+						}
+						if (mark[w] != own) {
+							mark[w] = own;
+							if (worthVisiting(w, target, level, upper)) {
+								queue[tailU++] = w;
+							}
+						}
+					}
+				}
+				levelU++;
+			} else {
+				int end = tailV;
+				for (; headV > end; ) {
+					int x = queue[--headV];
+					for (int e = g.offsets[x]; e < g.offsets[x+1]; e++) {
+						int w = g.neighbors[e];
+						if (mark[w] == other) {
+							return levelU + levelV + 1;
+						}
+						if (mark[w] != own) {
+							mark[w] = own;
+							if (worthVisiting(w, target, level, upper)) {
+								queue[--tailV] = w;
+							}
+						}
+					}
+				}
+				levelV++;
+			}
+		}
+		return upper == UNKNOWN ? -1 : upper;
+	}
+
+	/**
+	 * Tells if a person reached at level+1 from one end can be on a chain to the other end that
+	 * is no longer than the upper bound.
+	 */
+	private boolean worthVisiting(int w, int target, int level, int upper) {
+		return upper == UNKNOWN || level + 1 + lowerBound(w, target) <= upper;
+	}
+
+	/**
+	 * Finds the exact distance between two people.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return Number of friendships on a shortest chain, -1 if there is none or a name is unknown
+	 */
+	public int distance(String p1, String p2) {
+		Integer u = g.map.get(p1), v = g.map.get(p2);
+		if (u == null || v == null) {
+			return -1;
+		}
+		return distance(u, v);
+	}
+}
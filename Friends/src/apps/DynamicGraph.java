@@ -0,0 +1,881 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A friendship graph that people and friendships can be added to and removed from, which keeps
+ * its connected components, the cliques of every school and its connectors up to date as it goes.
+ *
+ * Components are kept as a label on each person. A friendship between two components relabels
+ * the smaller one, so nobody is relabeled more than log n times by additions. When a friendship
+ * is removed, a search runs from both of its ends at once, one person from each side in turn,
+ * and stops as soon as the two meet; if one side runs out first it has split off, and only it is
+ * relabeled, so a split costs in proportion to the smaller part. Cliques are kept the same way,
+ * over friendships between students at the same school only.
+ *
+ * Connectors (articulation points) are kept per component, with the component's biconnected
+ * blocks as a block-cut tree: each person points to the block of the friendship to their parent
+ * in the search that found them, and each block to the person at its top. A person is a connector
+ * if they are in two blocks or more. A friendship within a component merges the blocks on the
+ * tree path between its ends into one, and only the connectors on that path can stop being ones;
+ * a friendship within one block changes nothing. A friendship joining two components searches
+ * the smaller one from its end, as relabeling it does, and hangs its blocks under the new
+ * friendship's block. Removals are not tracked that way: removing a friendship or a person marks
+ * the component, and connectors() runs Hopcroft and Tarjan's search again over every component
+ * marked, so after a removal the next call costs a search of the whole component, which in a
+ * social graph is usually nearly everyone.
+ *
+ * People are numbered in the order they were added, and numbers are not reused. Friendships are
+ * kept once per pair: adding one that is there already, or one from a person to themselves, does
+ * nothing. All methods are synchronized.
+ */
+public class DynamicGraph {
+
+	// name of each person, null once removed
+	private String[] names = new String[16];
+
+	// person numbers, by name
+	private final HashMap<String,Integer> map = new HashMap<String,Integer>();
+
+	// school id of each person, -1 if not a student
+	private int[] schoolIds = new int[16];
+
+	// school names, by school id, and school ids by name
+	private final ArrayList<String> schools = new ArrayList<String>();
+	private final HashMap<String,Integer> schoolMap = new HashMap<String,Integer>();
+
+	// students of each school, in increasing order, and how many there are
+	private int[][] schoolMembers = new int[4][];
+	private int[] schoolSizes = new int[4];
+
+	// friends of each person, in the first degree[v] entries of rows[v], in no order
+	private int[][] rows = new int[16][];
+	private int[] degree = new int[16];
+
+	// person numbers handed out, and people not removed
+	private int count, live;
+
+	// connected components, and same-school cliques (students only)
+	private final Labels components = new Labels(), cliques = new Labels();
+
+	// connectors of each component, by label, null if they must be found again; true in
+	// connectorStale if people may be listed twice or have stopped being connectors
+	private int[][] connectorCache = new int[16][];
+	private boolean[] connectorStale = new boolean[16];
+
+	// block-cut trees: the block of the friendship from each person to their parent in the
+	// search, -1 for the root of a component; blocks are numbered by the first person below
+	// their top, and merged blocks point to the one they were merged into
+	private int[] parentBlock = new int[16], blockParent = new int[16];
+
+	// top person of each block, and the number of blocks each person is in
+	private int[] blockHead = new int[16], blockCount = new int[16];
+
+	// students of each clique of each school, null if the school's cliques must be grouped again
+	private int[][][] cliqueCache = new int[4][][];
+
+	// scratch for searches: marks by person, each person's place in the search, and two queues
+	private int[] seen = new int[16], local = new int[16], blockSeen = new int[16];
+	private int epoch;
+	private int[] queueA = new int[16], queueB = new int[16];
+
+	/**
+	 * Component or clique labels. Labels no longer used are kept for reuse.
+	 */
+	private static final class Labels {
+		// label of each person, -1 if none
+		int[] of = new int[16];
+
+		// people with each label, and one of them
+		int[] size = new int[16], rep = new int[16];
+
+		// labels handed out, and freed labels
+		int count;
+		int[] free = new int[16];
+		int freeCount;
+
+		// scratch by label, 0 when not in use
+		int[] mark = new int[16];
+
+		int create(int v) {
+			int label;
+			if (freeCount > 0) {
+				label = free[--freeCount];
+			} else {
+				label = count++;
+				if (label == size.length) {
+					size = Arrays.copyOf(size, 2*label);
+					rep = Arrays.copyOf(rep, 2*label);
+					free = Arrays.copyOf(free, 2*label);
+					mark = Arrays.copyOf(mark, 2*label);
+				}
+			}
+			of[v] = label;
+			size[label] = 1;
+			rep[label] = v;
+			return label;
+		}
+
+		void release(int label) {
+			size[label] = 0;
+			free[freeCount++] = label;
+		}
+	}
+
+	/**
+	 * Makes an empty graph.
+	 */
+	public DynamicGraph() {
+	}
+
+	/**
+	 * Makes a graph holding the people and friendships of a Graph, numbered as they are there.
+	 * Repeated friendships and friendships of a person with themselves are dropped.
+	 *
+	 * @param g Graph
+	 */
+	public DynamicGraph(Graph g) {
+		int n = g.size();
+		for (int v = 0; v < n; v++) {
+			int s = g.schoolIds[v];
+			addPerson(g.names[v], s < 0 ? null : g.schools[s]);
+		}
+		// Rows are copied whole, without duplicates, then components joined friendship by friendship
+		for (int v = 0; v < n; v++) {
+			int[] row = Arrays.copyOfRange(g.neighbors, g.offsets[v], g.offsets[v+1]);
+			Arrays.sort(row);
+			int d = 0;
+			for (int k = 0; k < row.length; k++) {
+				if (row[k] != v && (d == 0 || row[d-1] != row[k])) {
+					row[d++] = row[k];
+				}
+			}
+			rows[v] = row;
+			degree[v] = d;
+		}
+		for (int v = 0; v < n; v++) {
+			for (int k = 0; k < degree[v]; k++) {
+				int w = rows[v][k];
+				merge(components, v, w, false);
+				if (schoolIds[v] >= 0 && schoolIds[v] == schoolIds[w]) {
+					merge(cliques, v, w, true);
+				}
+			}
+		}
+		Arrays.fill(connectorCache, null);
+		Arrays.fill(cliqueCache, null);
+	}
+
+	/**
+	 * Adds a person, with no friends.
+	 *
+	 * @param name Name
+	 * @param school School name, null if not a student
+	 * @return Person number
+	 * @throws IllegalArgumentException If someone of that name is in the graph already
+	 */
+	public synchronized int addPerson(String name, String school) {
+		if (map.containsKey(name)) {
+			throw new IllegalArgumentException("person already in graph: " + name);
+		}
+		int v = count++;
+		if (v == names.length) {
+			int capacity = 2*v;
+			names = Arrays.copyOf(names, capacity);
+			schoolIds = Arrays.copyOf(schoolIds, capacity);
+			rows = Arrays.copyOf(rows, capacity);
+			degree = Arrays.copyOf(degree, capacity);
+			components.of = Arrays.copyOf(components.of, capacity);
+			cliques.of = Arrays.copyOf(cliques.of, capacity);
+			seen = Arrays.copyOf(seen, capacity);
+			blockSeen = Arrays.copyOf(blockSeen, capacity);
+			parentBlock = Arrays.copyOf(parentBlock, capacity);
+			blockParent = Arrays.copyOf(blockParent, capacity);
+			blockHead = Arrays.copyOf(blockHead, capacity);
+			blockCount = Arrays.copyOf(blockCount, capacity);
+			local = new int[capacity];
+			queueA = new int[capacity];
+			queueB = new int[capacity];
+		}
+		names[v] = name;
+		map.put(name, v);
+		rows[v] = new int[4];
+		live++;
+		int label = components.create(v);
+		growConnectorCache(label);
+		connectorCache[label] = new int[0];
+		parentBlock[v] = -1;
+		blockCount[v] = 0;
+
+		schoolIds[v] = -1;
+		cliques.of[v] = -1;
+		if (school != null) {
+			Integer id = schoolMap.get(school);
+			if (id == null) {
+				id = schools.size();
+				schools.add(school);
+				schoolMap.put(school, id);
+				if (id == schoolSizes.length) {
+					schoolMembers = Arrays.copyOf(schoolMembers, 2*id);
+					schoolSizes = Arrays.copyOf(schoolSizes, 2*id);
+					cliqueCache = Arrays.copyOf(cliqueCache, 2*id);
+				}
+				schoolMembers[id] = new int[4];
+			}
+			schoolIds[v] = id;
+			if (schoolSizes[id] == schoolMembers[id].length) {
+				schoolMembers[id] = Arrays.copyOf(schoolMembers[id], 2*schoolSizes[id]);
+			}
+			schoolMembers[id][schoolSizes[id]++] = v; // Numbers only grow, so the list stays in order
+			cliques.create(v);
+			cliqueCache[id] = null;
+		}
+		return v;
+	}
+
+	/**
+	 * Removes a person and all their friendships.
+	 *
+	 * @param name Name
+	 * @throws IllegalArgumentException If nobody of that name is in the graph
+	 */
+	public synchronized void removePerson(String name) {
+		int v = person(name);
+		while (degree[v] > 0) {
+			unlink(v, rows[v][degree[v]-1]);
+		}
+		// Now alone in their component and clique
+		connectorCache[components.of[v]] = null;
+		components.release(components.of[v]);
+		components.of[v] = -1;
+		int school = schoolIds[v];
+		if (school >= 0) {
+			cliques.release(cliques.of[v]);
+			cliques.of[v] = -1;
+			int[] members = schoolMembers[school];
+			int k = Arrays.binarySearch(members, 0, schoolSizes[school], v);
+			System.arraycopy(members, k+1, members, k, schoolSizes[school]-k-1);
+			schoolSizes[school]--;
+			cliqueCache[school] = null;
+		}
+		map.remove(name);
+		names[v] = null;
+		rows[v] = null;
+		live--;
+	}
+
+	/**
+	 * Adds a friendship.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return False if they were friends already, or are the same person
+	 * @throws IllegalArgumentException If either name is not in the graph
+	 */
+	public synchronized boolean addFriendship(String p1, String p2) {
+		int v = person(p1), w = person(p2);
+		if (v == w || indexOf(v, w) >= 0) {
+			return false;
+		}
+		int cv = components.of[v], cw = components.of[w];
+		if (cv == cw) {
+			append(v, w);
+			append(w, v);
+			if (connectorCache[cv] != null) {
+				closeCycle(v, w);
+			}
+		} else {
+			// merge relabels the smaller component, the one of s, and keeps the label of l's
+			int s = components.size[cv] > components.size[cw] ? w : v, l = s == v ? w : v;
+			int large = components.of[l];
+			int[] points = connectorCache[large] == null ? null : articulationPoints(s);
+			append(v, w);
+			append(w, v);
+			merge(components, v, w, false);
+			if (points == null) {
+				connectorCache[large] = null;
+			} else {
+				graft(s, l, points);
+			}
+		}
+		if (schoolIds[v] >= 0 && schoolIds[v] == schoolIds[w]) {
+			if (cliques.of[v] != cliques.of[w]) {
+				cliqueCache[schoolIds[v]] = null;
+			}
+			merge(cliques, v, w, true);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a friendship.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return False if they were not friends
+	 * @throws IllegalArgumentException If either name is not in the graph
+	 */
+	public synchronized boolean removeFriendship(String p1, String p2) {
+		int v = person(p1), w = person(p2);
+		if (indexOf(v, w) < 0) {
+			return false;
+		}
+		unlink(v, w);
+		return true;
+	}
+
+	private void unlink(int v, int w) {
+		remove(v, w);
+		remove(w, v);
+		connectorCache[components.of[v]] = null;
+		split(components, v, w, false);
+		if (schoolIds[v] >= 0 && schoolIds[v] == schoolIds[w] && split(cliques, v, w, true) >= 0) {
+			cliqueCache[schoolIds[v]] = null;
+		}
+	}
+
+	private int person(String name) {
+		Integer v = map.get(name);
+		if (v == null) {
+			throw new IllegalArgumentException("unknown person: " + name);
+		}
+		return v;
+	}
+
+	private int indexOf(int v, int w) {
+		// Look in the shorter row
+		if (degree[w] < degree[v]) {
+			int t = v;
+			v = w;
+			w = t;
+		}
+		for (int k = 0; k < degree[v]; k++) {
+			if (rows[v][k] == w) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	private void append(int v, int w) {
+		if (degree[v] == rows[v].length) {
+			rows[v] = Arrays.copyOf(rows[v], Math.max(4, 2*degree[v]));
+		}
+		rows[v][degree[v]++] = w;
+	}
+
+	private void remove(int v, int w) {
+		int[] row = rows[v];
+		for (int k = 0; k < degree[v]; k++) {
+			if (row[k] == w) {
+				row[k] = row[--degree[v]];
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Tells if a friendship counts: any does for components, only one between students at the
+	 * same school for cliques.
+	 */
+	private boolean counts(int v, int w, boolean sameSchool) {
+		return !sameSchool || schoolIds[w] == schoolIds[v];
+	}
+
+	private int nextEpoch() {
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			Arrays.fill(blockSeen, 0);
+			epoch = 0;
+		}
+		return ++epoch;
+	}
+
+	private void growConnectorCache(int label) {
+		if (label >= connectorCache.length) {
+			connectorCache = Arrays.copyOf(connectorCache, 2*label);
+			connectorStale = Arrays.copyOf(connectorStale, 2*label);
+		}
+		connectorStale[label] = false;
+	}
+
+	/**
+	 * Returns the block a block was merged into.
+	 */
+	private int findBlock(int b) {
+		while (blockParent[b] != b) {
+			blockParent[b] = blockParent[blockParent[b]];
+			b = blockParent[b];
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the parent of a node of the block-cut tree: for a person (x &gt;= 0) their block, for
+	 * a block (~x for block x) its top person; Integer.MIN_VALUE above the root.
+	 */
+	private int up(int x) {
+		if (x >= 0) {
+			return parentBlock[x] < 0 ? Integer.MIN_VALUE : ~findBlock(parentBlock[x]);
+		}
+		return blockHead[~x];
+	}
+
+	private boolean marked(int x, int stamp) {
+		return x >= 0 ? seen[x] == stamp : blockSeen[~x] == stamp;
+	}
+
+	private void mark(int x, int stamp) {
+		if (x >= 0) {
+			seen[x] = stamp;
+		} else {
+			blockSeen[~x] = stamp;
+		}
+	}
+
+	/**
+	 * After a friendship is added between two people of a component whose connectors are known,
+	 * merges the blocks on the block-cut tree path between them, which the friendship joins into
+	 * one. Connectors strictly inside the path leave one block each, and stop being connectors if
+	 * that leaves them in one.
+	 */
+	private void closeCycle(int v, int w) {
+		// Climb from both ends in turn, marking, until one side steps on the other's mark
+		int a = nextEpoch(), b = nextEpoch();
+		int x = v, y = w, meet = Integer.MIN_VALUE;
+		mark(v, a);
+		mark(w, b);
+		while (meet == Integer.MIN_VALUE) {
+			if (x == Integer.MIN_VALUE && y == Integer.MIN_VALUE) {
+				connectorCache[components.of[v]] = null; // Not one tree after all; search again
+				return;
+			}
+			if (x != Integer.MIN_VALUE) {
+				x = up(x);
+				if (x != Integer.MIN_VALUE) {
+					if (marked(x, b)) {
+						meet = x;
+						break;
+					}
+					mark(x, a);
+				}
+			}
+			if (y != Integer.MIN_VALUE) {
+				y = up(y);
+				if (y != Integer.MIN_VALUE) {
+					if (marked(y, a)) {
+						meet = y;
+						break;
+					}
+					mark(y, b);
+				}
+			}
+		}
+		if (meet < 0 && up(v) == meet && up(w) == meet) {
+			return; // Both in one block already
+		}
+
+		// Merge every block on the path into one, topped by the meeting point or its top
+		int head = meet >= 0 ? meet : blockHead[~meet];
+		int merged = meet < 0 ? ~meet : -1;
+		boolean dropped = false;
+		for (int end : new int[] {v, w}) {
+			for (int z = end == meet ? meet : up(end); z != meet; z = up(z)) {
+				if (z < 0) {
+					if (merged < 0) {
+						merged = ~z;
+					} else {
+						blockParent[~z] = merged;
+					}
+				} else if (--blockCount[z] == 1) {
+					dropped = true;
+				}
+			}
+		}
+		if (meet >= 0 && meet != v && meet != w && --blockCount[meet] == 1) {
+			dropped = true;
+		}
+		blockHead[merged] = head;
+		if (dropped) {
+			connectorStale[components.of[v]] = true;
+		}
+	}
+
+	/**
+	 * After a friendship between s and l has joined s's component into l's, whose connectors are
+	 * known, hangs the blocks of s's old component, found by a search from s, under the block of
+	 * the new friendship.
+	 *
+	 * @param points Connectors of s's old component, from that search
+	 */
+	private void graft(int s, int l, int[] points) {
+		// The friendship is a block of its own, numbered s, as s is the first person below l
+		parentBlock[s] = s;
+		blockParent[s] = s;
+		blockHead[s] = l;
+		int label = components.of[l];
+		int[] old = connectorCache[label];
+		int[] joined = Arrays.copyOf(old, old.length + points.length + 2);
+		System.arraycopy(points, 0, joined, old.length, points.length);
+		int total = old.length + points.length;
+		// Each of them is in one more block; one that was in exactly one is now a connector
+		if (++blockCount[s] == 2) {
+			joined[total++] = s;
+		}
+		if (++blockCount[l] == 2) {
+			joined[total++] = l;
+		}
+		connectorCache[label] = Arrays.copyOf(joined, total);
+	}
+
+	/**
+	 * Puts two people in the same component, relabeling the smaller of their components.
+	 */
+	private void merge(Labels labels, int v, int w, boolean sameSchool) {
+		int from = labels.of[v], to = labels.of[w];
+		if (from == to) {
+			return;
+		}
+		if (labels.size[from] > labels.size[to]) {
+			int t = from;
+			from = to;
+			to = t;
+			v = w;
+		}
+		// Everyone still labeled from is reached from v without crossing into to
+		int tail = 0;
+		queueA[tail++] = v;
+		labels.of[v] = to;
+		for (int head = 0; head < tail; head++) {
+			int x = queueA[head];
+			for (int k = 0; k < degree[x]; k++) {
+				int y = rows[x][k];
+				if (labels.of[y] == from && counts(x, y, sameSchool)) {
+					labels.of[y] = to;
+					queueA[tail++] = y;
+				}
+			}
+		}
+		labels.size[to] += labels.size[from];
+		labels.release(from);
+		if (!sameSchool) {
+			connectorCache[from] = null;
+		}
+	}
+
+	/**
+	 * After a friendship between v and w is removed, searches from both ends at once until the
+	 * searches meet or one runs out. A side that runs out has split off and gets a new label.
+	 *
+	 * @return New label of the part split off, -1 if v and w are still connected
+	 */
+	private int split(Labels labels, int v, int w, boolean sameSchool) {
+		int a = nextEpoch(), b = nextEpoch();
+		int headA = 0, tailA = 0, headB = 0, tailB = 0;
+		queueA[tailA++] = v;
+		seen[v] = a;
+		queueB[tailB++] = w;
+		seen[w] = b;
+		while (headA < tailA && headB < tailB) {
+			int x = queueA[headA++];
+			for (int k = 0; k < degree[x]; k++) {
+				int y = rows[x][k];
+				if (counts(x, y, sameSchool)) {
+					if (seen[y] == b) {
+						return -1;
+					}
+					if (seen[y] != a) {
+						seen[y] = a;
+						queueA[tailA++] = y;
+					}
+				}
+			}
+			x = queueB[headB++];
+			for (int k = 0; k < degree[x]; k++) {
+				int y = rows[x][k];
+				if (counts(x, y, sameSchool)) {
+					if (seen[y] == a) {
+						return -1;
+					}
+					if (seen[y] != b) {
+						seen[y] = b;
+						queueB[tailB++] = y;
+					}
+				}
+			}
+		}
+		// The side that ran out is a whole component
+		int[] part = headA == tailA ? queueA : queueB;
+		int size = headA == tailA ? tailA : tailB;
+		int old = labels.of[v];
+		int label = labels.create(part[0]);
+		for (int k = 0; k < size; k++) {
+			labels.of[part[k]] = label;
+		}
+		labels.size[label] = size;
+		labels.size[old] -= size;
+		labels.rep[old] = part == queueA ? w : v;
+		if (!sameSchool) {
+			growConnectorCache(label);
+			connectorCache[old] = null;
+			connectorCache[label] = null;
+		}
+		return label;
+	}
+
+	/**
+	 * Tells if there is a chain between two people.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @return True if they are in the same component
+	 * @throws IllegalArgumentException If either name is not in the graph
+	 */
+	public synchronized boolean connected(String p1, String p2) {
+		return components.of[person(p1)] == components.of[person(p2)];
+	}
+
+	/**
+	 * Finds all cliques of students in a given school, as Friends.cliques does.
+	 *
+	 * @param school Name of school
+	 * @return Names of the students of each clique, cliques in the order of their first student.
+	 *         Null if there is no student in the given school.
+	 */
+	public synchronized ArrayList<ArrayList<String>> cliques(String school) {
+		Integer id = schoolMap.get(school);
+		if (id == null || schoolSizes[id] == 0) {
+			return null;
+		}
+		if (cliqueCache[id] == null) {
+			cliqueCache[id] = group(id);
+		}
+		ArrayList<ArrayList<String>> result = new ArrayList<>(cliqueCache[id].length);
+		for (int[] members : cliqueCache[id]) {
+			ArrayList<String> clique = new ArrayList<>(members.length);
+			for (int v : members) {
+				clique.add(names[v]);
+			}
+			result.add(clique);
+		}
+		return result;
+	}
+
+	private int[][] group(int school) {
+		int[] members = schoolMembers[school];
+		int size = schoolSizes[school];
+		int[] index = new int[size]; // Clique of each student, by position in members
+		int[] sizes = new int[size];
+		int found = 0;
+		for (int k = 0; k < size; k++) {
+			int label = cliques.of[members[k]];
+			if (cliques.mark[label] == 0) {
+				cliques.mark[label] = ++found;
+			}
+			index[k] = cliques.mark[label] - 1;
+			sizes[index[k]]++;
+		}
+		for (int k = 0; k < size; k++) {
+			cliques.mark[cliques.of[members[k]]] = 0;
+		}
+		int[][] grouped = new int[found][];
+		for (int c = 0; c < grouped.length; c++) {
+			grouped[c] = new int[sizes[c]];
+			sizes[c] = 0;
+		}
+		for (int k = 0; k < size; k++) {
+			grouped[index[k]][sizes[index[k]]++] = members[k];
+		}
+		return grouped;
+	}
+
+	/**
+	 * Finds all connectors, as Friends.connectors does. Only components with a friendship or
+	 * person removed since the last call are searched again.
+	 *
+	 * @return Names of all connectors, in the order the people were added. Null if there are none.
+	 */
+	public synchronized ArrayList<String> connectors() {
+		int total = 0;
+		for (int label = 0; label < components.count; label++) {
+			if (components.size[label] > 0) {
+				if (connectorCache[label] == null) {
+					connectorCache[label] = articulationPoints(components.rep[label]);
+					connectorStale[label] = false;
+				} else if (connectorStale[label]) {
+					connectorCache[label] = current(connectorCache[label]);
+					connectorStale[label] = false;
+				}
+				total += connectorCache[label].length;
+			}
+		}
+		if (total == 0) {
+			return null;
+		}
+		int[] points = new int[total];
+		total = 0;
+		for (int label = 0; label < components.count; label++) {
+			if (components.size[label] > 0) {
+				System.arraycopy(connectorCache[label], 0, points, total, connectorCache[label].length);
+				total += connectorCache[label].length;
+			}
+		}
+		Arrays.sort(points);
+		ArrayList<String> connectors = new ArrayList<>(total);
+		for (int v : points) {
+			connectors.add(names[v]);
+		}
+		return connectors;
+	}
+
+	/**
+	 * Returns the people of a connector list who are still connectors, in order, each once.
+	 */
+	private int[] current(int[] listed) {
+		int[] points = listed.clone();
+		Arrays.sort(points);
+		int kept = 0;
+		for (int k = 0; k < points.length; k++) {
+			if (blockCount[points[k]] >= 2 && (kept == 0 || points[kept-1] != points[k])) {
+				points[kept++] = points[k];
+			}
+		}
+		return Arrays.copyOf(points, kept);
+	}
+
+	/**
+	 * Finds the articulation points of one component by an iterative depth-first search, as
+	 * Biconnectivity does for a whole Graph, and its block-cut tree. There is one friendship per
+	 * pair, so the parent is the only friend to skip.
+	 */
+	private int[] articulationPoints(int root) {
+		int size = components.size[components.of[root]];
+		int reached = nextEpoch(); // local[v] is v's place in the search once seen[v] == reached
+		int[] dfsnum = new int[size], back = new int[size], parent = new int[size], next = new int[size];
+		int[] person = new int[size], stack = new int[size];
+		boolean[] point = new boolean[size];
+		int counter = 0, rootChildren = 0, top = 0, found = 0;
+
+		seen[root] = reached;
+		local[root] = 0;
+		person[0] = root;
+		dfsnum[0] = back[0] = ++counter;
+		parent[0] = -1;
+		stack[top++] = 0;
+		while (top > 0) {
+			int i = stack[top-1];
+			int v = person[i];
+			if (next[i] < degree[v]) {
+				int w = rows[v][next[i]++];
+				if (seen[w] != reached) {
+					int j = counter;
+					seen[w] = reached;
+					local[w] = j;
+					person[j] = w;
+					parent[j] = i;
+					dfsnum[j] = back[j] = ++counter;
+					stack[top++] = j;
+					if (i == 0) {
+						rootChildren++;
+					}
+				} else if (local[w] != parent[i]) {
+					back[i] = Math.min(back[i], dfsnum[local[w]]);
+				}
+			} else {
+				top--;
+				int p = parent[i];
+				if (p < 0) {
+					continue;
+				}
+				back[p] = Math.min(back[p], back[i]);
+				if (back[i] >= dfsnum[p] && (p != 0 || rootChildren > 1) && !point[p]) {
+					point[p] = true;
+					found++;
+				}
+			}
+		}
+		// In search order, so each person's parent is done before them: a child whose subtree
+		// reaches no higher than its parent starts a block topped by the parent, and any other
+		// is in its parent's block
+		parentBlock[root] = -1;
+		blockCount[root] = 0;
+		for (int i = 1; i < size; i++) {
+			int x = person[i], p = person[parent[i]];
+			blockCount[x] = 1;
+			if (back[i] >= dfsnum[parent[i]]) {
+				parentBlock[x] = x;
+				blockParent[x] = x;
+				blockHead[x] = p;
+				blockCount[p]++;
+			} else {
+				parentBlock[x] = parentBlock[p];
+			}
+		}
+		int[] points = new int[found];
+		found = 0;
+		for (int i = 0; i < size; i++) {
+			if (point[i]) {
+				points[found++] = person[i];
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Returns the number of people.
+	 *
+	 * @return Number of people not removed
+	 */
+	public synchronized int size() {
+		return live;
+	}
+
+	/**
+	 * Makes an immutable Graph of the people and friendships in this one, to run other queries on.
+	 * People keep their order, with removed ones left out, and so do schools, with those no student
+	 * goes to any more left out: a Graph only knows schools that have students.
+	 *
+	 * @return Graph
+	 */
+	public synchronized Graph toGraph() {
+		int[] schoolNumber = new int[schools.size()];
+		ArrayList<String> graphSchoolNames = new ArrayList<>();
+		for (int s = 0; s < schools.size(); s++) {
+			schoolNumber[s] = schoolSizes[s] > 0 ? graphSchoolNames.size() : -1;
+			if (schoolSizes[s] > 0) {
+				graphSchoolNames.add(schools.get(s));
+			}
+		}
+		int[] number = new int[count];
+		String[] graphNames = new String[live];
+		int[] graphSchools = new int[live];
+		int n = 0;
+		for (int v = 0; v < count; v++) {
+			if (names[v] != null) {
+				number[v] = n;
+				graphNames[n] = names[v];
+				graphSchools[n] = schoolIds[v] < 0 ? -1 : schoolNumber[schoolIds[v]];
+				n++;
+			}
+		}
+		int[] offsets = new int[n+1];
+		n = 0;
+		for (int v = 0; v < count; v++) {
+			if (names[v] != null) {
+				offsets[n+1] = offsets[n] + degree[v];
+				n++;
+			}
+		}
+		int[] neighbors = new int[offsets[n]];
+		int e = 0;
+		for (int v = 0; v < count; v++) {
+			for (int k = 0; names[v] != null && k < degree[v]; k++) {
+				neighbors[e++] = number[rows[v][k]];
+			}
+		}
+		return new Graph(graphNames, graphSchools, graphSchoolNames.toArray(new String[0]), offsets,
+				neighbors);
+	}
+}
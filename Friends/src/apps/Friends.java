@@ -1,9 +1,8 @@
 package apps;
 
-import structures.Queue;
-import structures.Stack;
-
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Friends {
 
@@ -13,63 +12,251 @@ public class Friends {
 	 * and ending with p2. Each pair (n1,n2) of consecutive names in
 	 * the returned chain is an edge in the graph.
 	 * 
+	 * The search is a breadth-first search run from both ends at once, one level at a time from
+	 * whichever side has the smaller frontier, until the two searches meet. Each side keeps the
+	 * parent of every person it reached in an int array, and marks people as they are enqueued,
+	 * so nobody is enqueued twice. Names are only looked up once, to write out the chain at the end.
+	 * The arrays are pooled with the graph, so a search usually allocates only the chain.
+	 * 
 	 * @param g Graph for which shortest chain is to be found.
 	 * @param p1 Person with whom the chain originates
 	 * @param p2 Person at whom the chain terminates
 	 * @return The shortest chain from p1 to p2. Null if there is no
 	 *         path from p1 to p2
 	 */
-	public static ArrayList<String> shortestChain(Graph g, String p1, String p2) {
+	public static ArrayList<String> shortestChain(GraphView g, String p1, String p2) {
 		// Check if the graph g is null or if either p1 or p2 is not present in the graph. 
 		// If any of these conditions are true, return null as there can't be a shortest chain.
-		if(g == null || !g.map.containsKey(p1) || !g.map.containsKey(p2)) {
+		if(g == null) {
 			return null;
 		}
 		// Get indices of starting entry, p1
-		int start = g.map.get(p1);
+		int start = g.person(p1);
 		// Get indices of ending entry, p2
-		int end = g.map.get(p2);
+		int end = g.person(p2);
+		if (start < 0 || end < 0) {
+			return null;
+		}
+		ChainScratch s = g.chainScratch().take();
+		ArrayList<String> chain = shortestChain(g, start, end, s);
+		g.chainScratch().give(s);
+		return chain;
+	}
+	
+	/**
+	 * Work space of one shortest chain search at a time, kept between searches so they need not
+	 * allocate: for each side, the parent of every person reached (-1 if not reached yet), their
+	 * distance from that side's end, and a queue holding every person reached, in the order
+	 * reached. A person is enqueued at most once per side, so an array of n never runs out, and
+	 * the queues list every parent entry to clear after a search.
+	 */
+	static final class ChainScratch {
+		final int[] fromStart, fromEnd, distStart, distEnd, startQueue, endQueue;
+		
+		ChainScratch(int n) {
+			fromStart = new int[n];
+			fromEnd = new int[n];
+			distStart = new int[n];
+			distEnd = new int[n];
+			startQueue = new int[n];
+			endQueue = new int[n];
+			Arrays.fill(fromStart, -1);
+			Arrays.fill(fromEnd, -1);
+		}
+	}
+	
+	/**
+	 * Finds the shortest chain between two people, as shortestChain above, in work space that is
+	 * left ready for the next search.
+	 * 
+	 * @param g Graph
+	 * @param start Person number of p1
+	 * @param end Person number of p2
+	 * @param s Work space, for a graph of g's size
+	 * @return The shortest chain from p1 to p2. Null if there is none
+	 */
+	static ArrayList<String> shortestChain(GraphView g, int start, int end, ChainScratch s) {
+		int[] fromStart = s.fromStart, fromEnd = s.fromEnd;
+		int[] distStart = s.distStart, distEnd = s.distEnd;
+		int[] startQueue = s.startQueue, endQueue = s.endQueue;
+		fromStart[start] = start;
+		fromEnd[end] = end;
+		distStart[start] = 0;
+		distEnd[end] = 0;
+		startQueue[0] = start;
+		endQueue[0] = end;
+		// Front and rear of each queue
+		int[] startSpan = {0, 1}, endSpan = {0, 1};
 		
-		// Create a queue for BFS
-		Queue<ArrayList<String>> queue = new Queue<>();
-		// Create a set to keep track of visited vertices
-		Set<Integer> visited = new HashSet<>();
-		// Enqueue a new array list containing p1, the starting point of BFS
-		queue.enqueue(new ArrayList<>(Arrays.asList(p1)));
+		// The edge (meet[0], meet[1]) joins the two searches, meet[0] reached from p1 and meet[1] from p2
+		int[] meet = {start, end};
+		if (start != end) {
+			meet[0] = -1;
+			// Expand the smaller frontier by a full level, until one level finds a meeting or a side runs dry
+			while (meet[0] < 0 && startSpan[0] < startSpan[1] && endSpan[0] < endSpan[1]) {
+				if (startSpan[1] - startSpan[0] <= endSpan[1] - endSpan[0]) {
+					expandLevel(g, startQueue, startSpan, fromStart, distStart, fromEnd, distEnd, meet, false);
+				} else {
+					expandLevel(g, endQueue, endSpan, fromEnd, distEnd, fromStart, distStart, meet, true);
+				}
+			}
+		}
+		
+		// Write out the chain: p1 down to the meeting edge by parents from the p1 side, reversed,
+		// then on to p2 by parents from the p2 side. If the searches never met, there is no chain
+		ArrayList<String> chain = null;
+		if (meet[0] >= 0) {
+			chain = new ArrayList<>();
+			for (int v = meet[0]; ; v = fromStart[v]) {
+				chain.add(g.name(v));
+				if (v == start) {
+					break;
+				}
+			}
+			Collections.reverse(chain);
+			if (meet[1] != meet[0]) {
+				for (int v = meet[1]; ; v = fromEnd[v]) {
+					chain.add(g.name(v));
+					if (v == end) {
+						break;
+					}
+				}
+			}
+		}
+		
+		// Clear the parents of everyone reached, for the next search
+		for (int i = 0; i < startSpan[1]; i++) {
+			fromStart[startQueue[i]] = -1;
+		}
+		for (int i = 0; i < endSpan[1]; i++) {
+			fromEnd[endQueue[i]] = -1;
+		}
+		return chain;
+	}
+	
+	/**
+	 * Expands one side of the bidirectional search by one full level. Every friend of the level
+	 * that the other side has already reached is a possible meeting; the level is finished, and the
+	 * meeting giving the shortest chain is kept.
+	 * 
+	 * @param g graph
+	 * @param queue this side's queue
+	 * @param span front and rear of this side's queue, updated
+	 * @param parent this side's parents
+	 * @param dist this side's distances
+	 * @param otherParent the other side's parents
+	 * @param otherDist the other side's distances
+	 * @param meet set to the best meeting edge found, as {p1 side, p2 side}, if any
+	 * @param fromEnd true if this is the p2 side
+	 */
+	private static void expandLevel(GraphView g, int[] queue, int[] span, int[] parent, int[] dist,
+			int[] otherParent, int[] otherDist, int[] meet, boolean fromEnd) {
+		int best = Integer.MAX_VALUE;
+		int levelEnd = span[1];
+		while (span[0] < levelEnd) {
+			int v = queue[span[0]++];
+			for (int e = g.offset(v), end = g.offset(v+1); e < end; e++) {
+				int friend = g.neighbor(e);
+				if (otherParent[friend] >= 0 && dist[v] + 1 + otherDist[friend] < best) {
+					// The searches meet across the edge (v, friend)
+					best = dist[v] + 1 + otherDist[friend];
+					meet[0] = fromEnd ? friend : v;
+					meet[1] = fromEnd ? v : friend;
+				}
+				// Mark on enqueue, so a person is enqueued once no matter how many friends lead to them
+				if (parent[friend] < 0) {
+					parent[friend] = v;
+					dist[friend] = dist[v] + 1;
+					queue[span[1]++] = friend;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the shortest chain for each of many pairs of people, the same as calling
+	 * shortestChain on each pair. Pairs are grouped by their first person, and the searches from up
+	 * to 64 first persons are run together as one multi-source BFS, so a batch costs about as much
+	 * as a single search. Batches run in parallel on the common ForkJoinPool.
+	 * 
+	 * @param g Graph for which shortest chains are to be found.
+	 * @param pairs Pairs of names {p1, p2}
+	 * @return The shortest chain for each pair, in the same order as pairs. An entry is null if
+	 *         there is no path, or a name is not in the graph.
+	 */
+	public static ArrayList<ArrayList<String>> shortestChains(GraphView g, List<String[]> pairs) {
+		return shortestChains(g, pairs, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Finds the shortest chain for each of many pairs of people, running batches on the given pool.
+	 * See shortestChains above.
+	 * 
+	 * @param g Graph for which shortest chains are to be found.
+	 * @param pairs Pairs of names {p1, p2}
+	 * @param pool Pool to run batches on
+	 * @return The shortest chain for each pair, in the same order as pairs.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static ArrayList<ArrayList<String>> shortestChains(GraphView g, List<String[]> pairs, ForkJoinPool pool) {
+		ArrayList<ArrayList<String>> result = new ArrayList<>(Collections.nCopies(pairs.size(), (ArrayList<String>) null));
+		if (g == null) {
+			return result;
+		}
+		// Group the pairs by source, keeping the index of each pair
+		LinkedHashMap<Integer,ArrayList<Integer>> bySource = new LinkedHashMap<>();
+		for (int q = 0; q < pairs.size(); q++) {
+			int p1 = g.person(pairs.get(q)[0]);
+			int p2 = g.person(pairs.get(q)[1]);
+			if (p1 >= 0 && p2 >= 0) {
+				bySource.computeIfAbsent(p1, k -> new ArrayList<>()).add(q);
+			}
+		}
 		
-		// Start a loop until queue is empty
-		// If queue is empty, this means that all possible chains have been exhausted
-		while (!queue.isEmpty()) {
-			// Dequeue next chain to go through
-			ArrayList<String> currChain = queue.dequeue();
-			// Get last person in current chain
-			String lastPerson = currChain.get(currChain.size()-1);
-			// Find index of last person in current chain 
-			int lastPersonIndex = g.map.get(lastPerson);
-			
-			// If last person in current chain is same as the end person, return current chain, which is shortest chain
-			// In BFS, since we are exploring level by level, the first time we reach p2, it will the shortest path from p1 to p2.
-			// BFS explores all possible paths of length k before moving to paths of length k+1, ensuring that the first time we reach p2, it will be via the shortest path.
-			if(lastPersonIndex == end) {
-				return currChain;
+		// One task per batch of up to 64 sources
+		ArrayList<Integer> sources = new ArrayList<>(bySource.keySet());
+		ArrayList<MultiSourceBfs> tasks = new ArrayList<>();
+		ArrayList<int[][]> batchQueries = new ArrayList<>();
+		ArrayList<ArrayList<String>[][]> batchChains = new ArrayList<>();
+		for (int from = 0; from < sources.size(); from += MultiSourceBfs.WIDTH) {
+			int width = Math.min(MultiSourceBfs.WIDTH, sources.size() - from);
+			int[] batchSources = new int[width];
+			int[][] targets = new int[width][];
+			int[][] queries = new int[width][];
+			ArrayList<String>[][] chains = new ArrayList[width][];
+			for (int i = 0; i < width; i++) {
+				batchSources[i] = sources.get(from + i);
+				ArrayList<Integer> qs = bySource.get(batchSources[i]);
+				targets[i] = new int[qs.size()];
+				queries[i] = new int[qs.size()];
+				for (int k = 0; k < qs.size(); k++) {
+					queries[i][k] = qs.get(k);
+					targets[i][k] = g.person(pairs.get(qs.get(k))[1]);
+				}
+				chains[i] = new ArrayList[qs.size()];
 			}
-			// Mark the last person as visited to avoid revisiting them
-			visited.add(lastPersonIndex);
-			
-			// Iterate through friends of last person in current chain 
-			for(Friend friend = g.members[lastPersonIndex].first; friend != null; friend = friend.next) {
-				// If the friend has not been visited, iterate further in the graph
-				if(!visited.contains(friend.fnum)) {
-					// Create a new chain by adding the current friend to the current chain
-					// Enqueue this chain so that it can be explored further 
-					ArrayList<String> newChain = new ArrayList<>(currChain);
-					newChain.add(g.members[friend.fnum].name);
-					queue.enqueue(newChain);
-				} 
-			} // end of loop for exploring friends of last person in current chain 
-		} // end of loop for exploring chains in queue 
+			tasks.add(new MultiSourceBfs(g, batchSources, targets, chains));
+			batchQueries.add(queries);
+			batchChains.add(chains);
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
 		
-		return null; // If no shortest chain found, return null 
+		// Put every chain back in the place of its pair
+		for (int b = 0; b < tasks.size(); b++) {
+			int[][] queries = batchQueries.get(b);
+			for (int i = 0; i < queries.length; i++) {
+				for (int k = 0; k < queries[i].length; k++) {
+					result.set(queries[i][k], batchChains.get(b)[i][k]);
+				}
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -78,166 +265,69 @@ public class Friends {
 	 * Returns an array list of array lists - each constituent array list contains
 	 * the names of all students in a clique.
 	 * 
+	 * The cliques of every school are found together the first time any are asked for, by
+	 * SchoolCliques, and kept with the graph, so each later call only writes out names.
+	 * 
 	 * @param g Graph for which cliques are to be found.
 	 * @param school Name of school
 	 * @return Array list of clique array lists. Null if there is no student in the
 	 *         given school
 	 */
-	public static ArrayList<ArrayList<String>> cliques(Graph g, String school) {
+	public static ArrayList<ArrayList<String>> cliques(GraphView g, String school) {
 		
 		// If graph g is null, return null. Cannot be any cliques.
 		if(g == null) {
 			return null;
 		}
 		
-		// Initialize ArrayList to store the cliques found 
-		// Initialize HashSet to keep track of visited vertices.
-		ArrayList<ArrayList<String>> cliques = new ArrayList<>();
-		Set<Integer> visited = new HashSet<>();
-		
-		// Iterate through each entry in the graph 
-		for(int i = 0; i < g.members.length; i++) {
-			// If the person is a student, and belongs to the school mentioned, and has not been visited yet, start looking into clique w/ person. 
-			if(g.members[i].student && g.members[i].school.equals(school) && !visited.contains(i)) {
-				// Create ArrayList to store current clique
-				ArrayList<String> clique = new ArrayList<>();
-				// DFS from person to find all members of clique
-				dfs(g, i, visited, clique);
-				// Add clique to list of cliques found 
-				cliques.add(clique);
-			}
-		}  // End of loop for exploring people in graph 
-		
-		// If no cliques found, return null
-		if(cliques.isEmpty()) {
-			return null;
-		}
-		
-		// Return list of cliques found 
-		return cliques;
-		
+		// Look the school up in the graph's clique index. Null if nobody goes there
+		return g.schoolCliques().cliques(school);
 	}
+	
 	/**
-	 * Performs DFS to explore the graph starting from the specified person index.
-	 * It adds the names of visited persons to the clique ArrayList, ensuring that only students from the same school are included in the clique.
-	 * The visited set keeps track of visited vertices to avoid revisiting them.
+	 * Suggests friends for a person: friends of their friends, ranked by the number of friends
+	 * they have in common. The graph's Recommender is built the first time this is called, and
+	 * keeps a sorted copy of all friend lists on the heap, even for a MappedGraph.
 	 * 
-	 * @param g graph
-	 * @param i index of curr person being visited
-	 * @param visited, set to keep track of visited vertices
-	 * @param clique, arraylist to store current clique being explored 
+	 * @param g Graph
+	 * @param person Name of the person
+	 * @param k Most suggestions wanted
+	 * @return Names of up to k people, best first. Null if the person is not in the graph.
+	 * @throws IllegalArgumentException If k is negative
 	 */
-	private static void dfs(Graph g, int i, Set<Integer> visited, ArrayList<String> clique) {
-		// Mark the current person index as visited
-		visited.add(i);
-		// Add the name of the current person to the clique
-		clique.add(g.members[i].name);
-		
-		// Explore friends of the current person
-		for(Friend friend = g.members[i].first; friend != null; friend = friend.next) {
-			// Check if the friend hasn't been visited yet and belongs to the same school as the current person
-			if(!visited.contains(friend.fnum) && g.members[friend.fnum].student && g.members[friend.fnum].school.equals(g.members[i].school)) {
-				// Recursively explore the friend's connections
-				dfs(g, friend.fnum, visited, clique);
-			}
+	public static ArrayList<String> recommend(GraphView g, String person, int k) {
+		if (g == null) {
+			return null;
 		}
+		return g.recommender().recommend(person, k);
 	}
 	
 	/**
-	 * Finds and returns all connectors in the graph.
+	 * Finds and returns all connectors in the graph. A connector is a person whose removal
+	 * leaves some of their friends with no chain between them, an articulation point of the graph.
+	 * Connectors are found by Biconnectivity, in one iterative pass over the graph, the first time
+	 * this is called, and kept with the graph.
 	 * 
 	 * @param g Graph for which connectors needs to be found.
-	 * @return Names of all connectors. Null if there are no connectors.
+	 * @return Names of all connectors, in the order the people are listed in the graph file.
+	 *         Null if there are no connectors.
 	 */
-	public static ArrayList<String> connectors(Graph g) {
+	public static ArrayList<String> connectors(GraphView g) {
 		// Check if graph is null, and return null. Cannot be any connectors if graph does not exist.
-        if (g == null) {
-            return null;
-        }
-     
-        // Initialize data structures
-        ArrayList<String> connectors = new ArrayList<>(); // ArrayList for all connectors
-        int[] dfsnum = new int[g.members.length]; // Array to store DFS numbers
-        int[] back = new int[g.members.length]; // Array to store back numbers
-        boolean[] visited = new boolean[g.members.length]; // Array to keep track of visited vertices
-        Set<Integer> connectorsSet = new HashSet<>(); // Set to store indices of connectors
-        int dfsnumCounter = 0; // Counter for assigning DFS numbers
-
-        // Perform DFS on each vertex
-        for (int i = 0; i < g.members.length; i++) {
-        	// Check if vertex has not been visited yet
-            if (!visited[i]) {
-            	// Start DFS from the current vertex
-                dfs_connectors(g, i, i, visited, dfsnum, back, connectorsSet, dfsnumCounter);
-            }
-        }
-
-        // Convert set of connectors to list
-        connectors.addAll(g.map.keySet()); // Adds vertex names from graph's  map to connectors ArrayList. 
-        // g.map contains a mapping of vertex names to corresponding indicies in graph
-        // Adding all keys = all vertices seen as connectors at first
-        
-        // First, check if name from connectors ArrayList is contained in connectorsSet
-        // If it does not exist in connectorsSet, this returns true, so element should be removed from connectors ArrayList
-        // Retains vertex names only if they are identified as connectors during DFS
-        connectors.removeIf(name -> !connectorsSet.contains(g.map.get(name)));
-     
-        // If no connectors are found, return null
-        if (connectors.isEmpty()) {
-            return null;
-        }
-        
-        // Output connectors
-        return connectors;
-    }
-	
-	/**
-	 * Performs a modified version of DFS to identify connectors.
-	 * 
-	 * @param g, graph
-	 * @param curr, index of curr vertex being visited 
-	 * @param parent, index of parent vertex in DFS traversal
-	 * @param visited, array to keep track of visited vertices
-	 * @param dfsnum, array to store DFS numbers assigned to vertices
-	 * @param back, array to store back numbers assigned to vertices
-	 * @param connectors, set to store indices of connectors found during DFS traversal
-	 * @param dfsnumCounter, a counter for assigning DFS numbers
-	 */
-	private static void dfs_connectors(Graph g, int curr, int parent, boolean[] visited, int[] dfsnum, int[] back, Set<Integer> connectors, int dfsnumCounter) {
-		// Mark the current vertex as visited
-        visited[curr] = true;
-        // Assign DFS number and back number to the current vertex
-        dfsnum[curr] = back[curr] = ++dfsnumCounter;
-        
-        // Counter to keep track of children of the current vertex
-        int children = 0;
-        
-        // Iterate through the neighbors of the current vertex
-        for (Friend friend = g.members[curr].first; friend != null; friend = friend.next) {
-            int next = friend.fnum; // Index of the next neighbor
-            // Explore unvisited neighbors
-            if (!visited[next]) {
-            	// Increment children count
-                children++;
-                // Recursively explore the neighbor
-                dfs_connectors(g, next, curr, visited, dfsnum, back, connectors, dfsnumCounter);
-                // Update the back number of the current vertex
-                // If next is an ancestor of curr, then there exists a back edge from curr to next, and back[curr] needs to capture the lowest DFS number reachable from curr through this back edge. 
-                // If next is a descendant of curr, then back[curr] should still capture the lowest DFS number reachable from curr.
-                back[curr] = Math.min(back[curr], back[next]);
-                // Check if the current vertex, curr, is a connector
-                // First part: if the DFS number of curr is less than or equal to the back number of its neighbor next, then next is not reachable from curr via a back edge. Ensure that curr is not root of DFS tree 
-                // If both conditions agree, removing curr from DFS traversal would disconnect next or one of its descendants from DFS tree. This makes curr a connector.
-                // Second part: Checks if curr is root of DFS tree, and if it has more than one children. If true, removing curr from DFS traversal would disconnect multiple subtrees rooted at its children.
-                // Curr must be a connector in this case as well, because removing it would mean multiple subtrees in its children would be disconnected.
-                if ((dfsnum[curr] <= back[next] && parent != curr) || (parent == curr && children > 1)) {
-                    connectors.add(curr); // Add the current vertex to connectors set
-                }
-            } else if (next != parent) {
-            	// Update the back number of the current vertex based on the visited neighbor
-                back[curr] = Math.min(back[curr], dfsnum[next]);
-            }
-        }
-    }
+		if (g == null) {
+			return null;
+		}
+		
+		int[] points = g.biconnectivity().articulationPoints();
+		
+		// If no connectors are found, return null
+		if (points.length == 0) {
+			return null;
+		}
+		ArrayList<String> connectors = new ArrayList<>(points.length);
+		for (int v : points) {
+			connectors.add(g.name(v));
+		}
+		return connectors;
+	}
 }
-
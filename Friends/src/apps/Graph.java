@@ -1,67 +1,83 @@
 package apps;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Scanner;
 import java.util.StringTokenizer;
 
-class Friend {
-	int fnum;
-	Friend next;
-	Friend(int fnum, Friend next) {
-		this.fnum = fnum;
-		this.next = next;
-	}
-}
-
-class Person {
-	String name;
-	boolean student;
-	String school;
-	Friend first;
-}
+/**
+ * An immutable friendship graph in compressed sparse row (CSR) form. People are numbered 0..n-1
+ * in input order, and the friends of person v are neighbors[offsets[v]] up to (not including)
+ * neighbors[offsets[v+1]]. Every friendship appears twice, once in each person's row, so
+ * neighbors has two entries per edge and no per-edge objects are made.
+ *
+ * School names are interned to ints, so comparing the schools of two students is an int compare.
+ */
+public class Graph extends GraphView {
 
+	// name of each member, by member number
+	final String[] names;
 
-class Edge {
-	int v1, v2;
-	Edge(int v1, int v2) {
-		this.v1 = v1; this.v2 = v2;
-	}
-}
-		
-public class Graph {
-	
-	// all the members in the graph
-	Person[] members;
-	
 	// hash map to store the (name,num) association
-	HashMap<String,Integer> map;
-	
+	final HashMap<String,Integer> map;
+
+	// start of each member's row in neighbors, with offsets[n] = neighbors.length
+	final int[] offsets;
+
+	// rows of friends, back to back
+	final int[] neighbors;
+
+	// members who are students
+	final BitSet students;
+
+	// school id of each member, -1 if not a student
+	final int[] schoolIds;
+
+	// school names, by school id
+	final String[] schools;
+
+	// school ids, by name
+	final HashMap<String,Integer> schoolMap;
+
 	// initialize graph from file
 	public Graph(Scanner sc) {
 		// first line is number of people
 		int n = Integer.parseInt(sc.nextLine());
-		members = new Person[n];
+		names = new String[n];
 		map = new HashMap<String,Integer>(n*2);
+		students = new BitSet(n);
+		schoolIds = new int[n];
+		schoolMap = new HashMap<String,Integer>();
 		// next n lines are people's info
 		for (int i=0; i < n; i++) {
 			String info = sc.nextLine();
 			StringTokenizer st = new StringTokenizer(info,"|");
-			Person person = new Person();
-			person.name = st.nextToken();
+			names[i] = st.nextToken();
 			String yn = st.nextToken(); // student or not
-			person.student = false;
-			person.school = null;
+			schoolIds[i] = -1;
 			if (yn.toLowerCase().charAt(0) == 'y') {
-				person.student = true;
-				person.school = st.nextToken();
+				students.set(i);
+				String school = st.nextToken();
+				Integer id = schoolMap.get(school);
+				if (id == null) {
+					id = schoolMap.size();
+					schoolMap.put(school, id);
+				}
+				schoolIds[i] = id;
 			}
-			person.first = null;
-			// add to members
-			members[i] = person;
 			// add to hash map
-			map.put(person.name,i);
+			map.put(names[i],i);
+		}
+		schools = new String[schoolMap.size()];
+		for (String school : schoolMap.keySet()) {
+			schools[schoolMap.get(school)] = school;
 		}
-		// rest are relationships
+
+		// rest are relationships: first pass reads them and counts each member's friends
+		int[] ends = new int[16];
+		int edges = 0;
+		int[] degree = new int[n];
 		while (sc.hasNextLine()) {
 			String line = sc.nextLine();
 			StringTokenizer st = new StringTokenizer(line,"|");
@@ -69,8 +85,111 @@ public class Graph {
 			String p2 = st.nextToken();
 			int i = map.get(p1);
 			int j = map.get(p2);
-			members[i].first = new Friend(j,members[i].first);
-			members[j].first = new Friend(i,members[j].first);
+			if (2*edges + 2 > ends.length) {
+				ends = Arrays.copyOf(ends, ends.length*2);
+			}
+			ends[2*edges] = i;
+			ends[2*edges+1] = j;
+			edges++;
+			degree[i]++;
+			degree[j]++;
+		}
+		offsets = new int[n+1];
+		for (int v = 0; v < n; v++) {
+			offsets[v+1] = offsets[v] + degree[v];
 		}
+
+		// second pass fills the rows. Edges are taken last to first, so each row lists friends
+		// in the order the old linked lists did, most recently read first
+		neighbors = new int[2*edges];
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int e = edges-1; e >= 0; e--) {
+			int i = ends[2*e], j = ends[2*e+1];
+			neighbors[next[i]++] = j;
+			neighbors[next[j]++] = i;
+		}
+	}
+
+	/**
+	 * Makes a graph from arrays already built, as GraphLoader and GraphSnapshot do. The arrays
+	 * are used as they are, not copied.
+	 *
+	 * @param names Name of each member
+	 * @param schoolIds School id of each member, -1 if not a student
+	 * @param schools School names, by school id
+	 * @param offsets Start of each member's row in neighbors, with offsets[n] = neighbors.length
+	 * @param neighbors Rows of friends, back to back
+	 */
+	Graph(String[] names, int[] schoolIds, String[] schools, int[] offsets, int[] neighbors) {
+		int n = names.length;
+		this.names = names;
+		this.schoolIds = schoolIds;
+		this.schools = schools;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		map = new HashMap<String,Integer>(n*2);
+		students = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			map.put(names[i], i);
+			if (schoolIds[i] >= 0) {
+				students.set(i);
+			}
+		}
+		schoolMap = new HashMap<String,Integer>();
+		for (int s = 0; s < schools.length; s++) {
+			schoolMap.put(schools[s], s);
+		}
+	}
+
+	@Override
+	public int size() {
+		return names.length;
+	}
+
+	@Override
+	public int offset(int v) {
+		return offsets[v];
+	}
+
+	@Override
+	public int neighbor(int e) {
+		return neighbors[e];
+	}
+
+	@Override
+	public int degree(int v) {
+		return offsets[v+1] - offsets[v];
+	}
+
+	@Override
+	public String name(int v) {
+		return names[v];
+	}
+
+	@Override
+	public int person(String name) {
+		Integer v = map.get(name);
+		return v == null ? -1 : v;
+	}
+
+	@Override
+	public int schoolOf(int v) {
+		return schoolIds[v];
+	}
+
+	@Override
+	public int schoolCount() {
+		return schools.length;
+	}
+
+	@Override
+	public String schoolName(int s) {
+		return schools[s];
+	}
+
+	@Override
+	public int schoolId(String school) {
+		Integer id = schoolMap.get(school);
+		return id == null ? -1 : id;
 	}
 }
@@ -0,0 +1,203 @@
+package apps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a graph to a binary snapshot file, and reads it back. A snapshot is the graph's arrays as
+ * they are in memory, so reading one is a few bulk copies out of a memory-mapped file, with no
+ * parsing. All numbers are 4-byte big-endian ints, and every section starts at a multiple of 4:
+ *
+ *   header       magic "FRGS", version, people n, friend entries m (twice the friendships),
+ *                schools s, name bytes, name hash slots, school name bytes
+ *   name starts  n+1 ints: name v is bytes nameStarts[v] up to nameStarts[v+1]
+ *   name bytes   the names, as UTF-8, back to back, padded to a multiple of 4
+ *   name slots   the NameTable hash slots, so names can be looked up in place
+ *   school ids   n ints, -1 if not a student
+ *   school starts, school bytes   the school names, as for people
+ *   offsets      n+1 ints, as in Graph
+ *   neighbors    m ints, as in Graph
+ */
+public class GraphSnapshot {
+
+	/**
+	 * First int of every snapshot, "FRGS" in ASCII.
+	 */
+	static final int MAGIC = 0x46524753;
+
+	/**
+	 * Version of the format written.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header, in bytes.
+	 */
+	static final int HEADER = 32;
+
+	/**
+	 * Most bytes mapped or buffered at once.
+	 */
+	static final int WINDOW = 1 << 26;
+
+	private GraphSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of a graph.
+	 *
+	 * @param g Graph
+	 * @param file File to write, replaced if it is there
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(Graph g, Path file) throws IOException {
+		NameTable names = new NameTable(g.names);
+		NameTable schools = new NameTable(g.schools);
+		int n = g.size();
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocate(WINDOW);
+			buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(g.neighbors.length).putInt(g.schools.length)
+				.putInt(names.bytes.limit()).putInt(names.slots.limit()).putInt(schools.bytes.limit());
+			putInts(ch, buf, names.starts);
+			putBytes(ch, buf, names.bytes);
+			putInts(ch, buf, names.slots);
+			putInts(ch, buf, IntBuffer.wrap(g.schoolIds));
+			putInts(ch, buf, schools.starts);
+			putBytes(ch, buf, schools.bytes);
+			putInts(ch, buf, IntBuffer.wrap(g.offsets));
+			putInts(ch, buf, IntBuffer.wrap(g.neighbors));
+			flush(ch, buf);
+		}
+	}
+
+	private static void putInts(FileChannel ch, ByteBuffer buf, IntBuffer ints) throws IOException {
+		for (int i = 0; i < ints.limit(); ) {
+			if (buf.remaining() < 4) {
+				flush(ch, buf);
+			}
+			int length = Math.min(ints.limit() - i, buf.remaining()/4);
+			IntBuffer run = ints.duplicate();
+			run.position(i).limit(i + length);
+			buf.asIntBuffer().put(run);
+			buf.position(buf.position() + 4*length);
+			i += length;
+		}
+	}
+
+	private static void putBytes(FileChannel ch, ByteBuffer buf, ByteBuffer bytes) throws IOException {
+		int length = bytes.limit();
+		for (int i = 0; i < length + pad(length); i++) {
+			if (!buf.hasRemaining()) {
+				flush(ch, buf);
+			}
+			buf.put(i < length ? bytes.get(i) : 0);
+		}
+	}
+
+	private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Returns the bytes needed after a section to bring it to a multiple of 4.
+	 */
+	static int pad(int length) {
+		return -length & 3;
+	}
+
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @param file Snapshot file
+	 * @return Graph
+	 * @throws IOException If the file cannot be read, or is not a snapshot
+	 */
+	public static Graph read(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			int[] header = header(ch, file);
+			int n = header[2], m = header[3], s = header[4];
+			long pos = HEADER;
+			int[] nameStarts = ints(ch, pos, n+1);
+			pos += 4L*(n+1);
+			String[] names = strings(ch, pos, nameStarts);
+			pos += header[5] + pad(header[5]) + 4L*header[6];
+			int[] schoolIds = ints(ch, pos, n);
+			pos += 4L*n;
+			int[] schoolStarts = ints(ch, pos, s+1);
+			pos += 4L*(s+1);
+			String[] schools = strings(ch, pos, schoolStarts);
+			pos += header[7] + pad(header[7]);
+			int[] offsets = ints(ch, pos, n+1);
+			pos += 4L*(n+1);
+			int[] neighbors = ints(ch, pos, m);
+			return new Graph(names, schoolIds, schools, offsets, neighbors);
+		}
+	}
+
+	/**
+	 * Reads and checks the header of a snapshot.
+	 *
+	 * @return The header's ints
+	 * @throws IOException If the file is not a snapshot of this version, or is cut short
+	 */
+	static int[] header(FileChannel ch, Path file) throws IOException {
+		if (ch.size() < HEADER) {
+			throw new IOException(file + ": not a graph snapshot");
+		}
+		int[] header = ints(ch, 0, HEADER/4);
+		if (header[0] != MAGIC) {
+			throw new IOException(file + ": not a graph snapshot");
+		}
+		if (header[1] != VERSION) {
+			throw new IOException(file + ": snapshot version " + header[1] + ", expected " + VERSION);
+		}
+		long size = HEADER + 4L*(header[2]+1) + header[5] + pad(header[5]) + 4L*header[6] + 4L*header[2]
+				+ 4L*(header[4]+1) + header[7] + pad(header[7]) + 4L*(header[2]+1) + 4L*header[3];
+		if (ch.size() < size) {
+			throw new IOException(file + ": snapshot is cut short, " + ch.size() + " bytes of " + size);
+		}
+		return header;
+	}
+
+	/**
+	 * Copies ints out of a file, mapping at most WINDOW bytes at a time.
+	 */
+	static int[] ints(FileChannel ch, long pos, int count) throws IOException {
+		int[] ints = new int[count];
+		for (int i = 0; i < count; ) {
+			int length = Math.min(count - i, WINDOW/4);
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4L*i, 4L*length);
+			buf.asIntBuffer().get(ints, i, length);
+			i += length;
+		}
+		return ints;
+	}
+
+	private static String[] strings(FileChannel ch, long pos, int[] starts) throws IOException {
+		int count = starts.length - 1;
+		String[] strings = new String[count];
+		ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, starts[count]);
+		byte[] b = new byte[0];
+		for (int k = 0; k < count; k++) {
+			int length = starts[k+1] - starts[k];
+			if (b.length < length) {
+				b = new byte[length];
+			}
+			buf.position(starts[k]);
+			buf.get(b, 0, length);
+			strings[k] = new String(b, 0, length, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+}
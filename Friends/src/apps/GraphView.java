@@ -0,0 +1,155 @@
+package apps;
+
+/**
+ * What the algorithms in Friends need to read from a friendship graph, whatever holds it. People
+ * are numbered 0..n-1, and the friends of person v are neighbor(e) for e from offset(v) up to (not
+ * including) offset(v+1), the same rows Graph keeps in its offsets and neighbors arrays.
+ *
+ * Graph holds everything in arrays and maps on the heap. MappedGraph reads the same rows, names
+ * and school ids in place from a memory-mapped snapshot file, so it can hold graphs larger than
+ * the heap.
+ *
+ * The cliques, recommender and connectors of a graph are built the first time they are asked
+ * for, and kept, with a bounded pool of shortest chain work spaces.
+ */
+public abstract class GraphView {
+
+	// cliques of every school, built the first time any are asked for
+	private SchoolCliques schoolCliques;
+
+	// friend suggestions by friends in common, built the first time any are asked for
+	private Recommender recommender;
+
+	// articulation points and biconnected components, found the first time any are asked for
+	private Biconnectivity biconnectivity;
+
+	// shortest chain work spaces not in use, shared by Friends.shortestChain and QueryServer
+	private final ScratchPool<Friends.ChainScratch> chainScratch =
+			new ScratchPool<>(() -> new Friends.ChainScratch(size()));
+
+	/**
+	 * Returns the number of members.
+	 *
+	 * @return Number of members
+	 */
+	public abstract int size();
+
+	/**
+	 * Returns the start of a member's row of friends.
+	 *
+	 * @param v Member number, from 0 to size(); offset(size()) is the number of friend entries
+	 * @return Position of the member's first friend
+	 */
+	public abstract int offset(int v);
+
+	/**
+	 * Returns a friend entry.
+	 *
+	 * @param e Position, from 0 to offset(size())-1
+	 * @return Member number of the friend
+	 */
+	public abstract int neighbor(int e);
+
+	/**
+	 * Returns the number of friends of a member.
+	 *
+	 * @param v Member number
+	 * @return Number of friends
+	 */
+	public int degree(int v) {
+		return offset(v+1) - offset(v);
+	}
+
+	/**
+	 * Returns the name of a member.
+	 *
+	 * @param v Member number
+	 * @return Name
+	 */
+	public abstract String name(int v);
+
+	/**
+	 * Looks up a member by name.
+	 *
+	 * @param name Name
+	 * @return Member number, -1 if nobody has that name or it is null
+	 */
+	public abstract int person(String name);
+
+	/**
+	 * Returns the school of a member.
+	 *
+	 * @param v Member number
+	 * @return School id, -1 if not a student
+	 */
+	public abstract int schoolOf(int v);
+
+	/**
+	 * Returns the number of schools.
+	 *
+	 * @return Number of schools; school ids run from 0 up to this
+	 */
+	public abstract int schoolCount();
+
+	/**
+	 * Returns the name of a school.
+	 *
+	 * @param s School id
+	 * @return School name
+	 */
+	public abstract String schoolName(int s);
+
+	/**
+	 * Returns the school id of a school name.
+	 *
+	 * @param school School name
+	 * @return School id, -1 if no student goes to that school
+	 */
+	public abstract int schoolId(String school);
+
+	/**
+	 * Returns the cliques of every school, building them on first use.
+	 *
+	 * @return Clique index of this graph
+	 */
+	synchronized SchoolCliques schoolCliques() {
+		if (schoolCliques == null) {
+			schoolCliques = new SchoolCliques(this);
+		}
+		return schoolCliques;
+	}
+
+	/**
+	 * Returns a recommender ranking by friends in common, building it on first use. It holds a
+	 * sorted copy of every row, on the heap, for as long as the graph is kept.
+	 *
+	 * @return Recommender of this graph
+	 */
+	synchronized Recommender recommender() {
+		if (recommender == null) {
+			recommender = new Recommender(this);
+		}
+		return recommender;
+	}
+
+	/**
+	 * Returns the pool of shortest chain work spaces for this graph.
+	 *
+	 * @return Pool of work spaces for a graph of this size, each ready for a search
+	 */
+	ScratchPool<Friends.ChainScratch> chainScratch() {
+		return chainScratch;
+	}
+
+	/**
+	 * Returns the articulation points and biconnected components, finding them on first use.
+	 *
+	 * @return Biconnectivity of this graph
+	 */
+	synchronized Biconnectivity biconnectivity() {
+		if (biconnectivity == null) {
+			biconnectivity = new Biconnectivity(this);
+		}
+		return biconnectivity;
+	}
+}
@@ -0,0 +1,331 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates how many people each person can reach in t friendships or fewer, and from that the
+ * distribution of shortest chain lengths over all pairs, without a search per person (HyperANF,
+ * Boldi, Rosa and Vigna). Each person has a HyperLogLog counter, m registers of a byte each that
+ * estimate the size of a set from the largest run of leading zeros seen among hashes of its
+ * members. At step 0 each counter holds just its person. At step t+1 each person's counter
+ * becomes the union, register by register the maximum, of their own and their friends' counters
+ * at step t, which is then everyone within t+1 friendships.
+ *
+ * Registers are packed eight to a long, and two counters are united a long at a time with a
+ * broadword maximum. Steps run in parallel over ranges of people, and stop once no counter
+ * changes. Only friends whose counters changed in the last step are united again. Memory is two
+ * copies of the counters, 2 n m bytes, plus a float per person per step for the reach estimates.
+ * The relative error of each estimate is about 1.04 / sqrt(m).
+ */
+public class HyperAnf {
+
+	/**
+	 * People per task, below which a range is not split further.
+	 */
+	static final int GRAIN = 1024;
+
+	// graph examined
+	private final Graph g;
+
+	// registers per counter, as a power of 2, and longs per counter
+	private final int log2m, m, words;
+
+	// seed mixed into the hash of each person number
+	private final long seed;
+
+	// number of pairs (v, w) with w within t friendships of v, by step t
+	private final ArrayList<Double> neighborhood = new ArrayList<>();
+
+	// estimated reach of each person, by step
+	private final ArrayList<float[]> reach = new ArrayList<>();
+
+	/**
+	 * Sets up counters for a graph; run() does the work.
+	 *
+	 * @param g Graph
+	 * @param log2m Registers per counter, as a power of 2, from 4 to 16
+	 * @param seed Seed for the hash, so runs with different seeds have independent errors
+	 */
+	public HyperAnf(Graph g, int log2m, long seed) {
+		if (log2m < 4 || log2m > 16) {
+			throw new IllegalArgumentException("log2m must be from 4 to 16: " + log2m);
+		}
+		this.g = g;
+		this.log2m = log2m;
+		this.m = 1 << log2m;
+		this.words = m / 8;
+		this.seed = seed;
+	}
+
+	/**
+	 * Runs steps until no counter changes, or a step limit. Running again starts over, and
+	 * replaces the estimates of the last run.
+	 *
+	 * @param maxSteps Most steps to run
+	 * @param pool Pool to run in
+	 * @return Number of steps run; reach is known for steps 0 up to this
+	 */
+	public int run(int maxSteps, ForkJoinPool pool) {
+		int n = g.size();
+		if ((long) n * words > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(n + " counters of " + m + " registers do not fit in an array");
+		}
+		neighborhood.clear();
+		reach.clear();
+		long[] current = new long[n*words];
+		long[] next = new long[n*words];
+		boolean[] changed = new boolean[n];
+		boolean[] changedNext = new boolean[n];
+		float[] estimates = new float[n];
+		for (int v = 0; v < n; v++) {
+			long h = mix(v ^ seed);
+			int register = (int) (h >>> (64 - log2m));
+			int rank = Long.numberOfLeadingZeros(h << log2m | 1L << (log2m - 1)) + 1;
+			current[v*words + (register >>> 3)] = (long) rank << 8*(register & 7);
+			changed[v] = true;
+		}
+		pool.invoke(new Step(current, null, null, changed, estimates, 0, n));
+		record(estimates);
+
+		int step = 0;
+		while (step < maxSteps) {
+			Arrays.fill(changedNext, false);
+			float[] stepEstimates = estimates.clone();
+			pool.invoke(new Step(current, next, changed, changedNext, stepEstimates, 0, n));
+			boolean any = false;
+			for (int v = 0; v < n && !any; v++) {
+				any = changedNext[v];
+			}
+			if (!any) {
+				break;
+			}
+			long[] t = current;
+			current = next;
+			next = t;
+			boolean[] c = changed;
+			changed = changedNext;
+			changedNext = c;
+			estimates = stepEstimates;
+			record(estimates);
+			step++;
+		}
+		return step;
+	}
+
+	private void record(float[] estimates) {
+		double sum = 0;
+		for (float e : estimates) {
+			sum += e;
+		}
+		neighborhood.add(sum);
+		reach.add(estimates);
+	}
+
+	/**
+	 * One step over a range of people, split in halves until small enough. With no next array,
+	 * just estimates every counter.
+	 */
+	private class Step extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] current, next;
+		private final boolean[] changed, changedNext;
+		private final float[] estimates;
+		private final int from, to;
+
+		Step(long[] current, long[] next, boolean[] changed, boolean[] changedNext, float[] estimates, int from, int to) {
+			this.current = current;
+			this.next = next;
+			this.changed = changed;
+			this.changedNext = changedNext;
+			this.estimates = estimates;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Step(current, next, changed, changedNext, estimates, from, mid),
+						new Step(current, next, changed, changedNext, estimates, mid, to));
+				return;
+			}
+			for (int v = from; v < to; v++) {
+				if (next == null) {
+					estimates[v] = (float) estimate(current, v*words);
+					continue;
+				}
+				System.arraycopy(current, v*words, next, v*words, words);
+				boolean grew = false;
+				for (int e = g.offsets[v]; e < g.offsets[v+1]; e++) {
+					int w = g.neighbors[e];
+					if (changed[w]) {
+						grew |= union(next, v*words, current, w*words);
+					}
+				}
+				if (grew) {
+					changedNext[v] = true;
+					estimates[v] = (float) estimate(next, v*words);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes the maximum of two counters into the first, eight registers at a time. Registers are
+	 * below 128, so (x | H) - y borrows within no byte, and leaves each byte's high bit set just
+	 * where x's register is at least y's.
+	 *
+	 * @return True if the first changed
+	 */
+	private boolean union(long[] into, int at, long[] from, int fromAt) {
+		final long H = 0x8080808080808080L;
+		boolean grew = false;
+		for (int j = 0; j < words; j++) {
+			long x = into[at + j], y = from[fromAt + j];
+			long keep = ((((x | H) - y) & H) >>> 7) * 0xFF; // 0xFF in bytes where x >= y
+			long max = x & keep | y & ~keep;
+			if (max != x) {
+				into[at + j] = max;
+				grew = true;
+			}
+		}
+		return grew;
+	}
+
+	/**
+	 * Estimates the size of the set a counter holds (Flajolet et al., with linear counting for
+	 * small sets).
+	 */
+	private double estimate(long[] registers, int at) {
+		double sum = 0;
+		int zeros = 0;
+		for (int j = 0; j < m; j++) {
+			int register = (int) (registers[at + (j >>> 3)] >>> 8*(j & 7)) & 0xff;
+			sum += Math.scalb(1.0, -register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Scrambles a 64-bit number (MurmurHash3's finalizer).
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ h >>> 33;
+	}
+
+	/**
+	 * Returns the number of steps run.
+	 *
+	 * @return Last step with estimates, -1 if run has not been called
+	 */
+	public int steps() {
+		return neighborhood.size() - 1;
+	}
+
+	private int lastStep() {
+		if (neighborhood.isEmpty()) {
+			throw new IllegalStateException("no estimates before run");
+		}
+		return neighborhood.size() - 1;
+	}
+
+	/**
+	 * Returns the neighborhood function: the number of pairs of people (v, w), counting each
+	 * person with themselves, such that w is within t friendships of v.
+	 *
+	 * @param t Step, 0 or more; past the last step, the last step's value
+	 * @return Estimated number of pairs
+	 * @throws IllegalStateException If run has not been called
+	 */
+	public double neighborhood(int t) {
+		return neighborhood.get(Math.min(t, lastStep()));
+	}
+
+	/**
+	 * Returns the number of people a person can reach in at most t friendships, themselves
+	 * included.
+	 *
+	 * @param v Person number
+	 * @param t Step, 0 or more; past the last step, everyone the person can reach at all
+	 * @return Estimated reach
+	 * @throws IllegalStateException If run has not been called
+	 */
+	public double reach(int v, int t) {
+		return reach.get(Math.min(t, lastStep()))[v];
+	}
+
+	/**
+	 * Returns the distribution of shortest chain lengths.
+	 *
+	 * @return Estimated number of ordered pairs of different people at each distance, by distance;
+	 *         entry 0 is 0
+	 * @throws IllegalStateException If run has not been called
+	 */
+	public double[] distances() {
+		double[] counts = new double[lastStep()+1];
+		for (int t = 1; t <= steps(); t++) {
+			counts[t] = Math.max(0, neighborhood(t) - neighborhood(t-1));
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the average length of a shortest chain, over pairs of different people with one.
+	 *
+	 * @return Estimated average distance, 0 if nobody has friends
+	 * @throws IllegalStateException If run has not been called
+	 */
+	public double averageDistance() {
+		double[] counts = distances();
+		double pairs = 0, sum = 0;
+		for (int t = 1; t < counts.length; t++) {
+			pairs += counts[t];
+			sum += t * counts[t];
+		}
+		return pairs == 0 ? 0 : sum / pairs;
+	}
+
+	/**
+	 * Returns the effective diameter: the distance within which a given part of all pairs who
+	 * can reach each other do, interpolated between steps.
+	 *
+	 * @param part Part of the pairs, more than 0 and at most 1, such as 0.9
+	 * @return Estimated effective diameter
+	 * @throws IllegalArgumentException If part is not more than 0 and at most 1
+	 * @throws IllegalStateException If run has not been called
+	 */
+	public double effectiveDiameter(double part) {
+		if (!(part > 0 && part <= 1)) {
+			throw new IllegalArgumentException("part must be more than 0 and at most 1: " + part);
+		}
+		int last = lastStep();
+		double target = part * neighborhood(last);
+		int t = 0;
+		while (t < last && neighborhood(t) < target) {
+			t++;
+		}
+		if (t == 0) {
+			return 0;
+		}
+		double below = neighborhood(t-1), above = neighborhood(t);
+		return t - 1 + (target - below) / (above - below);
+	}
+}
@@ -0,0 +1,135 @@
+package apps;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts durations (or any non-negative values) in buckets whose width grows with the
+ * value: values below 16 get a bucket each, and each power of 2 above that is split into 16
+ * buckets, so any percentile read back is within about 6% of the true value. Recording is lock
+ * free and may be done from any number of threads.
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Sub-buckets per power of 2, as a power of 2.
+	 */
+	private static final int SUB_BITS = 4;
+
+	/**
+	 * Number of values in each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(64 << SUB_BITS);
+
+	/**
+	 * Number of values recorded, and their sum.
+	 */
+	private final LongAdder count = new LongAdder(), sum = new LongAdder();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value Value, negative values are counted as 0
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 *
+	 * @return Number of values
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 *
+	 * @return Mean, 0 if nothing was recorded
+	 */
+	public double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns a value at or above the given fraction of all values recorded.
+	 *
+	 * @param fraction Fraction, such as 0.99 for the 99th percentile
+	 * @return Upper end of the bucket holding the percentile, 0 if nothing was recorded
+	 */
+	public long percentile(double fraction) {
+		long total = 0;
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && seen > 0) {
+				return upperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of values recorded in each bucket, for buckets that are not empty.
+	 *
+	 * @return Pairs of {upper end of bucket, count}
+	 */
+	public long[][] buckets() {
+		int used = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			if (counts.get(i) > 0) {
+				used++;
+			}
+		}
+		long[][] buckets = new long[used][];
+		for (int i = 0, j = 0; i < counts.length() && j < used; i++) {
+			long n = counts.get(i);
+			if (n > 0) {
+				buckets[j++] = new long[] {upperBound(i), n};
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * Forgets all values recorded.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+	}
+
+	private static int bucket(long value) {
+		if (value < (1 << SUB_BITS)) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+		return ((msb - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < (1 << SUB_BITS)) {
+			return bucket;
+		}
+		int msb = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+		long sub = bucket & ((1 << SUB_BITS) - 1);
+		return ((1L << SUB_BITS | sub) + 1 << (msb - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,169 @@
+package apps;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * A graph read in place from a snapshot file written by GraphSnapshot. The file is memory-mapped,
+ * and names, school ids and rows of friends are read straight out of the mapping, so the heap
+ * holds none of them: only the school names, of which there are few. The operating system pages
+ * the file in as it is read, and can drop pages again under memory pressure, so a graph larger
+ * than the heap, or than memory, can be searched, and the garbage collector never scans it.
+ *
+ * Names are looked up through the NameTable hash slots kept in the snapshot, comparing UTF-8
+ * bytes in the mapping, and a name is only made into a String when asked for. Each mapping is at
+ * most 2 GB, so the rows of friends are mapped in windows of 2^28 ints; the name table sections
+ * must each fit in one mapping, which holds some 130 million people.
+ *
+ * The mapping is read-only and only read with absolute gets, so a MappedGraph can be shared
+ * between threads. Algorithms still keep their own work space per person on the heap, and the
+ * Recommender behind Friends.recommend goes further: it copies every row of friends onto the heap,
+ * sorted and without repeats, so recommending on a graph too large for the heap will fail.
+ */
+public class MappedGraph extends GraphView {
+
+	/**
+	 * Ints per window of a mapped int section, as a power of 2.
+	 */
+	static final int SHIFT = 28;
+
+	// number of members
+	private final int n;
+
+	// names, looked up in place
+	private final NameTable names;
+
+	// school id of each member, -1 if not a student
+	private final IntBuffer[] schoolIds;
+
+	// start of each member's row in neighbors, with offsets[n] = the number of friend entries
+	private final IntBuffer[] offsets;
+
+	// rows of friends, back to back
+	private final IntBuffer[] neighbors;
+
+	// school names, by school id
+	private final String[] schools;
+
+	// school ids, by name
+	private final HashMap<String,Integer> schoolMap;
+
+	/**
+	 * Maps a snapshot. The file must not be changed while the graph is in use.
+	 *
+	 * @param file Snapshot file
+	 * @throws IOException If the file cannot be read, or is not a snapshot
+	 */
+	public MappedGraph(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			int[] header = GraphSnapshot.header(ch, file);
+			n = header[2];
+			int m = header[3], s = header[4];
+			if (4L*(n+1) > Integer.MAX_VALUE || 4L*header[6] > Integer.MAX_VALUE) {
+				throw new IOException(file + ": too many people to map the name table, " + n);
+			}
+			long pos = GraphSnapshot.HEADER;
+			IntBuffer nameStarts = map(ch, pos, 4L*(n+1)).asIntBuffer();
+			pos += 4L*(n+1);
+			MappedByteBuffer nameBytes = map(ch, pos, header[5]);
+			pos += header[5] + GraphSnapshot.pad(header[5]);
+			IntBuffer nameSlots = map(ch, pos, 4L*header[6]).asIntBuffer();
+			pos += 4L*header[6];
+			names = new NameTable(nameBytes, nameStarts, nameSlots);
+			schoolIds = ints(ch, pos, n);
+			pos += 4L*n;
+
+			// Schools are few, so their names are read onto the heap
+			int[] schoolStarts = GraphSnapshot.ints(ch, pos, s+1);
+			pos += 4L*(s+1);
+			MappedByteBuffer schoolBytes = map(ch, pos, header[7]);
+			pos += header[7] + GraphSnapshot.pad(header[7]);
+			schools = new String[s];
+			schoolMap = new HashMap<String,Integer>();
+			for (int k = 0; k < s; k++) {
+				byte[] b = new byte[schoolStarts[k+1] - schoolStarts[k]];
+				schoolBytes.position(schoolStarts[k]);
+				schoolBytes.get(b);
+				schools[k] = new String(b, StandardCharsets.UTF_8);
+				schoolMap.put(schools[k], k);
+			}
+
+			offsets = ints(ch, pos, n+1);
+			pos += 4L*(n+1);
+			neighbors = ints(ch, pos, m);
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel ch, long pos, long size) throws IOException {
+		return ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+	}
+
+	/**
+	 * Maps a section of ints in windows of 2^SHIFT ints.
+	 */
+	private static IntBuffer[] ints(FileChannel ch, long pos, int count) throws IOException {
+		IntBuffer[] windows = new IntBuffer[(int) (((long) count + (1 << SHIFT) - 1) >>> SHIFT)];
+		for (int w = 0; w < windows.length; w++) {
+			long from = (long) w << SHIFT;
+			long length = Math.min(count - from, 1 << SHIFT);
+			windows[w] = map(ch, pos + 4*from, 4*length).asIntBuffer();
+		}
+		return windows;
+	}
+
+	private static int get(IntBuffer[] windows, int i) {
+		return windows[i >>> SHIFT].get(i & ((1 << SHIFT) - 1));
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public int offset(int v) {
+		return get(offsets, v);
+	}
+
+	@Override
+	public int neighbor(int e) {
+		return get(neighbors, e);
+	}
+
+	@Override
+	public String name(int v) {
+		return names.name(v);
+	}
+
+	@Override
+	public int person(String name) {
+		return names.find(name);
+	}
+
+	@Override
+	public int schoolOf(int v) {
+		return get(schoolIds, v);
+	}
+
+	@Override
+	public int schoolCount() {
+		return schools.length;
+	}
+
+	@Override
+	public String schoolName(int s) {
+		return schools[s];
+	}
+
+	@Override
+	public int schoolId(String school) {
+		Integer id = schoolMap.get(school);
+		return id == null ? -1 : id;
+	}
+}
@@ -0,0 +1,186 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs breadth-first searches from up to 64 sources at once (multi-source BFS, MS-BFS). Each
+ * person has a long bitmask with bit i set once the search from source i has reached them, so
+ * one pass over a friend list advances all 64 searches, and people reached by several searches
+ * at the same level are expanded once.
+ *
+ * To write out chains, the bitmask of every person reached at each level is kept, sparsely:
+ * level by level, the people reached, in increasing order, and which searches reached them. A
+ * chain to a target is then followed back one level at a time, to any friend that the same
+ * search reached one level earlier.
+ */
+class MultiSourceBfs extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Largest number of sources searched from at once, one per bit of a long.
+	 */
+	static final int WIDTH = 64;
+
+	// graph searched
+	private final GraphView g;
+
+	// source of each search, by bit
+	private final int[] sources;
+
+	// targets of each search, by bit
+	private final int[][] targets;
+
+	// chain to each target, parallel to targets, filled in by compute()
+	private final ArrayList<String>[][] chains;
+
+	/**
+	 * Sets up the searches from a batch of sources.
+	 *
+	 * @param g graph
+	 * @param sources source of each search, at most WIDTH of them
+	 * @param targets targets of each search
+	 * @param chains where to put the chain to each target, null if there is none
+	 */
+	MultiSourceBfs(GraphView g, int[] sources, int[][] targets, ArrayList<String>[][] chains) {
+		this.g = g;
+		this.sources = sources;
+		this.targets = targets;
+		this.chains = chains;
+	}
+
+	@Override
+	protected void compute() {
+		int n = g.size();
+		long[] seen = new long[n];
+		long[] next = new long[n];
+
+		// Targets not found yet, by person, as bitmasks of the searches looking for them
+		long[] wanted = new long[n];
+		int open = 0;
+		for (int i = 0; i < sources.length; i++) {
+			for (int t : targets[i]) {
+				if ((wanted[t] & 1L << i) == 0) {
+					wanted[t] |= 1L << i;
+					open++;
+				}
+			}
+		}
+
+		// People reached at each level, in increasing order, with the searches that reached them
+		ArrayList<int[]> levelPeople = new ArrayList<>();
+		ArrayList<long[]> levelMasks = new ArrayList<>();
+
+		// Level 0 is the sources themselves
+		int[] frontier = new int[sources.length];
+		int size = 0;
+		for (int i = 0; i < sources.length; i++) {
+			int s = sources[i];
+			if (next[s] == 0) {
+				frontier[size++] = s;
+			}
+			next[s] |= 1L << i;
+		}
+		int[] touched = new int[Math.max(16, sources.length)];
+
+		// Each level: record the new bits of the people touched, then spread them to friends
+		while (size > 0) {
+			Arrays.sort(frontier, 0, size);
+			long[] masks = new long[size];
+			for (int k = 0; k < size; k++) {
+				int v = frontier[k];
+				masks[k] = next[v];
+				seen[v] |= next[v];
+				next[v] = 0;
+				long found = wanted[v] & masks[k];
+				if (found != 0) {
+					wanted[v] &= ~found;
+					open -= Long.bitCount(found);
+				}
+			}
+			levelPeople.add(Arrays.copyOf(frontier, size));
+			levelMasks.add(masks);
+			if (open == 0) {
+				break; // Every target has been found, nothing more to search for
+			}
+
+			// Spread the frontier's bits to friends, keeping only bits new to the friend
+			int count = 0;
+			for (int k = 0; k < size; k++) {
+				int v = frontier[k];
+				long bits = masks[k];
+				for (int e = g.offset(v), end = g.offset(v+1); e < end; e++) {
+					int w = g.neighbor(e);
+					long add = bits & ~seen[w] & ~next[w];
+					if (add != 0) {
+						if (next[w] == 0) {
+							if (count == touched.length) {
+								touched = Arrays.copyOf(touched, count*2);
+							}
+							touched[count++] = w;
+						}
+						next[w] |= add;
+					}
+				}
+			}
+			int[] t = frontier;
+			frontier = touched;
+			touched = t;
+			size = count;
+		}
+
+		// Write out the chain to every target found
+		for (int i = 0; i < sources.length; i++) {
+			for (int k = 0; k < targets[i].length; k++) {
+				chains[i][k] = chain(i, targets[i][k], levelPeople, levelMasks);
+			}
+		}
+	}
+
+	/**
+	 * Follows the chain from a target back to the source of search i.
+	 *
+	 * @param i search number
+	 * @param target target person
+	 * @param levelPeople people reached at each level
+	 * @param levelMasks searches that reached them
+	 * @return names from source to target, null if the search never reached the target
+	 */
+	private ArrayList<String> chain(int i, int target, ArrayList<int[]> levelPeople, ArrayList<long[]> levelMasks) {
+		int level = levelOf(i, target, levelPeople, levelMasks);
+		if (level < 0) {
+			return null;
+		}
+		String[] names = new String[level+1];
+		int v = target;
+		names[level] = g.name(v);
+		for (int l = level-1; l >= 0; l--) {
+			// Any friend reached by search i one level earlier is on a shortest chain
+			int parent = -1;
+			for (int e = g.offset(v), end = g.offset(v+1); e < end && parent < 0; e++) {
+				if (reachedAt(i, g.neighbor(e), levelPeople.get(l), levelMasks.get(l))) {
+					parent = g.neighbor(e);
+				}
+			}
+			v = parent;
+			names[l] = g.name(v);
+		}
+		return new ArrayList<>(Arrays.asList(names));
+	}
+
+	private static int levelOf(int i, int v, ArrayList<int[]> levelPeople, ArrayList<long[]> levelMasks) {
+		for (int l = 0; l < levelPeople.size(); l++) {
+			if (reachedAt(i, v, levelPeople.get(l), levelMasks.get(l))) {
+				return l;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean reachedAt(int i, int v, int[] people, long[] masks) {
+		int k = Arrays.binarySearch(people, v);
+		return k >= 0 && (masks[k] & 1L << i) != 0;
+	}
+}
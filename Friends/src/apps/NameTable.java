@@ -0,0 +1,161 @@
+package apps;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A name-to-number table that looks names up by their UTF-8 bytes, so a name can be found
+ * straight from a file buffer without making a String. Names are stored back to back in one
+ * byte buffer, and an open-addressing hash table (linear probing, mixed FNV-1a hash) holds the person
+ * number of each name in the slot its hash leads to, or -1.
+ *
+ * The table is kept in buffers rather than arrays so that a snapshot can use it in place,
+ * straight from a memory-mapped file. It is never changed once built, and lookups only use
+ * absolute gets, so it can be shared between threads.
+ */
+final class NameTable {
+
+	// names, as UTF-8, back to back
+	final ByteBuffer bytes;
+
+	// start of each name in bytes, with starts[n] = the number of bytes
+	final IntBuffer starts;
+
+	// person number in each hash slot, -1 if empty; the number of slots is a power of 2
+	final IntBuffer slots;
+
+	/**
+	 * Uses a table already built, such as one read from a snapshot.
+	 */
+	NameTable(ByteBuffer bytes, IntBuffer starts, IntBuffer slots) {
+		this.bytes = bytes;
+		this.starts = starts;
+		this.slots = slots;
+	}
+
+	/**
+	 * Builds the table of a list of names. If a name is listed twice, the later one wins, as it
+	 * does in Graph.map.
+	 *
+	 * @param names Names, by person number
+	 */
+	NameTable(String[] names) {
+		int n = names.length;
+		byte[][] encoded = new byte[n][];
+		int[] starts = new int[n+1];
+		for (int v = 0; v < n; v++) {
+			encoded[v] = names[v].getBytes(StandardCharsets.UTF_8);
+			starts[v+1] = starts[v] + encoded[v].length;
+		}
+		byte[] bytes = new byte[starts[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(encoded[v], 0, bytes, starts[v], encoded[v].length);
+		}
+		this.bytes = ByteBuffer.wrap(bytes);
+		this.starts = IntBuffer.wrap(starts);
+
+		int[] slots = new int[slotCount(n)];
+		Arrays.fill(slots, -1);
+		this.slots = IntBuffer.wrap(slots);
+		for (int v = 0; v < n; v++) {
+			int slot = slot(this.bytes, starts[v], starts[v+1]);
+			slots[slot] = v;
+		}
+	}
+
+	/**
+	 * Returns the number of slots a table of n names has: a power of 2, at least twice n, so the
+	 * table is at most half full and probe runs stay short.
+	 */
+	static int slotCount(int n) {
+		return Integer.highestOneBit(Math.max(2, 2*n - 1)) << 1;
+	}
+
+	/**
+	 * Hashes a run of bytes (FNV-1a). FNV's multiply only carries upward, so names that differ in
+	 * their last digit differ little in the low bits a slot is taken from; the result is mixed
+	 * (MurmurHash3's finalizer) to spread them.
+	 */
+	static int hash(ByteBuffer buf, int from, int to) {
+		int h = 0x811c9dc5;
+		for (int i = from; i < to; i++) {
+			h = (h ^ (buf.get(i) & 0xff)) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ h >>> 16;
+	}
+
+	/**
+	 * Finds the slot of a name: the one holding it, or the empty one it would go in.
+	 */
+	private int slot(ByteBuffer buf, int from, int to) {
+		int mask = slots.limit() - 1;
+		int slot = hash(buf, from, to) & mask;
+		for (;;) {
+			int v = slots.get(slot);
+			if (v < 0 || matches(v, buf, from, to)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int v, ByteBuffer buf, int from, int to) {
+		int start = starts.get(v);
+		if (starts.get(v+1) - start != to - from) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			if (bytes.get(start + i - from) != buf.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Looks up a name held in a buffer.
+	 *
+	 * @param buf Buffer holding the name as UTF-8
+	 * @param from Position of the name's first byte
+	 * @param to Position just past its last byte
+	 * @return Person number, -1 if the name is not in the table
+	 */
+	int find(ByteBuffer buf, int from, int to) {
+		return slots.get(slot(buf, from, to));
+	}
+
+	/**
+	 * Looks up a name.
+	 *
+	 * @param name Name
+	 * @return Person number, -1 if the name is null or not in the table
+	 */
+	int find(String name) {
+		if (name == null) {
+			return -1;
+		}
+		byte[] b = name.getBytes(StandardCharsets.UTF_8);
+		return find(ByteBuffer.wrap(b), 0, b.length);
+	}
+
+	/**
+	 * Returns a name.
+	 *
+	 * @param v Person number
+	 * @return Name
+	 */
+	String name(int v) {
+		int start = starts.get(v), end = starts.get(v+1);
+		byte[] b = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			b[i - start] = bytes.get(i);
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,263 @@
+package apps;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the connected components of a graph on all cores, with a lock-free union-find. People
+ * are split into ranges across a ForkJoinPool, and every friendship in a range joins the sets of
+ * its two ends. A set's root is changed with a compare-and-set only while it is still a root, and
+ * always to the smaller of the two roots, so no cycle can form however the threads interleave,
+ * and the root of each component ends up being its first person. Finds halve paths as they go,
+ * also with compare-and-set, so a lost race only leaves a path a little longer.
+ *
+ * A filter can leave people out, along with their friendships: with "student at school X" the
+ * components are the cliques of school X. Components are numbered in the order of their first
+ * person.
+ */
+public class ParallelComponents {
+
+	/**
+	 * People per task, below which a range is not split further.
+	 */
+	static final int GRAIN = 4096;
+
+	// graph examined
+	private final Graph g;
+
+	// component number of each person, -1 for people the filter left out
+	private final int[] component;
+
+	// number of components
+	private final int componentCount;
+
+	// people of each component, back to back, made the first time they are asked for
+	private int[] componentOffsets, componentPeople;
+
+	/**
+	 * Finds the components of a whole graph, in the common pool.
+	 *
+	 * @param g Graph
+	 */
+	public ParallelComponents(Graph g) {
+		this(g, null, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds the components of the people a filter accepts.
+	 *
+	 * @param g Graph
+	 * @param filter Tells which person numbers to keep, null to keep everyone
+	 * @param pool Pool to run in
+	 */
+	public ParallelComponents(Graph g, IntPredicate filter, ForkJoinPool pool) {
+		this.g = g;
+		int n = g.size();
+		AtomicIntegerArray parent = new AtomicIntegerArray(n);
+		component = new int[n];
+		pool.invoke(new Task(g, filter, parent, component, 0, n, Task.INIT));
+		pool.invoke(new Task(g, filter, parent, component, 0, n, Task.UNION));
+		pool.invoke(new Task(g, filter, parent, component, 0, n, Task.ROOT));
+
+		// Roots are the first person of each component, so numbering them in order numbers the
+		// components by first person. component[] holds each person's root until relabeled
+		int count = 0;
+		int[] number = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (component[v] == v) {
+				number[v] = count++;
+			}
+		}
+		componentCount = count;
+		pool.invoke(new Relabel(component, number, 0, n));
+	}
+
+	/**
+	 * Finds the cliques of a school: the components of its students.
+	 *
+	 * @param g Graph
+	 * @param school School name
+	 * @param pool Pool to run in
+	 * @return Components of the school's students, none if no student goes there
+	 */
+	public static ParallelComponents ofSchool(Graph g, String school, ForkJoinPool pool) {
+		int id = g.schoolId(school);
+		return new ParallelComponents(g, v -> id >= 0 && g.schoolIds[v] == id, pool);
+	}
+
+	static int find(AtomicIntegerArray parent, int v) {
+		for (;;) {
+			int p = parent.get(v);
+			if (p == v) {
+				return v;
+			}
+			int gp = parent.get(p);
+			if (gp != p) {
+				parent.compareAndSet(v, p, gp); // Path halving; fine if another thread got there first
+			}
+			v = gp;
+		}
+	}
+
+	static void union(AtomicIntegerArray parent, int v, int w) {
+		for (;;) {
+			int rv = find(parent, v), rw = find(parent, w);
+			if (rv == rw) {
+				return;
+			}
+			// Hang the larger root under the smaller, if it is still a root
+			if (rv < rw ? parent.compareAndSet(rw, rw, rv) : parent.compareAndSet(rv, rv, rw)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * One phase of the search over a range of people, split in halves until small enough.
+	 */
+	private static class Task extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		static final int INIT = 0, UNION = 1, ROOT = 2;
+
+		private final Graph g;
+		private final IntPredicate filter;
+		private final AtomicIntegerArray parent;
+		private final int[] component;
+		private final int from, to, phase;
+
+		Task(Graph g, IntPredicate filter, AtomicIntegerArray parent, int[] component, int from, int to, int phase) {
+			this.g = g;
+			this.filter = filter;
+			this.parent = parent;
+			this.component = component;
+			this.from = from;
+			this.to = to;
+			this.phase = phase;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Task(g, filter, parent, component, from, mid, phase),
+						new Task(g, filter, parent, component, mid, to, phase));
+				return;
+			}
+			for (int v = from; v < to; v++) {
+				boolean kept = filter == null || filter.test(v);
+				if (phase == INIT) {
+					parent.set(v, v);
+				} else if (phase == UNION) {
+					if (!kept) {
+						continue;
+					}
+					// Each friendship is in both rows; take it from the row of its larger end
+					for (int e = g.offsets[v]; e < g.offsets[v+1]; e++) {
+						int w = g.neighbors[e];
+						if (w < v && (filter == null || filter.test(w))) {
+							union(parent, v, w);
+						}
+					}
+				} else {
+					component[v] = kept ? find(parent, v) : -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Turns the root of each person into the number of their component.
+	 */
+	private static class Relabel extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] component, number;
+		private final int from, to;
+
+		Relabel(int[] component, int[] number, int from, int to) {
+			this.component = component;
+			this.number = number;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Relabel(component, number, from, mid), new Relabel(component, number, mid, to));
+				return;
+			}
+			for (int v = from; v < to; v++) {
+				if (component[v] >= 0) {
+					component[v] = number[component[v]];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of components.
+	 *
+	 * @return Number of components
+	 */
+	public int componentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns the component of a person.
+	 *
+	 * @param v Person number
+	 * @return Component number, from 0 to componentCount()-1, or -1 if the filter left v out
+	 */
+	public int component(int v) {
+		return component[v];
+	}
+
+	/**
+	 * Tells if two people are in the same component.
+	 *
+	 * @param v First person number
+	 * @param w Second person number
+	 * @return True if there is a chain between them through people the filter kept
+	 */
+	public boolean connected(int v, int w) {
+		return component[v] >= 0 && component[v] == component[w];
+	}
+
+	/**
+	 * Returns the people of a component.
+	 *
+	 * @param c Component number, from 0 to componentCount()-1
+	 * @return Person numbers, in increasing order
+	 */
+	public synchronized int[] people(int c) {
+		if (componentOffsets == null) {
+			int n = g.size();
+			componentOffsets = new int[componentCount+1];
+			for (int v = 0; v < n; v++) {
+				if (component[v] >= 0) {
+					componentOffsets[component[v]+1]++;
+				}
+			}
+			for (int k = 0; k < componentCount; k++) {
+				componentOffsets[k+1] += componentOffsets[k];
+			}
+			componentPeople = new int[componentOffsets[componentCount]];
+			int[] next = Arrays.copyOf(componentOffsets, componentCount);
+			for (int v = 0; v < n; v++) {
+				if (component[v] >= 0) {
+					componentPeople[next[component[v]]++] = v;
+				}
+			}
+		}
+		return Arrays.copyOfRange(componentPeople, componentOffsets[c], componentOffsets[c+1]);
+	}
+}
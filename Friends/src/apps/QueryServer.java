@@ -0,0 +1,292 @@
+package apps;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class serves queries against an immutable graph over HTTP on the local machine, for
+ * many clients at once. Requests:
+ *
+ *   /chain?p1=sam&amp;p2=aparna   shortestChain
+ *   /cliques?school=rutgers    cliques
+ *   /connectors                connectors
+ *   /stats                     queries, rejections, queries per second and latency percentiles,
+ *                              by query type
+ *
+ * Results are plain text, one name per line, with a blank line between cliques.
+ *
+ * At most a set number of queries run at once. A request that is not let in within the
+ * admission wait gets 503 right away, so a burst of load is shed instead of piling up in the
+ * executor's queue. Each query running holds one shortest chain work space, taken from the
+ * graph's pool, which keeps one per query let in, so searches allocate no per-person arrays,
+ * on platform threads or virtual ones alike. Cliques and connectors are found once, the first
+ * time they are asked for, and kept with the graph.
+ */
+public class QueryServer {
+
+	/**
+	 * Query types, each with its own counts and latencies.
+	 */
+	private static final String[] TYPES = {"chain", "cliques", "connectors"};
+
+	/**
+	 * Graph queries are answered from.
+	 */
+	private final GraphView g;
+
+	/**
+	 * The HTTP server.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Permits for queries running at once, and their number.
+	 */
+	private final Semaphore admission;
+	private final int maxQueries;
+
+	/**
+	 * Longest time a request waits for a permit, in milliseconds.
+	 */
+	private final long admissionWait;
+
+	/**
+	 * Latency of each query type, in microseconds, by type.
+	 */
+	private final Map<String,LatencyHistogram> latency = new HashMap<>();
+
+	/**
+	 * Requests of each query type turned away, by type.
+	 */
+	private final Map<String,LongAdder> rejected = new HashMap<>();
+
+	/**
+	 * Time the server was started, in nanoseconds.
+	 */
+	private long started;
+
+	/**
+	 * Initializes a server on the given port of the loopback address.
+	 *
+	 * @param g Graph to query, which must not change while it is served
+	 * @param port Port, 0 for any free port
+	 * @param executor Executor requests are handled on. On a JDK with virtual threads, an executor
+	 *        that starts a virtual thread per task may be passed.
+	 * @param maxQueries Most queries running at once
+	 * @param admissionWait Longest time a request waits to be let in, in milliseconds
+	 * @throws IOException If the port can't be bound
+	 */
+	public QueryServer(GraphView g, int port, Executor executor, int maxQueries, long admissionWait)
+			throws IOException {
+		if (maxQueries < 1) {
+			throw new IllegalArgumentException("maxQueries must be at least 1: " + maxQueries);
+		}
+		this.g = g;
+		this.admission = new Semaphore(maxQueries);
+		this.maxQueries = maxQueries;
+		// Keep a shortest chain work space for every query that may run at once
+		g.chainScratch().raiseBound(maxQueries);
+		this.admissionWait = admissionWait;
+		for (String type : TYPES) {
+			latency.put(type, new LatencyHistogram());
+			rejected.put(type, new LongAdder());
+		}
+		server = HttpServer.create(new InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), port), 128);
+		server.setExecutor(executor);
+		server.createContext("/chain", exchange -> query(exchange, "chain",
+				params -> Friends.shortestChain(g, required(params, "p1"), required(params, "p2"))));
+		server.createContext("/cliques", exchange -> query(exchange, "cliques", params -> {
+			ArrayList<ArrayList<String>> cliques = Friends.cliques(g, required(params, "school"));
+			if (cliques == null) {
+				return null;
+			}
+			ArrayList<String> lines = new ArrayList<>();
+			for (ArrayList<String> clique : cliques) {
+				if (!lines.isEmpty()) {
+					lines.add("");
+				}
+				lines.addAll(clique);
+			}
+			return lines;
+		}));
+		server.createContext("/connectors", exchange -> query(exchange, "connectors",
+				params -> Friends.connectors(g)));
+		server.createContext("/stats", exchange -> respond(exchange, 200, stats()));
+	}
+
+	/**
+	 * Starts serving.
+	 */
+	public void start() {
+		started = System.nanoTime();
+		server.start();
+	}
+
+	/**
+	 * Stops serving, waiting up to a second for requests in progress.
+	 */
+	public void stop() {
+		server.stop(1);
+	}
+
+	/**
+	 * Returns the port the server is bound to.
+	 *
+	 * @return Port
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns the latencies of a query type.
+	 *
+	 * @param type "chain", "cliques" or "connectors"
+	 * @return Latencies of queries answered, in microseconds, null for an unknown type
+	 */
+	public LatencyHistogram latency(String type) {
+		return latency.get(type);
+	}
+
+	/**
+	 * Returns the number of requests of a query type turned away by admission control.
+	 *
+	 * @param type "chain", "cliques" or "connectors"
+	 * @return Number of requests rejected
+	 */
+	public long rejected(String type) {
+		LongAdder count = rejected.get(type);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Returns a report of each query type's count, rejections, queries per second since start,
+	 * and latency percentiles.
+	 *
+	 * @return Report, one statistic per line
+	 */
+	public String stats() {
+		double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+		StringBuilder report = new StringBuilder();
+		for (String type : TYPES) {
+			LatencyHistogram h = latency.get(type);
+			report.append(String.format("%s_queries %d%n%s_rejected %d%n%s_qps %.1f%n%s_mean_us %.1f%n"
+					+ "%s_p50_us %d%n%s_p90_us %d%n%s_p99_us %d%n%s_p999_us %d%n",
+					type, h.count(), type, rejected(type), type, h.count() / seconds, type, h.mean(),
+					type, h.percentile(0.50), type, h.percentile(0.90), type, h.percentile(0.99),
+					type, h.percentile(0.999)));
+		}
+		report.append(String.format("running %d%npeople %d%n",
+				maxQueries - admission.availablePermits(), g.size()));
+		return report.toString();
+	}
+
+	/**
+	 * A query from request parameters to a result list.
+	 */
+	private interface Query {
+		ArrayList<String> run(Map<String,String> params);
+	}
+
+	private void query(HttpExchange exchange, String type, Query query) throws IOException {
+		long start = System.nanoTime();
+		boolean admitted;
+		try {
+			admitted = admission.tryAcquire(admissionWait, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			admitted = false;
+		}
+		if (!admitted) {
+			rejected.get(type).increment();
+			respond(exchange, 503, "too many queries\n");
+			return;
+		}
+		int status = 200;
+		StringBuilder body = new StringBuilder();
+		try {
+			ArrayList<String> result = query.run(params(exchange.getRequestURI().getRawQuery()));
+			if (result != null) {
+				for (String line : result) {
+					body.append(line).append('\n');
+				}
+			}
+		} catch (RuntimeException e) {
+			status = 400;
+			body.append(e).append('\n');
+		} finally {
+			admission.release();
+		}
+		latency.get(type).record((System.nanoTime() - start) / 1000);
+		respond(exchange, status, body.toString());
+	}
+
+	private static String required(Map<String,String> params, String name) {
+		String value = params.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("missing parameter " + name);
+		}
+		return value;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String,String> params(String query) throws UnsupportedEncodingException {
+		Map<String,String> params = new HashMap<>();
+		if (query == null) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Loads a graph and serves it until the process is stopped, printing stats every 10 seconds.
+	 *
+	 * @param args port, graph file (a text graph file, or a snapshot, which is served from a
+	 *        memory map), and optionally the most queries running at once
+	 * @throws Exception If the graph can't be read or the server can't start
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: QueryServer port graphFile [maxQueries]");
+			return;
+		}
+		int threads = Runtime.getRuntime().availableProcessors() * 2;
+		int maxQueries = args.length > 2 ? Integer.parseInt(args[2]) : threads;
+		int magic;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(args[1]))) {
+			magic = in.available() >= 4 ? in.readInt() : 0;
+		}
+		GraphView g = magic == GraphSnapshot.MAGIC ? new MappedGraph(Paths.get(args[1]))
+				: GraphLoader.load(Paths.get(args[1]));
+		QueryServer server = new QueryServer(g, Integer.parseInt(args[0]), Executors.newFixedThreadPool(threads),
+				maxQueries, 100);
+		server.start();
+		System.out.println("serving " + g.size() + " people on port " + server.port());
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(() -> System.out.print(server.stats()), 10, 10, TimeUnit.SECONDS);
+	}
+}
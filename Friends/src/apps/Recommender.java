@@ -0,0 +1,459 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Suggests friends ("people you may know") and measures how closely knit the graph is.
+ *
+ * A person's candidates are the friends of their friends they are not already friends with,
+ * ranked by the number of friends they have in common, plus a bonus for going to the same school
+ * if one is given. Candidates are counted by walking the friend lists of the person's friends
+ * into a score array, so each friend of a friend costs one add, and the top k are picked with a
+ * bounded heap. recommendAll does this for everyone at once, in parallel.
+ *
+ * Triangles (three people who are all friends) are counted from the same friend lists, kept
+ * sorted and without repeats: for each friendship, the friends the two have in common. Lists of
+ * similar length are intersected by merging, a short list against a much longer one by binary
+ * search, and a person with very many friends marks them in a bitset once and tests each
+ * friend's friends against it.
+ */
+public class Recommender {
+
+	/**
+	 * People per task in parallel passes, below which a range is not split further.
+	 */
+	static final int GRAIN = 1024;
+
+	/**
+	 * People with at least this many friends have their triangles counted with a bitset.
+	 */
+	static final int HUB_DEGREE = 1024;
+
+	/**
+	 * Lists this many times longer than the other are searched, not merged.
+	 */
+	static final int SKEW = 32;
+
+	// graph examined
+	private final GraphView g;
+
+	// score added for a candidate at the same school as the person
+	private final double schoolWeight;
+
+	// friend lists, sorted and without repeats or the person themselves: rows as in Graph
+	private final int[] offsets, neighbors;
+
+	// triangles through each person, counted the first time they are asked for
+	private long[] triangles;
+
+	// work spaces for ranking and counting, pooled so a call allocates only its result
+	private final ScratchPool<Scratch> scratch;
+
+	/**
+	 * Makes a recommender ranking candidates by friends in common alone.
+	 *
+	 * @param g Graph
+	 */
+	public Recommender(GraphView g) {
+		this(g, 0);
+	}
+
+	/**
+	 * Makes a recommender. The friend lists are copied out of the graph, sorted and without
+	 * repeats, so this takes heap for every friend entry of the graph even if g is a MappedGraph.
+	 *
+	 * @param g Graph
+	 * @param schoolWeight Added to the score of a candidate at the same school as the person;
+	 *        a mutual friend counts 1
+	 */
+	public Recommender(GraphView g, double schoolWeight) {
+		this.g = g;
+		this.schoolWeight = schoolWeight;
+		int n = g.size();
+		offsets = new int[n+1];
+		int[] rows = new int[g.offset(n)];
+		for (int v = 0; v < n; v++) {
+			int from = g.offset(v), to = g.offset(v+1);
+			for (int e = from; e < to; e++) {
+				rows[offsets[v] + e - from] = g.neighbor(e);
+			}
+			Arrays.sort(rows, offsets[v], offsets[v] + to - from);
+			int d = offsets[v];
+			for (int e = offsets[v]; e < offsets[v] + to - from; e++) {
+				if (rows[e] != v && (d == offsets[v] || rows[d-1] != rows[e])) {
+					rows[d++] = rows[e];
+				}
+			}
+			offsets[v+1] = d;
+		}
+		neighbors = Arrays.copyOf(rows, offsets[n]);
+		scratch = new ScratchPool<>(() -> new Scratch(n));
+	}
+
+	/**
+	 * Work space for ranking candidates and counting triangles, for one call at a time.
+	 */
+	private static final class Scratch {
+		// score of each candidate
+		final double[] score;
+
+		// candidates found for the current person
+		int[] touched = new int[64];
+
+		// stamp marking the person and their friends, and its negative marking candidates
+		final int[] friend;
+		int stamp;
+
+		// friends of the person, as a bitset, for counting triangles of people with many friends
+		final long[] bits;
+
+		Scratch(int n) {
+			score = new double[n];
+			friend = new int[n];
+			bits = new long[(n + 63) >>> 6];
+		}
+	}
+
+	/**
+	 * Suggests friends for a person.
+	 *
+	 * @param person Name
+	 * @param k Most suggestions wanted
+	 * @return Names of up to k people, best first. Null if the name is not in the graph.
+	 * @throws IllegalArgumentException If k is negative
+	 */
+	public ArrayList<String> recommend(String person, int k) {
+		checkK(k);
+		int v = g.person(person);
+		if (v < 0) {
+			return null;
+		}
+		int[] best = recommend(v, k);
+		ArrayList<String> names = new ArrayList<>(best.length);
+		for (int w : best) {
+			names.add(g.name(w));
+		}
+		return names;
+	}
+
+	/**
+	 * Suggests friends for a person.
+	 *
+	 * @param v Person number
+	 * @param k Most suggestions wanted
+	 * @return Person numbers of up to k people, best first; ties go to the lower number
+	 * @throws IllegalArgumentException If k is negative
+	 */
+	public int[] recommend(int v, int k) {
+		checkK(k);
+		Scratch s = scratch.take();
+		int[] best = recommend(v, k, s);
+		scratch.give(s);
+		return best;
+	}
+
+	private static void checkK(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+	}
+
+	private int[] recommend(int v, int k, Scratch s) {
+		if (s.stamp == Integer.MAX_VALUE) {
+			Arrays.fill(s.friend, 0);
+			s.stamp = 0;
+		}
+		s.stamp++;
+		s.friend[v] = s.stamp;
+		for (int e = offsets[v]; e < offsets[v+1]; e++) {
+			s.friend[neighbors[e]] = s.stamp;
+		}
+
+		// Every friend of a friend who is not a friend gets 1 per friend in common
+		int school = g.schoolOf(v);
+		int count = 0;
+		for (int e = offsets[v]; e < offsets[v+1]; e++) {
+			int f = neighbors[e];
+			for (int e2 = offsets[f]; e2 < offsets[f+1]; e2++) {
+				int c = neighbors[e2];
+				if (s.friend[c] == s.stamp) {
+					continue;
+				}
+				if (s.friend[c] != -s.stamp) {
+					s.friend[c] = -s.stamp;
+					if (count == s.touched.length) {
+						s.touched = Arrays.copyOf(s.touched, 2*count);
+					}
+					s.touched[count++] = c;
+					boolean sameSchool = school >= 0 && g.schoolOf(c) == school;
+					s.score[c] = sameSchool ? schoolWeight : 0;
+				}
+				s.score[c] += 1;
+			}
+		}
+
+		// Keep the best k in a heap with the worst on top
+		int[] heap = new int[Math.min(k, count)];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			int c = s.touched[i];
+			if (size < heap.length) {
+				heap[size++] = c;
+				siftUp(heap, size-1, s.score);
+			} else if (size > 0 && better(c, heap[0], s.score)) {
+				heap[0] = c;
+				siftDown(heap, size, s.score);
+			}
+		}
+		// Take the worst off the top, filling the result from the back
+		int[] best = new int[size];
+		for (int i = size-1; i >= 0; i--) {
+			best[i] = heap[0];
+			heap[0] = heap[i];
+			siftDown(heap, i, s.score);
+		}
+		return best;
+	}
+
+	private static boolean better(int a, int b, double[] score) {
+		return score[a] > score[b] || score[a] == score[b] && a < b;
+	}
+
+	private static void siftUp(int[] heap, int i, double[] score) {
+		while (i > 0 && better(heap[(i-1)/2], heap[i], score)) {
+			int p = (i-1)/2;
+			int t = heap[p];
+			heap[p] = heap[i];
+			heap[i] = t;
+			i = p;
+		}
+	}
+
+	private static void siftDown(int[] heap, int size, double[] score) {
+		int i = 0;
+		for (;;) {
+			int worst = i, l = 2*i+1, r = l+1;
+			if (l < size && better(heap[worst], heap[l], score)) {
+				worst = l;
+			}
+			if (r < size && better(heap[worst], heap[r], score)) {
+				worst = r;
+			}
+			if (worst == i) {
+				return;
+			}
+			int t = heap[worst];
+			heap[worst] = heap[i];
+			heap[i] = t;
+			i = worst;
+		}
+	}
+
+	/**
+	 * Suggests friends for everyone, in parallel.
+	 *
+	 * @param k Most suggestions wanted per person
+	 * @param pool Pool to run in
+	 * @return Suggestions for each person, by person number, as recommend(v, k) gives them
+	 * @throws IllegalArgumentException If k is negative
+	 */
+	public int[][] recommendAll(int k, ForkJoinPool pool) {
+		checkK(k);
+		int n = g.size();
+		int[][] all = new int[n][];
+		pool.invoke(new Pass(0, n, (from, to) -> {
+			Scratch s = scratch.take();
+			for (int v = from; v < to; v++) {
+				all[v] = recommend(v, k, s);
+			}
+			scratch.give(s);
+		}));
+		return all;
+	}
+
+	/**
+	 * Returns the number of friends two people have in common.
+	 *
+	 * @param v First person number
+	 * @param w Second person number
+	 * @return Number of friends in common
+	 */
+	public int mutualFriends(int v, int w) {
+		return intersect(offsets[v], offsets[v+1], offsets[w], offsets[w+1]);
+	}
+
+	/**
+	 * Counts the entries two sorted runs of neighbors have in common.
+	 */
+	private int intersect(int a, int aEnd, int b, int bEnd) {
+		if (aEnd - a > bEnd - b) {
+			int t = a;
+			a = b;
+			b = t;
+			t = aEnd;
+			aEnd = bEnd;
+			bEnd = t;
+		}
+		int common = 0;
+		if ((long) (aEnd - a) * SKEW < bEnd - b) {
+			// Look each entry of the short run up in the long one, which only moves forward
+			for (; a < aEnd && b < bEnd; a++) {
+				int k = Arrays.binarySearch(neighbors, b, bEnd, neighbors[a]);
+				if (k >= 0) {
+					common++;
+					b = k + 1;
+				} else {
+					b = -k - 1;
+				}
+			}
+			return common;
+		}
+		while (a < aEnd && b < bEnd) {
+			if (neighbors[a] < neighbors[b]) {
+				a++;
+			} else if (neighbors[a] > neighbors[b]) {
+				b++;
+			} else {
+				common++;
+				a++;
+				b++;
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * Counts the triangles through each person, the first time they are asked for.
+	 */
+	private synchronized long[] triangleCounts() {
+		if (triangles == null) {
+			int n = g.size();
+			long[] counts = new long[n];
+			ForkJoinPool.commonPool().invoke(new Pass(0, n, (from, to) -> {
+				Scratch s = scratch.take();
+				for (int v = from; v < to; v++) {
+					counts[v] = trianglesThrough(v, s.bits);
+				}
+				scratch.give(s);
+			}));
+			triangles = counts;
+		}
+		return triangles;
+	}
+
+	/**
+	 * Counts the friendships among a person's friends.
+	 */
+	private long trianglesThrough(int v, long[] bits) {
+		long twice = 0; // Each friendship among v's friends is seen from both ends
+		if (offsets[v+1] - offsets[v] >= HUB_DEGREE) {
+			for (int e = offsets[v]; e < offsets[v+1]; e++) {
+				bits[neighbors[e] >>> 6] |= 1L << neighbors[e];
+			}
+			for (int e = offsets[v]; e < offsets[v+1]; e++) {
+				int f = neighbors[e];
+				for (int e2 = offsets[f]; e2 < offsets[f+1]; e2++) {
+					if ((bits[neighbors[e2] >>> 6] & 1L << neighbors[e2]) != 0) {
+						twice++;
+					}
+				}
+			}
+			for (int e = offsets[v]; e < offsets[v+1]; e++) {
+				bits[neighbors[e] >>> 6] = 0;
+			}
+		} else {
+			for (int e = offsets[v]; e < offsets[v+1]; e++) {
+				int f = neighbors[e];
+				twice += intersect(offsets[v], offsets[v+1], offsets[f], offsets[f+1]);
+			}
+		}
+		return twice / 2;
+	}
+
+	/**
+	 * Returns the number of triangles in the graph.
+	 *
+	 * @return Number of sets of three people who are all friends
+	 */
+	public long triangles() {
+		long sum = 0;
+		for (long t : triangleCounts()) {
+			sum += t;
+		}
+		return sum / 3;
+	}
+
+	/**
+	 * Returns the number of triangles through a person.
+	 *
+	 * @param v Person number
+	 * @return Number of friendships between v's friends
+	 */
+	public long triangles(int v) {
+		return triangleCounts()[v];
+	}
+
+	/**
+	 * Returns a person's clustering coefficient: the part of the pairs of their friends who are
+	 * friends themselves.
+	 *
+	 * @param v Person number
+	 * @return From 0 to 1; 0 for people with fewer than two friends
+	 */
+	public double clustering(int v) {
+		long d = offsets[v+1] - offsets[v];
+		return d < 2 ? 0 : 2.0 * triangles(v) / (d * (d-1));
+	}
+
+	/**
+	 * Returns the clustering coefficient of the graph, averaged over all people (Watts and
+	 * Strogatz).
+	 *
+	 * @return From 0 to 1; 0 for a graph with no people
+	 */
+	public double averageClustering() {
+		int n = g.size();
+		double sum = 0;
+		for (int v = 0; v < n; v++) {
+			sum += clustering(v);
+		}
+		return n == 0 ? 0 : sum / n;
+	}
+
+	/**
+	 * Work on a range of people.
+	 */
+	private interface RangeBody {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Runs a body over a range of people, split in halves until small enough.
+	 */
+	private static class Pass extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+		private final RangeBody body;
+
+		Pass(int from, int to, RangeBody body) {
+			this.from = from;
+			this.to = to;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Pass(from, mid, body), new Pass(mid, to, body));
+			} else {
+				body.run(from, to);
+			}
+		}
+	}
+}
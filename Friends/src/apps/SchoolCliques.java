@@ -0,0 +1,221 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The cliques of every school, found at once. A clique is a group of students at the same school
+ * with a chain of friendships between any two of them that stays within the school.
+ *
+ * One pass over the friendships joins the two ends of each friendship between students at the
+ * same school in a union-find (disjoint-set forest, union by size with path halving). The
+ * cliques of each school are then grouped from the students of that school, so looking up a
+ * school's cliques costs no more than writing them out.
+ *
+ * Friendships can be added afterwards with addFriendship. Each one is a union in the forest, and
+ * only the school it joins two cliques of has its cliques grouped again, the next time they are
+ * looked up. The index is locked while it is read or changed, but not while names are written
+ * out, so an index can be shared between threads.
+ */
+public class SchoolCliques {
+
+	// graph the index was built from
+	private final GraphView g;
+
+	// union-find parent of each member; roots are their own parent
+	private final int[] parent;
+
+	// number of members under each root
+	private final int[] size;
+
+	// students of each school, in member order: school s runs from schoolOffsets[s] up to schoolOffsets[s+1]
+	private final int[] schoolOffsets, schoolMembers;
+
+	// member numbers of each clique of each school, null if the school's cliques must be grouped again
+	private final int[][][] cliques;
+
+	// clique number of each root while a school is grouped, -1 otherwise
+	private final int[] label;
+
+	/**
+	 * Builds the index for a graph.
+	 *
+	 * @param g Graph
+	 */
+	public SchoolCliques(GraphView g) {
+		this.g = g;
+		int n = g.size();
+		parent = new int[n];
+		size = new int[n];
+		label = new int[n];
+		for (int v = 0; v < n; v++) {
+			parent[v] = v;
+			size[v] = 1;
+			label[v] = -1;
+		}
+
+		// Group students by school, keeping member order within each school
+		int schools = g.schoolCount();
+		schoolOffsets = new int[schools+1];
+		int[] schoolIds = new int[n];
+		for (int v = 0; v < n; v++) {
+			schoolIds[v] = g.schoolOf(v);
+			if (schoolIds[v] >= 0) {
+				schoolOffsets[schoolIds[v]+1]++;
+			}
+		}
+		for (int s = 0; s < schools; s++) {
+			schoolOffsets[s+1] += schoolOffsets[s];
+		}
+		schoolMembers = new int[schoolOffsets[schools]];
+		int[] next = Arrays.copyOf(schoolOffsets, schools);
+		for (int v = 0; v < n; v++) {
+			if (schoolIds[v] >= 0) {
+				schoolMembers[next[schoolIds[v]]++] = v;
+			}
+		}
+
+		// Each friendship is in both rows; take it from the row of its smaller end
+		for (int v = 0; v < n; v++) {
+			int school = schoolIds[v];
+			if (school < 0) {
+				continue;
+			}
+			for (int e = g.offset(v), end = g.offset(v+1); e < end; e++) {
+				int w = g.neighbor(e);
+				if (v < w && schoolIds[w] == school) {
+					union(v, w);
+				}
+			}
+		}
+
+		cliques = new int[schools][][];
+		for (int s = 0; s < schools; s++) {
+			cliques[s] = group(s);
+		}
+	}
+
+	private int find(int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Joins the sets of two members.
+	 *
+	 * @return false if they were in the same set already
+	 */
+	private boolean union(int v, int w) {
+		int rv = find(v), rw = find(w);
+		if (rv == rw) {
+			return false;
+		}
+		if (size[rv] < size[rw]) {
+			int t = rv;
+			rv = rw;
+			rw = t;
+		}
+		parent[rw] = rv;
+		size[rv] += size[rw];
+		return true;
+	}
+
+	/**
+	 * Groups the students of a school by clique. Cliques are numbered in the order of their first
+	 * student, which is the order Friends.cliques used to find them in.
+	 */
+	private int[][] group(int school) {
+		int from = schoolOffsets[school], to = schoolOffsets[school+1];
+		int count = 0;
+		int[] sizes = new int[to - from];
+		for (int k = from; k < to; k++) {
+			int root = find(schoolMembers[k]);
+			if (label[root] < 0) {
+				label[root] = count++;
+			}
+			sizes[label[root]]++;
+		}
+		int[][] grouped = new int[count][];
+		for (int c = 0; c < count; c++) {
+			grouped[c] = new int[sizes[c]];
+			sizes[c] = 0;
+		}
+		for (int k = from; k < to; k++) {
+			int c = label[find(schoolMembers[k])];
+			grouped[c][sizes[c]++] = schoolMembers[k];
+		}
+		// Clear the labels for the next school
+		for (int k = from; k < to; k++) {
+			label[find(schoolMembers[k])] = -1;
+		}
+		return grouped;
+	}
+
+	/**
+	 * Adds a friendship that arrived after the graph was read. Only friendships between students
+	 * at the same school change any cliques.
+	 *
+	 * @param p1 Name of first person
+	 * @param p2 Name of second person
+	 * @throws IllegalArgumentException If either name is not in the graph
+	 */
+	public synchronized void addFriendship(String p1, String p2) {
+		int v1 = g.person(p1), v2 = g.person(p2);
+		if (v1 < 0 || v2 < 0) {
+			throw new IllegalArgumentException("unknown person: " + (v1 < 0 ? p1 : p2));
+		}
+		int school = g.schoolOf(v1);
+		if (school >= 0 && g.schoolOf(v2) == school && union(v1, v2)) {
+			cliques[school] = null;
+		}
+	}
+
+	/**
+	 * Returns the number of cliques at a school.
+	 *
+	 * @param school School name
+	 * @return Number of cliques, 0 if no student goes to that school
+	 */
+	public synchronized int cliqueCount(String school) {
+		int s = g.schoolId(school);
+		return s < 0 ? 0 : grouped(s).length;
+	}
+
+	/**
+	 * Returns the cliques of a school.
+	 *
+	 * @param school School name
+	 * @return Names of the students of each clique, in the order they are listed in the graph
+	 *         file. Null if no student goes to that school.
+	 */
+	public ArrayList<ArrayList<String>> cliques(String school) {
+		int s = g.schoolId(school);
+		if (s < 0) {
+			return null;
+		}
+		// A school's groups are replaced when they change, never changed, so they can be read unlocked
+		int[][] grouped;
+		synchronized (this) {
+			grouped = grouped(s);
+		}
+		ArrayList<ArrayList<String>> result = new ArrayList<>(grouped.length);
+		for (int[] members : grouped) {
+			ArrayList<String> clique = new ArrayList<>(members.length);
+			for (int v : members) {
+				clique.add(g.name(v));
+			}
+			result.add(clique);
+		}
+		return result;
+	}
+
+	private int[][] grouped(int school) {
+		if (cliques[school] == null) {
+			cliques[school] = group(school);
+		}
+		return cliques[school];
+	}
+}
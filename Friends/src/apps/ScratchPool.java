@@ -0,0 +1,76 @@
+package apps;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Work spaces of one kind, kept for reuse so that a search does not allocate arrays the size of
+ * the graph on every call. A call takes a work space, and gives it back when it is done; if none
+ * is free, a new one is made. At most a bound of them are kept while not in use, one per
+ * processor unless raised, and the rest are dropped when given back. So a burst of threads does
+ * not leave memory held for as long as they live, and everything kept goes with the graph or
+ * object that owns the pool. Unlike a ThreadLocal, a pool also serves a thread per request.
+ *
+ * A work space must be given back only by a call that finished normally: one left half used by
+ * an exception is dropped instead.
+ */
+final class ScratchPool<T> {
+
+	// work spaces not in use
+	private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+
+	// number of them, kept apart since ConcurrentLinkedQueue.size walks the queue
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	// most work spaces kept while not in use
+	private volatile int bound = Runtime.getRuntime().availableProcessors();
+
+	// makes a new work space
+	private final Supplier<T> factory;
+
+	/**
+	 * Makes an empty pool.
+	 *
+	 * @param factory Makes a work space when none is free
+	 */
+	ScratchPool(Supplier<T> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Takes a work space, making one if none is free.
+	 *
+	 * @return Work space, for this caller alone until given back
+	 */
+	T take() {
+		T scratch = idle.poll();
+		if (scratch == null) {
+			return factory.get();
+		}
+		idleCount.decrementAndGet();
+		return scratch;
+	}
+
+	/**
+	 * Gives a work space back, ready for the next call, or drops it if the pool is full.
+	 *
+	 * @param scratch Work space taken from this pool
+	 */
+	void give(T scratch) {
+		if (idleCount.incrementAndGet() <= bound) {
+			idle.offer(scratch);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Raises the number of work spaces kept, for a caller that runs up to that many calls at once.
+	 *
+	 * @param atLeast Most calls the caller runs at once
+	 */
+	synchronized void raiseBound(int atLeast) {
+		bound = Math.max(bound, atLeast);
+	}
+}
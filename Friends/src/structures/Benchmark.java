@@ -0,0 +1,436 @@
+package structures;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * This class times the int queues and stack against the generic Queue and Stack holding
+ * Integers: filling and draining, a queue or stack kept short while items pass through, and
+ * breadth-first and depth-first searches of a random graph, which is how the graph code uses
+ * them. ConcurrentIntQueue is timed against ConcurrentLinkedQueue and ArrayBlockingQueue with
+ * threads adding and taking at once. Each benchmark is run a number of times to warm up the JIT
+ * compiler, then a number of times measured, and reports the median time per operation and the
+ * mean bytes allocated per operation.
+ *
+ * Bytes allocated are read from the JVM's per-thread allocation counter, so they only cover the
+ * benchmark thread, and not the threads of the concurrent benchmarks.
+ */
+public class Benchmark {
+
+	/**
+	 * A piece of work to measure.
+	 */
+	public interface Task {
+
+		/**
+		 * Does the work once.
+		 *
+		 * @return Number of operations done, which times are divided by
+		 * @throws Exception If the work fails, which ends the benchmark
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * Results are added here, so that the JIT compiler can't drop the work as unused.
+	 */
+	static volatile long sink;
+
+	/**
+	 * Number of runs before measuring, and measured.
+	 */
+	private final int warmups, iterations;
+
+	/**
+	 * Allocation counter of the JVM, null if it has none.
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Initializes a harness.
+	 *
+	 * @param warmups Number of runs before measuring
+	 * @param iterations Number of measured runs
+	 */
+	public Benchmark(int warmups, int iterations) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threads = null;
+		}
+	}
+
+	/**
+	 * Runs a benchmark and prints its median nanoseconds and mean bytes per operation.
+	 *
+	 * @param name Name of the benchmark
+	 * @param task Work to measure
+	 * @throws Exception If the work fails
+	 */
+	public void measure(String name, Task task) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			task.run();
+		}
+		double[] nanos = new double[iterations];
+		long bytes = 0, totalOps = 0;
+		for (int i = 0; i < iterations; i++) {
+			long allocated = allocated();
+			long start = System.nanoTime();
+			long ops = task.run();
+			long elapsed = System.nanoTime() - start;
+			bytes += allocated() - allocated;
+			totalOps += ops;
+			nanos[i] = (double) elapsed / Math.max(1, ops);
+		}
+		Arrays.sort(nanos);
+		System.out.println(String.format("%-40s %10.2f %10.2f", name, nanos[iterations / 2],
+				threads == null ? -1 : (double) bytes / Math.max(1, totalOps)));
+	}
+
+	private long allocated() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs all benchmarks.
+	 *
+	 * @param items Number of items per run, and people in the random graph
+	 * @param friends Mean number of friends per person in the random graph
+	 * @param threadCount Number of threads adding, and of threads taking, in the concurrent benchmarks
+	 * @throws Exception If a benchmark fails
+	 */
+	public void run(int items, int friends, int threadCount) throws Exception {
+		System.out.println(String.format("%-40s %10s %10s", "benchmark", "ns/op", "B/op"));
+
+		// Fill then drain, so the containers grow to hold every item
+		measure("Queue<Integer> fill and drain", () -> {
+			Queue<Integer> q = new Queue<Integer>();
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				q.enqueue(i);
+			}
+			while (!q.isEmpty()) {
+				n += q.dequeue();
+			}
+			sink += n;
+			return 2L * items;
+		});
+		IntQueue intQueue = new IntQueue();
+		measure("IntQueue fill and drain", () -> {
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				intQueue.enqueue(i);
+			}
+			while (!intQueue.isEmpty()) {
+				n += intQueue.dequeue();
+			}
+			sink += n;
+			return 2L * items;
+		});
+		measure("Stack<Integer> fill and drain", () -> {
+			Stack<Integer> s = new Stack<Integer>();
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				s.push(i);
+			}
+			while (!s.isEmpty()) {
+				n += s.pop();
+			}
+			sink += n;
+			return 2L * items;
+		});
+		IntStack intStack = new IntStack();
+		measure("IntStack fill and drain", () -> {
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				intStack.push(i);
+			}
+			while (!intStack.isEmpty()) {
+				n += intStack.pop();
+			}
+			sink += n;
+			return 2L * items;
+		});
+
+		// Items pass through a queue kept at 64, so the ring array wraps around over and over
+		measure("Queue<Integer> steady", () -> {
+			Queue<Integer> q = new Queue<Integer>();
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				q.enqueue(i);
+				if (q.size() > 64) {
+					n += q.dequeue();
+				}
+			}
+			sink += n;
+			return items;
+		});
+		measure("IntQueue steady", () -> {
+			intQueue.clear();
+			long n = 0;
+			for (int i = 0; i < items; i++) {
+				intQueue.enqueue(i);
+				if (intQueue.size() > 64) {
+					n += intQueue.dequeue();
+				}
+			}
+			sink += n;
+			return items;
+		});
+
+		// Searches of a random graph, counted per friend entry looked at
+		int[][] graph = randomGraph(items, friends, 112);
+		long entries = 0;
+		for (int[] row : graph) {
+			entries += row.length;
+		}
+		long edges = entries;
+		boolean[] visited = new boolean[items];
+		measure("Queue<Integer> breadth-first search", () -> {
+			Arrays.fill(visited, false);
+			Queue<Integer> q = new Queue<Integer>();
+			long n = 0;
+			for (int source = 0; source < items; source++) {
+				if (visited[source]) {
+					continue;
+				}
+				visited[source] = true;
+				q.enqueue(source);
+				while (!q.isEmpty()) {
+					int v = q.dequeue();
+					n += v;
+					for (int w : graph[v]) {
+						if (!visited[w]) {
+							visited[w] = true;
+							q.enqueue(w);
+						}
+					}
+				}
+			}
+			sink += n;
+			return edges;
+		});
+		measure("IntQueue breadth-first search", () -> {
+			Arrays.fill(visited, false);
+			intQueue.clear();
+			long n = 0;
+			for (int source = 0; source < items; source++) {
+				if (visited[source]) {
+					continue;
+				}
+				visited[source] = true;
+				intQueue.enqueue(source);
+				while (!intQueue.isEmpty()) {
+					int v = intQueue.dequeue();
+					n += v;
+					for (int w : graph[v]) {
+						if (!visited[w]) {
+							visited[w] = true;
+							intQueue.enqueue(w);
+						}
+					}
+				}
+			}
+			sink += n;
+			return edges;
+		});
+		measure("Stack<Integer> depth-first search", () -> {
+			Arrays.fill(visited, false);
+			Stack<Integer> s = new Stack<Integer>();
+			long n = 0;
+			for (int source = 0; source < items; source++) {
+				if (visited[source]) {
+					continue;
+				}
+				s.push(source);
+				while (!s.isEmpty()) {
+					int v = s.pop();
+					if (visited[v]) {
+						continue;
+					}
+					visited[v] = true;
+					n += v;
+					for (int w : graph[v]) {
+						if (!visited[w]) {
+							s.push(w);
+						}
+					}
+				}
+			}
+			sink += n;
+			return edges;
+		});
+		measure("IntStack depth-first search", () -> {
+			Arrays.fill(visited, false);
+			intStack.clear();
+			long n = 0;
+			for (int source = 0; source < items; source++) {
+				if (visited[source]) {
+					continue;
+				}
+				intStack.push(source);
+				while (!intStack.isEmpty()) {
+					int v = intStack.pop();
+					if (visited[v]) {
+						continue;
+					}
+					visited[v] = true;
+					n += v;
+					for (int w : graph[v]) {
+						if (!visited[w]) {
+							intStack.push(w);
+						}
+					}
+				}
+			}
+			sink += n;
+			return edges;
+		});
+
+		// Adders and takers at once, through a queue of 1024 items, except ConcurrentLinkedQueue
+		// which has no bound
+		measure("ConcurrentLinkedQueue<Integer> " + threadCount + "x" + threadCount, () -> {
+			ConcurrentLinkedQueue<Integer> q = new ConcurrentLinkedQueue<Integer>();
+			return exchange(items, threadCount, q::offer, () -> {
+				Integer item = q.poll();
+				return item == null ? -1 : item;
+			});
+		});
+		measure("ArrayBlockingQueue<Integer> " + threadCount + "x" + threadCount, () -> {
+			ArrayBlockingQueue<Integer> q = new ArrayBlockingQueue<Integer>(1024);
+			return exchange(items, threadCount, q::offer, () -> {
+				Integer item = q.poll();
+				return item == null ? -1 : item;
+			});
+		});
+		measure("ConcurrentIntQueue " + threadCount + "x" + threadCount, () -> {
+			ConcurrentIntQueue q = new ConcurrentIntQueue(1024);
+			return exchange(items, threadCount, q::offer, () -> q.poll(-1));
+		});
+	}
+
+	/**
+	 * Adds an item to a queue under test.
+	 */
+	private interface Offer {
+		boolean offer(int item);
+	}
+
+	/**
+	 * Takes an item from a queue under test, -1 if it is empty.
+	 */
+	private interface Poll {
+		int poll();
+	}
+
+	/**
+	 * Passes items from adding threads to taking threads, and checks every item came through.
+	 *
+	 * @return Number of adds and takes
+	 */
+	private static long exchange(int items, int threadCount, Offer offer, Poll poll) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		long[] sums = new long[threadCount];
+		int per = items / threadCount;
+		Thread[] workers = new Thread[2*threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			int from = t * per;
+			workers[t] = new Thread(() -> {
+				await(start);
+				for (int i = from; i < from + per; i++) {
+					while (!offer.offer(i)) {
+						Thread.yield();
+					}
+				}
+			});
+			int taker = t;
+			workers[threadCount + t] = new Thread(() -> {
+				await(start);
+				long sum = 0;
+				for (int taken = 0; taken < per; ) {
+					int item = poll.poll();
+					if (item < 0) {
+						Thread.yield();
+					} else {
+						sum += item;
+						taken++;
+					}
+				}
+				sums[taker] = sum;
+			});
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long total = 0, expected = (long) per * threadCount * (per * threadCount - 1) / 2;
+		for (long sum : sums) {
+			total += sum;
+		}
+		if (total != expected) {
+			throw new IllegalStateException("items lost or repeated: sum " + total + ", expected " + expected);
+		}
+		sink += total;
+		return 2L * per * threadCount;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Makes a random graph, as rows of friends, with each friendship in both rows.
+	 */
+	private static int[][] randomGraph(int n, int friends, long seed) {
+		Random random = new Random(seed);
+		int[] degree = new int[n];
+		int m = (int) Math.min((long) n * friends / 2, Integer.MAX_VALUE / 4);
+		int[] ends = new int[2*m];
+		for (int e = 0; e < 2*m; e++) {
+			ends[e] = random.nextInt(n);
+			degree[ends[e]]++;
+		}
+		int[][] rows = new int[n][];
+		for (int v = 0; v < n; v++) {
+			rows[v] = new int[degree[v]];
+			degree[v] = 0;
+		}
+		for (int e = 0; e < 2*m; e += 2) {
+			int u = ends[e], v = ends[e+1];
+			rows[u][degree[u]++] = v;
+			rows[v][degree[v]++] = u;
+		}
+		return rows;
+	}
+
+	/**
+	 * Runs all benchmarks.
+	 *
+	 * @param args optionally number of items, mean friends per person in the random graph, and
+	 *        threads adding (and taking) in the concurrent benchmarks
+	 * @throws Exception If a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+		int friends = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int threadCount = args.length > 2 ? Integer.parseInt(args[2])
+				: Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		new Benchmark(3, 5).run(items, friends, threadCount);
+	}
+}
@@ -0,0 +1,139 @@
+package structures;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of ints that any number of threads can add to and take from at once, without
+ * locks (Vyukov's bounded queue). Items sit in a circular array; each slot has a sequence number
+ * that tells whose turn it is. A slot at position p is free for the adder of item p when its
+ * sequence is p, and holds item p for the taker when its sequence is p+1. Threads claim a position
+ * with one compare-and-set on the tail or head count, then hand the slot on by setting its
+ * sequence, so an add or take allocates nothing and waits on no other thread unless it is racing
+ * for the same position.
+ *
+ * This is meant for frontiers of parallel searches, where the number of items is known ahead, so
+ * the queue does not grow: offer() fails when it is full.
+ */
+public class ConcurrentIntQueue {
+
+	/**
+	 * Items, by position masked by items.length-1.
+	 */
+	private final int[] items;
+
+	/**
+	 * Sequence number of each slot.
+	 */
+	private final AtomicLongArray sequence;
+
+	/**
+	 * Position of the next item to add, and of the next item to take.
+	 */
+	private final AtomicLong tail = new AtomicLong(), head = new AtomicLong();
+
+	/**
+	 * Initializes queue to empty.
+	 *
+	 * @param capacity Most items the queue holds at once, rounded up to a power of 2
+	 */
+	public ConcurrentIntQueue(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be from 1 to 2^30: " + capacity);
+		}
+		int length = Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+		items = new int[length];
+		sequence = new AtomicLongArray(length);
+		for (int i = 0; i < length; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Adds an item to the end of the queue, if there is room.
+	 *
+	 * @param item Item to be enqueued
+	 * @return True if the item was added, false if the queue is full
+	 */
+	public boolean offer(int item) {
+		int mask = items.length - 1;
+		long pos = tail.get();
+		while (true) {
+			int slot = (int) pos & mask;
+			long diff = sequence.get(slot) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					items[slot] = item;
+					sequence.lazySet(slot, pos + 1); // The item is written before the slot is handed on
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false; // The slot still holds the item from one lap back
+			} else {
+				pos = tail.get(); // Another thread took this position
+			}
+		}
+	}
+
+	/**
+	 * Deletes and returns the front of the queue, if there is one.
+	 *
+	 * @param otherwise Value to return if the queue is empty
+	 * @return Item at the front of the queue, or otherwise if the queue is empty
+	 */
+	public int poll(int otherwise) {
+		int mask = items.length - 1;
+		long pos = head.get();
+		while (true) {
+			int slot = (int) pos & mask;
+			long diff = sequence.get(slot) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					int item = items[slot];
+					sequence.lazySet(slot, pos + items.length); // Free for the adder one lap on
+					return item;
+				}
+				pos = head.get();
+			} else if (diff < 0) {
+				return otherwise; // Nothing added at this position yet
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Tells if queue is empty. With other threads at work, this may be out of date as soon as it
+	 * returns.
+	 *
+	 * @return True if queue is empty, false if not.
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns number of items in queue. With other threads at work, this may be out of date as soon
+	 * as it returns.
+	 *
+	 * @return Number of items in queue.
+	 */
+	public int size() {
+		while (true) {
+			long h = head.get(), t = tail.get();
+			if (h == head.get()) {
+				return (int) Math.max(0, Math.min(t - h, items.length));
+			}
+		}
+	}
+
+	/**
+	 * Returns the most items the queue holds at once.
+	 *
+	 * @return Capacity, a power of 2
+	 */
+	public int capacity() {
+		return items.length;
+	}
+}
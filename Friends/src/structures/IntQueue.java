@@ -0,0 +1,120 @@
+package structures;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A queue of ints, in a circular array that doubles when full. Unlike Queue, which makes a node
+ * for every item and boxes ints, enqueue and dequeue allocate nothing once the array is big
+ * enough.
+ */
+public class IntQueue {
+
+	/**
+	 * Items, from head going around to tail; the length is a power of 2.
+	 */
+	private int[] items;
+
+	/**
+	 * Index of the front item, and of the slot after the rear item, masked by items.length-1.
+	 */
+	private int head, tail;
+
+	/**
+	 * Initializes queue to empty.
+	 */
+	public IntQueue() {
+		this(16);
+	}
+
+	/**
+	 * Initializes queue to empty, with room for some items before it grows.
+	 *
+	 * @param capacity Number of items that fit before the queue grows
+	 */
+	public IntQueue(int capacity) {
+		if (capacity < 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be from 0 to 2^30: " + capacity);
+		}
+		items = new int[Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1)];
+	}
+
+	/**
+	 * Adds an item to the end of the queue
+	 *
+	 * @param item Item to be enqueued
+	 */
+	public void enqueue(int item) {
+		if (tail - head == items.length) {
+			grow();
+		}
+		items[tail++ & (items.length - 1)] = item;
+	}
+
+	private void grow() {
+		if (items.length == 1 << 30) {
+			throw new IllegalStateException("queue is full");
+		}
+		int[] larger = new int[items.length << 1];
+		int mask = items.length - 1, size = tail - head;
+		int front = head & mask, run = Math.min(size, items.length - front);
+		System.arraycopy(items, front, larger, 0, run);
+		System.arraycopy(items, 0, larger, run, size - run);
+		items = larger;
+		head = 0;
+		tail = size;
+	}
+
+	/**
+	 * Deletes and returns the front of the queue
+	 *
+	 * @return Item at the front of the queue
+	 * @throws NoSuchElementException If the queue is empty
+	 */
+	public int dequeue()
+	throws NoSuchElementException {
+		if (head == tail) {
+			throw new NoSuchElementException("queue is empty");
+		}
+		return items[head++ & (items.length - 1)];
+	}
+
+	/**
+	 * Returns the front of the queue, without deleting it.
+	 *
+	 * @return Item at the front of the queue
+	 * @throws NoSuchElementException If the queue is empty
+	 */
+	public int peek()
+	throws NoSuchElementException {
+		if (head == tail) {
+			throw new NoSuchElementException("queue is empty");
+		}
+		return items[head & (items.length - 1)];
+	}
+
+	/**
+	 * Tells if queue is empty.
+	 *
+	 * @return True if queue is empty, false if not.
+	 */
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * Returns number of items in queue.
+	 *
+	 * @return Number of items in queue.
+	 */
+	public int size() {
+		return tail - head;
+	}
+
+	/**
+	 * Empties the queue, keeping its array.
+	 */
+	public void clear() {
+		head = 0;
+		tail = 0;
+	}
+}
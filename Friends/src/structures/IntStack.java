@@ -0,0 +1,108 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A stack of ints, in an array that doubles when full. Unlike Stack, which boxes ints into an
+ * ArrayList, push and pop allocate nothing once the array is big enough.
+ */
+public class IntStack {
+
+	/**
+	 * Items in the stack, bottom first.
+	 */
+	private int[] items;
+
+	/**
+	 * Number of items in the stack.
+	 */
+	private int size;
+
+	/**
+	 * Initializes stack to empty.
+	 */
+	public IntStack() {
+		this(16);
+	}
+
+	/**
+	 * Initializes stack to empty, with room for some items before it grows.
+	 *
+	 * @param capacity Number of items that fit before the stack grows
+	 */
+	public IntStack(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		items = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Pushes a new item on top of stack.
+	 *
+	 * @param item Item to push.
+	 */
+	public void push(int item) {
+		if (size == items.length) {
+			if (size == Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("stack is full");
+			}
+			items = Arrays.copyOf(items, (int) Math.min(2L * size, Integer.MAX_VALUE - 8));
+		}
+		items[size++] = item;
+	}
+
+	/**
+	 * Pops item at top of stack and returns it.
+	 *
+	 * @return Popped item.
+	 * @throws NoSuchElementException If stack is empty.
+	 */
+	public int pop()
+	throws NoSuchElementException {
+		if (size == 0) {
+			throw new NoSuchElementException("can't pop from an empty stack");
+		}
+		return items[--size];
+	}
+
+	/**
+	 * Returns item on top of stack, without popping it.
+	 *
+	 * @return Item at top of stack.
+	 * @throws NoSuchElementException If stack is empty.
+	 */
+	public int peek()
+	throws NoSuchElementException {
+		if (size == 0) {
+			throw new NoSuchElementException("can't peek on an empty stack");
+		}
+		return items[size-1];
+	}
+
+	/**
+	 * Tells if stack is empty.
+	 *
+	 * @return True if stack is empty, false if not.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns number of items in stack.
+	 *
+	 * @return Number of items in stack.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the stack, keeping its array.
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,287 @@
+package tse;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * This class times the main operations of ToySearchEngine on a synthetic corpus made by
+ * CorpusGenerator: getKey, loadKeysFromDocument, mergeKeys, buildIndex end to end, and top5search
+ * at several posting list lengths. Each benchmark is run a number of times to warm up the JIT
+ * compiler, then a number of times measured, and reports the median time per operation and the
+ * mean bytes allocated per operation.
+ *
+ * Bytes allocated are read from the JVM's per-thread allocation counter, so they only cover the
+ * benchmark thread. Documents under DocumentReader.MAP_THRESHOLD are read on the calling thread,
+ * so with the default corpus that is all of the allocation.
+ *
+ */
+public class Benchmark {
+
+	/**
+	 * A piece of work to measure.
+	 */
+	public interface Task {
+
+		/**
+		 * Does the work once.
+		 *
+		 * @return Number of operations done, which times are divided by
+		 * @throws Exception If the work fails, which ends the benchmark
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * The measurements of a benchmark.
+	 */
+	public static class Result {
+
+		/**
+		 * Name of the benchmark.
+		 */
+		public final String name;
+
+		/**
+		 * Median nanoseconds per operation over the measured runs.
+		 */
+		public final double nanosPerOp;
+
+		/**
+		 * Mean bytes allocated per operation, -1 if the JVM doesn't count allocations.
+		 */
+		public final double bytesPerOp;
+
+		/**
+		 * Operations done in each measured run.
+		 */
+		public final long ops;
+
+		Result(String name, double nanosPerOp, double bytesPerOp, long ops) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.bytesPerOp = bytesPerOp;
+			this.ops = ops;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return String.format("%-36s %10d %14.1f %14.1f", name, ops, nanosPerOp, bytesPerOp);
+		}
+	}
+
+	/**
+	 * Results are added here, so that the JIT compiler can't drop the work as unused.
+	 */
+	static volatile long sink;
+
+	/**
+	 * Number of runs before measuring, and measured.
+	 */
+	private final int warmups, iterations;
+
+	/**
+	 * Allocation counter of the JVM, null if it has none.
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Initializes a harness.
+	 *
+	 * @param warmups Number of runs before measuring
+	 * @param iterations Number of measured runs
+	 */
+	public Benchmark(int warmups, int iterations) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threads = null;
+		}
+	}
+
+	/**
+	 * Runs a benchmark.
+	 *
+	 * @param name Name of the benchmark
+	 * @param task Work to measure
+	 * @return Measurements
+	 * @throws Exception If the work fails
+	 */
+	public Result measure(String name, Task task) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			task.run();
+		}
+		double[] nanos = new double[iterations];
+		long ops = 0, bytes = 0, totalOps = 0;
+		for (int i = 0; i < iterations; i++) {
+			long allocated = allocated();
+			long start = System.nanoTime();
+			ops = task.run();
+			long elapsed = System.nanoTime() - start;
+			bytes += allocated() - allocated;
+			totalOps += ops;
+			nanos[i] = (double) elapsed / Math.max(1, ops);
+		}
+		Arrays.sort(nanos);
+		Result result = new Result(name, nanos[iterations / 2],
+				threads == null ? -1 : (double) bytes / Math.max(1, totalOps), ops);
+		System.out.println(result);
+		return result;
+	}
+
+	private long allocated() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs all benchmarks on a corpus.
+	 *
+	 * @param corpus Directory with docs.txt and noisewords.txt, as written by CorpusGenerator
+	 * @return Measurements
+	 * @throws Exception If the corpus can't be read
+	 */
+	public List<Result> run(Path corpus) throws Exception {
+		String docsFile = corpus.resolve("docs.txt").toString();
+		String noiseFile = corpus.resolve("noisewords.txt").toString();
+		List<String> docFiles = Files.readAllLines(Paths.get(docsFile));
+		ToySearchEngine engine = new ToySearchEngine();
+		engine.buildIndex(docsFile, noiseFile);
+		List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format("%-36s %10s %14s %14s", "benchmark", "ops/run", "ns/op", "B/op"));
+
+		// getKey over the raw words of the first documents, punctuation, capitals, noise and all
+		List<String> sample = new ArrayList<String>();
+		for (int i = 0; i < docFiles.size() && sample.size() < 100000; i++) {
+			for (String line : Files.readAllLines(Paths.get(docFiles.get(i)))) {
+				sample.addAll(Arrays.asList(line.trim().split("\\s+")));
+			}
+		}
+		String[] words = sample.toArray(new String[0]);
+		results.add(measure("getKey", () -> {
+			long n = 0;
+			for (String word : words) {
+				String key = engine.getKey(word);
+				n += key == null ? 0 : key.length();
+			}
+			sink += n;
+			return words.length;
+		}));
+
+		results.add(measure("loadKeysFromDocument", () -> {
+			long n = 0;
+			for (String docFile : docFiles) {
+				n += engine.loadKeysFromDocument(docFile).size();
+			}
+			sink += n;
+			return docFiles.size();
+		}));
+
+		// mergeKeys into a new engine, with every document already loaded
+		List<HashMap<String,Occurrence>> loaded = new ArrayList<HashMap<String,Occurrence>>();
+		for (String docFile : docFiles) {
+			loaded.add(engine.loadKeysFromDocument(docFile));
+		}
+		results.add(measure("mergeKeys", () -> {
+			ToySearchEngine fresh = new ToySearchEngine();
+			for (HashMap<String,Occurrence> kws : loaded) {
+				fresh.mergeKeys(kws);
+			}
+			sink += fresh.snapshot().termCount();
+			return loaded.size();
+		}));
+
+		results.add(measure("buildIndex (" + docFiles.size() + " documents)", () -> {
+			ToySearchEngine fresh = new ToySearchEngine();
+			fresh.buildIndex(docsFile, noiseFile);
+			sink += fresh.snapshot().termCount();
+			return 1;
+		}));
+
+		// top5search for pairs of keywords with about the same number of postings. The index
+		// snapshot is queried directly, as top5search would answer repeats from its cache.
+		IndexSnapshot snapshot = engine.snapshot();
+		for (int target = 10; target <= snapshot.documentCount(); target *= 10) {
+			String[] pair = keywordsNear(snapshot, target);
+			if (pair == null) {
+				continue;
+			}
+			int postings = Math.max(snapshot.postings(snapshot.termId(pair[0])),
+					snapshot.postings(snapshot.termId(pair[1])));
+			results.add(measure("top5search (" + postings + " postings)", () -> {
+				long n = 0;
+				for (int i = 0; i < 1000; i++) {
+					n += snapshot.top(pair[0], pair[1], 5).size();
+				}
+				sink += n;
+				return 1000;
+			}));
+		}
+		String[] common = keywordsNear(snapshot, snapshot.documentCount());
+		if (common != null) {
+			engine.top5search(common[0], common[1]);
+			results.add(measure("top5search (cached)", () -> {
+				long n = 0;
+				for (int i = 0; i < 1000; i++) {
+					n += engine.top5search(common[0], common[1]).size();
+				}
+				sink += n;
+				return 1000;
+			}));
+		}
+		return results;
+	}
+
+	/**
+	 * Finds two keywords with the number of postings closest to a target.
+	 *
+	 * @param snapshot Index snapshot
+	 * @param target Number of postings
+	 * @return Two keywords, null if there are fewer than two keywords
+	 */
+	private static String[] keywordsNear(IndexSnapshot snapshot, int target) {
+		if (snapshot.termCount() < 2) {
+			return null;
+		}
+		Integer[] terms = new Integer[snapshot.termCount()];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = i;
+		}
+		Arrays.sort(terms, (a, b) -> Integer.compare(Math.abs(snapshot.postings(a) - target),
+				Math.abs(snapshot.postings(b) - target)));
+		return new String[] {snapshot.term(terms[0]), snapshot.term(terms[1])};
+	}
+
+	/**
+	 * Writes a corpus, unless the directory already has one, and runs all benchmarks on it.
+	 *
+	 * @param args directory, then optionally documents, mean words per document and vocabulary
+	 *        size of the corpus to write
+	 * @throws Exception If the corpus can't be written or read
+	 */
+	public static void main(String[] args) throws Exception {
+		Path corpus = Paths.get(args.length > 0 ? args[0] : "corpus");
+		if (!Files.exists(corpus.resolve("docs.txt"))) {
+			CorpusGenerator generator = new CorpusGenerator();
+			if (args.length > 1) {
+				generator.documents(Integer.parseInt(args[1]));
+			}
+			if (args.length > 2) {
+				generator.words(Integer.parseInt(args[2]));
+			}
+			if (args.length > 3) {
+				generator.vocabulary(Integer.parseInt(args[3]));
+			}
+			System.out.println("writing corpus to " + corpus);
+			generator.write(corpus);
+		}
+		new Benchmark(3, 5).run(corpus);
+	}
+}
@@ -0,0 +1,339 @@
+package tse;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is a boolean combination of keywords, such as "alice AND (rabbit OR hole) AND NOT
+ * queen". A query is matched against the document bitmaps of an IndexSnapshot, one container
+ * operation at a time, and only the documents that match are scored.
+ *
+ */
+public abstract class BooleanQuery {
+
+	/**
+	 * Returns a query matching the documents a keyword occurs in.
+	 *
+	 * @param keyword Keyword, in lower case
+	 * @return Query
+	 */
+	public static BooleanQuery term(String keyword) {
+		return new Term(keyword);
+	}
+
+	/**
+	 * Returns a query matching the documents all clauses match.
+	 *
+	 * @param clauses Clauses, at least one
+	 * @return Query
+	 */
+	public static BooleanQuery and(BooleanQuery... clauses) {
+		return new And(checked(clauses));
+	}
+
+	/**
+	 * Returns a query matching the documents any clause matches.
+	 *
+	 * @param clauses Clauses, at least one
+	 * @return Query
+	 */
+	public static BooleanQuery or(BooleanQuery... clauses) {
+		return new Or(checked(clauses));
+	}
+
+	/**
+	 * Returns a query matching the documents a clause does not match.
+	 *
+	 * @param clause Clause
+	 * @return Query
+	 */
+	public static BooleanQuery not(BooleanQuery clause) {
+		return new Not(clause);
+	}
+
+	/**
+	 * Parses a query. Operators are AND, OR and NOT, in upper case; NOT binds tightest and OR
+	 * loosest, and parentheses group. Every other word is a keyword.
+	 *
+	 * @param query Query text
+	 * @param keys Turns a word into a keyword, or null if it is not one (see ToySearchEngine.getKey).
+	 *        Words that are not keywords are kept in lower case, and match no document.
+	 * @return Query
+	 * @throws IllegalArgumentException If the query is not well formed
+	 */
+	public static BooleanQuery parse(String query, UnaryOperator<String> keys) {
+		Parser parser = new Parser(query, keys);
+		BooleanQuery parsed = parser.or();
+		if (parser.peek() != null) {
+			throw new IllegalArgumentException("unexpected '" + parser.peek() + "' in query: " + query);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Returns the documents of a snapshot this query matches. The bitmap may be shared with the
+	 * snapshot, and must not be changed.
+	 *
+	 * @param snapshot Snapshot
+	 * @return Matching documents
+	 */
+	public abstract DocBitmap matches(IndexSnapshot snapshot);
+
+	/**
+	 * Returns the keywords whose frequencies make up a matching document's score: all keywords of
+	 * this query except those under a NOT.
+	 *
+	 * @return Keywords, each once
+	 */
+	public Set<String> scoredKeywords() {
+		Set<String> keywords = new LinkedHashSet<String>();
+		collect(keywords);
+		return keywords;
+	}
+
+	abstract void collect(Set<String> keywords);
+
+	/**
+	 * Returns this query as a cache key. Unlike toString, two different queries never have the
+	 * same key: keywords are written as ToySearchEngine.keyField does, with their length, and
+	 * operators as single characters around their clauses.
+	 *
+	 * @return Cache key
+	 */
+	String key() {
+		StringBuilder key = new StringBuilder();
+		appendKey(key);
+		return key.toString();
+	}
+
+	abstract void appendKey(StringBuilder key);
+
+	private static void appendKeys(StringBuilder key, char operator, BooleanQuery[] clauses) {
+		key.append(operator).append('(');
+		for (BooleanQuery clause : clauses) {
+			clause.appendKey(key);
+		}
+		key.append(')');
+	}
+
+	private static BooleanQuery[] checked(BooleanQuery[] clauses) {
+		if (clauses.length == 0) {
+			throw new IllegalArgumentException("no clauses");
+		}
+		return clauses.clone();
+	}
+
+	private static final class Term extends BooleanQuery {
+		final String keyword;
+
+		Term(String keyword) {
+			this.keyword = keyword;
+		}
+
+		public DocBitmap matches(IndexSnapshot snapshot) {
+			int term = snapshot.termId(keyword);
+			return term < 0 ? new DocBitmap() : snapshot.bitmap(term);
+		}
+
+		void collect(Set<String> keywords) {
+			keywords.add(keyword);
+		}
+
+		void appendKey(StringBuilder key) {
+			key.append(ToySearchEngine.keyField(keyword));
+		}
+
+		public String toString() {
+			return keyword;
+		}
+	}
+
+	private static final class And extends BooleanQuery {
+		final BooleanQuery[] clauses;
+
+		And(BooleanQuery[] clauses) {
+			this.clauses = clauses;
+		}
+
+		public DocBitmap matches(IndexSnapshot snapshot) {
+			// Intersect the smallest sets first, so intermediate results stay small, and subtract
+			// negated clauses instead of taking their complement
+			List<DocBitmap> included = new ArrayList<DocBitmap>();
+			List<BooleanQuery> excluded = new ArrayList<BooleanQuery>();
+			for (BooleanQuery clause : clauses) {
+				if (clause instanceof Not) {
+					excluded.add(((Not) clause).clause);
+				} else {
+					included.add(clause.matches(snapshot));
+				}
+			}
+			DocBitmap result;
+			if (included.isEmpty()) {
+				result = DocBitmap.range(snapshot.documentCount());
+			} else {
+				included.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+				result = included.get(0);
+				for (int i = 1; i < included.size() && !result.isEmpty(); i++) {
+					result = result.and(included.get(i));
+				}
+			}
+			for (int i = 0; i < excluded.size() && !result.isEmpty(); i++) {
+				result = result.andNot(excluded.get(i).matches(snapshot));
+			}
+			return result;
+		}
+
+		void collect(Set<String> keywords) {
+			for (BooleanQuery clause : clauses) {
+				clause.collect(keywords);
+			}
+		}
+
+		void appendKey(StringBuilder key) {
+			appendKeys(key, '&', clauses);
+		}
+
+		public String toString() {
+			return join(clauses, " AND ");
+		}
+	}
+
+	private static final class Or extends BooleanQuery {
+		final BooleanQuery[] clauses;
+
+		Or(BooleanQuery[] clauses) {
+			this.clauses = clauses;
+		}
+
+		public DocBitmap matches(IndexSnapshot snapshot) {
+			DocBitmap result = clauses[0].matches(snapshot);
+			for (int i = 1; i < clauses.length; i++) {
+				result = result.or(clauses[i].matches(snapshot));
+			}
+			return result;
+		}
+
+		void collect(Set<String> keywords) {
+			for (BooleanQuery clause : clauses) {
+				clause.collect(keywords);
+			}
+		}
+
+		void appendKey(StringBuilder key) {
+			appendKeys(key, '|', clauses);
+		}
+
+		public String toString() {
+			return join(clauses, " OR ");
+		}
+	}
+
+	private static final class Not extends BooleanQuery {
+		final BooleanQuery clause;
+
+		Not(BooleanQuery clause) {
+			this.clause = clause;
+		}
+
+		public DocBitmap matches(IndexSnapshot snapshot) {
+			return DocBitmap.range(snapshot.documentCount()).andNot(clause.matches(snapshot));
+		}
+
+		void collect(Set<String> keywords) {
+			// Negated keywords don't occur in matching documents, so add nothing to their scores
+		}
+
+		void appendKey(StringBuilder key) {
+			key.append('!');
+			clause.appendKey(key);
+		}
+
+		public String toString() {
+			return "NOT " + clause;
+		}
+	}
+
+	private static String join(BooleanQuery[] clauses, String operator) {
+		StringBuilder text = new StringBuilder("(");
+		for (int i = 0; i < clauses.length; i++) {
+			if (i > 0) {
+				text.append(operator);
+			}
+			text.append(clauses[i]);
+		}
+		return text.append(')').toString();
+	}
+
+	/**
+	 * Recursive descent parser for the grammar
+	 *
+	 *   or   := and ("OR" and)*
+	 *   and  := not ("AND" not)*
+	 *   not  := "NOT" not | "(" or ")" | word
+	 */
+	private static final class Parser {
+		private static final Pattern TOKEN = Pattern.compile("[()]|[^\\s()]+");
+
+		private final String query;
+		private final UnaryOperator<String> keys;
+		private final List<String> tokens = new ArrayList<String>();
+		private int next;
+
+		Parser(String query, UnaryOperator<String> keys) {
+			this.query = query;
+			this.keys = keys;
+			Matcher m = TOKEN.matcher(query);
+			while (m.find()) {
+				tokens.add(m.group());
+			}
+		}
+
+		String peek() {
+			return next < tokens.size() ? tokens.get(next) : null;
+		}
+
+		BooleanQuery or() {
+			List<BooleanQuery> clauses = new ArrayList<BooleanQuery>();
+			clauses.add(and());
+			while ("OR".equals(peek())) {
+				next++;
+				clauses.add(and());
+			}
+			return clauses.size() == 1 ? clauses.get(0) : new Or(clauses.toArray(new BooleanQuery[0]));
+		}
+
+		BooleanQuery and() {
+			List<BooleanQuery> clauses = new ArrayList<BooleanQuery>();
+			clauses.add(not());
+			while ("AND".equals(peek())) {
+				next++;
+				clauses.add(not());
+			}
+			return clauses.size() == 1 ? clauses.get(0) : new And(clauses.toArray(new BooleanQuery[0]));
+		}
+
+		BooleanQuery not() {
+			String token = peek();
+			if (token == null || token.equals(")") || token.equals("AND") || token.equals("OR")) {
+				throw new IllegalArgumentException("keyword expected at '" + (token == null ? "end" : token)
+						+ "' in query: " + query);
+			}
+			next++;
+			if (token.equals("NOT")) {
+				return new Not(not());
+			}
+			if (token.equals("(")) {
+				BooleanQuery group = or();
+				if (!")".equals(peek())) {
+					throw new IllegalArgumentException("missing ')' in query: " + query);
+				}
+				next++;
+				return group;
+			}
+			String keyword = keys.apply(token);
+			return new Term(keyword != null ? keyword : token.toLowerCase());
+		}
+	}
+}
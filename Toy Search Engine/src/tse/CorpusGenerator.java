@@ -0,0 +1,223 @@
+package tse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * This class writes a synthetic corpus whose word frequencies follow Zipf's law, as those of
+ * natural text do: the word of rank r occurs in proportion to 1/r^s. The same settings and seed
+ * always give the same corpus, so benchmark runs can be compared.
+ *
+ * Words are made up from their rank, shorter words for more frequent ranks, and the most frequent
+ * ones are written to a noise words file, as noise words are the most frequent in real text. Some
+ * words are capitalized or followed by punctuation, so that the whole of getKey is exercised.
+ *
+ */
+public class CorpusGenerator {
+
+	/**
+	 * Number of documents to write.
+	 */
+	private int documents = 1000;
+
+	/**
+	 * Mean number of words per document. Lengths are spread evenly from half to one and a half
+	 * times the mean.
+	 */
+	private int words = 1000;
+
+	/**
+	 * Number of distinct words.
+	 */
+	private int vocabulary = 50000;
+
+	/**
+	 * Exponent of the Zipf distribution.
+	 */
+	private double exponent = 1.0;
+
+	/**
+	 * Number of most frequent words written as noise words.
+	 */
+	private int noiseWords = 50;
+
+	/**
+	 * Seed of the random numbers.
+	 */
+	private long seed = 42;
+
+	/**
+	 * Sets the number of documents. The default is 1000.
+	 *
+	 * @param documents Number of documents
+	 * @return This generator
+	 */
+	public CorpusGenerator documents(int documents) {
+		this.documents = documents;
+		return this;
+	}
+
+	/**
+	 * Sets the mean number of words per document. The default is 1000.
+	 *
+	 * @param words Mean number of words
+	 * @return This generator
+	 */
+	public CorpusGenerator words(int words) {
+		this.words = words;
+		return this;
+	}
+
+	/**
+	 * Sets the number of distinct words. The default is 50000.
+	 *
+	 * @param vocabulary Number of distinct words
+	 * @return This generator
+	 */
+	public CorpusGenerator vocabulary(int vocabulary) {
+		this.vocabulary = vocabulary;
+		return this;
+	}
+
+	/**
+	 * Sets the exponent of the Zipf distribution. The default is 1.0.
+	 *
+	 * @param exponent Exponent, larger for a steeper fall in frequency with rank
+	 * @return This generator
+	 */
+	public CorpusGenerator exponent(double exponent) {
+		this.exponent = exponent;
+		return this;
+	}
+
+	/**
+	 * Sets the number of most frequent words written as noise words. The default is 50.
+	 *
+	 * @param noiseWords Number of noise words
+	 * @return This generator
+	 */
+	public CorpusGenerator noiseWords(int noiseWords) {
+		this.noiseWords = noiseWords;
+		return this;
+	}
+
+	/**
+	 * Sets the seed of the random numbers. The default is 42.
+	 *
+	 * @param seed Seed
+	 * @return This generator
+	 */
+	public CorpusGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Writes the corpus: documents named d0000000.txt and up, docs.txt listing them by path, and
+	 * noisewords.txt.
+	 *
+	 * @param directory Directory to write to, made if it does not exist
+	 * @throws IOException If a file can't be written
+	 */
+	public void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		String[] dictionary = new String[vocabulary];
+		for (int rank = 0; rank < vocabulary; rank++) {
+			dictionary[rank] = word(rank);
+		}
+
+		// Cumulative probability of each rank, searched with a uniform random number per word
+		double[] cumulative = new double[vocabulary];
+		double total = 0;
+		for (int rank = 0; rank < vocabulary; rank++) {
+			total += 1 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = total;
+		}
+
+		Random random = new Random(seed);
+		try (PrintWriter list = writer(directory.resolve("docs.txt"))) {
+			StringBuilder line = new StringBuilder();
+			for (int d = 0; d < documents; d++) {
+				Path docFile = directory.resolve(String.format("d%07d.txt", d));
+				list.println(docFile);
+				int length = words / 2 + random.nextInt(words + 1);
+				try (PrintWriter doc = writer(docFile)) {
+					for (int w = 0; w < length; w++) {
+						int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+						String word = dictionary[Math.min(vocabulary - 1, rank < 0 ? -rank - 1 : rank)];
+						int style = random.nextInt(20);
+						if (style == 0) {
+							word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+						} else if (style == 1) {
+							word = word + ".,?:;!".charAt(random.nextInt(6));
+						}
+						line.append(word);
+						if (line.length() > 70 || w == length - 1) {
+							doc.println(line);
+							line.setLength(0);
+						} else {
+							line.append(' ');
+						}
+					}
+				}
+			}
+		}
+		try (PrintWriter noise = writer(directory.resolve("noisewords.txt"))) {
+			for (int rank = 0; rank < Math.min(noiseWords, vocabulary); rank++) {
+				noise.println(dictionary[rank]);
+			}
+		}
+	}
+
+	/**
+	 * Makes up the word of a rank, by writing rank+1 in bijective base 26 with letters for digits,
+	 * so every rank gets its own word and lower ranks get shorter words.
+	 *
+	 * @param rank Rank, from 0
+	 * @return Word of lower case letters
+	 */
+	static String word(int rank) {
+		StringBuilder word = new StringBuilder();
+		for (int n = rank + 1; n > 0; n = (n - 1) / 26) {
+			word.append((char) ('a' + (n - 1) % 26));
+		}
+		return word.reverse().toString();
+	}
+
+	private static PrintWriter writer(Path file) throws IOException {
+		return new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a corpus.
+	 *
+	 * @param args directory, then optionally documents, mean words per document, vocabulary size,
+	 *        Zipf exponent and seed
+	 * @throws IOException If a file can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: CorpusGenerator directory [documents [words [vocabulary [exponent [seed]]]]]");
+			return;
+		}
+		CorpusGenerator generator = new CorpusGenerator();
+		if (args.length > 1) {
+			generator.documents(Integer.parseInt(args[1]));
+		}
+		if (args.length > 2) {
+			generator.words(Integer.parseInt(args[2]));
+		}
+		if (args.length > 3) {
+			generator.vocabulary(Integer.parseInt(args[3]));
+		}
+		if (args.length > 4) {
+			generator.exponent(Double.parseDouble(args[4]));
+		}
+		if (args.length > 5) {
+			generator.seed(Long.parseLong(args[5]));
+		}
+		generator.write(Paths.get(args[0]));
+	}
+}
@@ -0,0 +1,589 @@
+package tse;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This class is a compressed set of document ids, split the way Roaring bitmaps are: ids are
+ * grouped by their high 16 bits, and the low 16 bits of each group are kept in a container of
+ * their own. A container with few ids is a sorted array of them, one with more than 4096 (where
+ * the array would take more than 8KB) is a bitmap of all 65536 possible ids. Set operations work
+ * container by container, and two bitmap containers are combined 64 ids at a time with one
+ * bitwise operation per word.
+ *
+ * Bitmaps returned by and, or and andNot may share containers with the bitmaps they were made
+ * from, and must not be added to. Only TermIndex adds to bitmaps, and it copies them with copy()
+ * before adding to one that a snapshot holds.
+ *
+ */
+public class DocBitmap {
+
+	/**
+	 * Largest number of ids kept in an array container.
+	 */
+	static final int ARRAY_MAX = 4096;
+
+	/**
+	 * Number of 64 bit words in a bitmap container.
+	 */
+	private static final int WORDS = 1 << 10;
+
+	/**
+	 * High 16 bits of the ids in each container, in increasing order.
+	 */
+	private char[] keys;
+
+	/**
+	 * Containers, parallel to keys. None is empty.
+	 */
+	private Container[] containers;
+
+	/**
+	 * True for each container that may be shared with another bitmap, and must be copied before it
+	 * is added to.
+	 */
+	private boolean[] shared;
+
+	/**
+	 * Number of containers.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty bitmap.
+	 */
+	public DocBitmap() {
+		this(4);
+	}
+
+	private DocBitmap(int capacity) {
+		keys = new char[capacity];
+		containers = new Container[capacity];
+		shared = new boolean[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Returns a bitmap of all ids from 0 to n-1, the universe that NOT is taken against.
+	 *
+	 * @param n Number of ids
+	 * @return Bitmap of the ids
+	 */
+	public static DocBitmap range(int n) {
+		DocBitmap all = new DocBitmap(Math.max(1, (n + 0xFFFF) >>> 16));
+		for (int start = 0; start < n; start += 1 << 16) {
+			int count = Math.min(1 << 16, n - start);
+			Container container;
+			if (count <= ARRAY_MAX) {
+				char[] values = new char[count];
+				for (int i = 0; i < count; i++) {
+					values[i] = (char) i;
+				}
+				container = new ArrayContainer(values, count);
+			} else {
+				long[] words = new long[WORDS];
+				Arrays.fill(words, 0, count >>> 6, -1L);
+				if ((count & 63) != 0) {
+					words[count >>> 6] = (1L << count) - 1;
+				}
+				container = new BitmapContainer(words, count);
+			}
+			all.append((char) (start >>> 16), container, false);
+		}
+		return all;
+	}
+
+	/**
+	 * Adds an id. Adding ids in increasing order is fastest.
+	 *
+	 * @param doc Document id, not negative
+	 */
+	void add(int doc) {
+		char high = (char) (doc >>> 16);
+		int i = size > 0 && keys[size - 1] == high ? size - 1 : Arrays.binarySearch(keys, 0, size, high);
+		if (i < 0) {
+			i = -i - 1;
+			grow();
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(containers, i, containers, i + 1, size - i);
+			System.arraycopy(shared, i, shared, i + 1, size - i);
+			keys[i] = high;
+			containers[i] = new ArrayContainer(new char[4], 0);
+			shared[i] = false;
+			size++;
+		} else if (shared[i]) {
+			containers[i] = containers[i].copy();
+			shared[i] = false;
+		}
+		containers[i] = containers[i].add((char) doc);
+	}
+
+	/**
+	 * Returns a copy of this bitmap that can be added to without changing this one, which must not
+	 * be added to again. Containers are shared until they are added to.
+	 *
+	 * @return Copy
+	 */
+	DocBitmap copy() {
+		DocBitmap copy = new DocBitmap(Math.max(1, size));
+		System.arraycopy(keys, 0, copy.keys, 0, size);
+		System.arraycopy(containers, 0, copy.containers, 0, size);
+		Arrays.fill(copy.shared, 0, size, true);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Tells if an id is in this bitmap.
+	 *
+	 * @param doc Document id
+	 * @return True if the id is in the bitmap
+	 */
+	public boolean contains(int doc) {
+		int i = Arrays.binarySearch(keys, 0, size, (char) (doc >>> 16));
+		return i >= 0 && containers[i].contains((char) doc);
+	}
+
+	/**
+	 * Returns the number of ids in this bitmap.
+	 *
+	 * @return Number of ids
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Tells if this bitmap has no ids.
+	 *
+	 * @return True if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the ids that are in both this bitmap and another.
+	 *
+	 * @param other Other bitmap
+	 * @return Intersection
+	 */
+	public DocBitmap and(DocBitmap other) {
+		DocBitmap result = new DocBitmap(Math.max(1, Math.min(size, other.size)));
+		for (int i = 0, j = 0; i < size && j < other.size; ) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.append(keys[i], and(containers[i], other.containers[j]), false);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids that are in this bitmap, another, or both.
+	 *
+	 * @param other Other bitmap
+	 * @return Union
+	 */
+	public DocBitmap or(DocBitmap other) {
+		DocBitmap result = new DocBitmap(Math.max(1, size + other.size));
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+				result.append(keys[i], containers[i], true);
+				i++;
+			} else if (i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j], true);
+				j++;
+			} else {
+				result.append(keys[i], or(containers[i], other.containers[j]), false);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids that are in this bitmap but not in another.
+	 *
+	 * @param other Other bitmap
+	 * @return Difference
+	 */
+	public DocBitmap andNot(DocBitmap other) {
+		DocBitmap result = new DocBitmap(Math.max(1, size));
+		for (int i = 0, j = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				j++;
+			}
+			if (j < other.size && other.keys[j] == keys[i]) {
+				result.append(keys[i], andNot(containers[i], other.containers[j]), false);
+			} else {
+				result.append(keys[i], containers[i], true);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calls an action with every id, in increasing order.
+	 *
+	 * @param action Action
+	 */
+	public void forEach(IntConsumer action) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, action);
+		}
+	}
+
+	/**
+	 * Returns all ids, in increasing order.
+	 *
+	 * @return Ids
+	 */
+	public int[] toArray() {
+		int[] ids = new int[cardinality()];
+		int[] count = {0};
+		forEach(doc -> ids[count[0]++] = doc);
+		return ids;
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by this bitmap.
+	 *
+	 * @return Bytes used
+	 */
+	public long bytesUsed() {
+		long bytes = 16 + 11L * keys.length;
+		for (int i = 0; i < size; i++) {
+			bytes += containers[i].bytesUsed();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Appends a container after all others, if it is not empty.
+	 *
+	 * @param key High 16 bits of the container's ids
+	 * @param container Container, may be null for an empty one
+	 * @param isShared True if the container belongs to another bitmap too
+	 */
+	private void append(char key, Container container, boolean isShared) {
+		if (container == null || container.cardinality() == 0) {
+			return;
+		}
+		grow();
+		keys[size] = key;
+		containers[size] = container;
+		shared[size] = isShared;
+		size++;
+	}
+
+	private void grow() {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+			shared = Arrays.copyOf(shared, size * 2);
+		}
+	}
+
+	private static Container and(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+			if (x.size > y.size) {
+				ArrayContainer t = x; x = y; y = t;
+			}
+			char[] values = new char[x.size];
+			int count = 0;
+			for (int i = 0, j = 0; i < x.size && j < y.size; ) {
+				if (x.values[i] < y.values[j]) {
+					i++;
+				} else if (x.values[i] > y.values[j]) {
+					// Gallop when one side is much longer, so a rare term against a common one
+					// costs about the length of the rare one
+					j = y.size > 64 * x.size ? ArrayContainer.advance(y.values, j, y.size, x.values[i]) : j + 1;
+				} else {
+					values[count++] = x.values[i];
+					i++;
+					j++;
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+		if (a instanceof ArrayContainer || b instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+			BitmapContainer y = (BitmapContainer) (a instanceof ArrayContainer ? b : a);
+			char[] values = new char[x.size];
+			int count = 0;
+			for (int i = 0; i < x.size; i++) {
+				if (y.contains(x.values[i])) {
+					values[count++] = x.values[i];
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+		long[] x = ((BitmapContainer) a).words, y = ((BitmapContainer) b).words;
+		long[] words = new long[WORDS];
+		int cardinality = 0;
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = x[i] & y[i];
+			cardinality += Long.bitCount(words[i]);
+		}
+		return BitmapContainer.shrink(words, cardinality);
+	}
+
+	private static Container or(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+			if (x.size + y.size <= ARRAY_MAX) {
+				char[] values = new char[x.size + y.size];
+				int count = 0, i = 0, j = 0;
+				while (i < x.size && j < y.size) {
+					if (x.values[i] < y.values[j]) {
+						values[count++] = x.values[i++];
+					} else if (x.values[i] > y.values[j]) {
+						values[count++] = y.values[j++];
+					} else {
+						values[count++] = x.values[i++];
+						j++;
+					}
+				}
+				while (i < x.size) {
+					values[count++] = x.values[i++];
+				}
+				while (j < y.size) {
+					values[count++] = y.values[j++];
+				}
+				return new ArrayContainer(values, count);
+			}
+			BitmapContainer bitmap = x.toBitmap();
+			for (int j = 0; j < y.size; j++) {
+				bitmap.set(y.values[j]);
+			}
+			return BitmapContainer.shrink(bitmap.words, bitmap.cardinality);
+		}
+		if (a instanceof ArrayContainer || b instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+			BitmapContainer y = (BitmapContainer) (a instanceof ArrayContainer ? b : a);
+			BitmapContainer bitmap = new BitmapContainer(y.words.clone(), y.cardinality);
+			for (int i = 0; i < x.size; i++) {
+				bitmap.set(x.values[i]);
+			}
+			return bitmap;
+		}
+		long[] x = ((BitmapContainer) a).words, y = ((BitmapContainer) b).words;
+		long[] words = new long[WORDS];
+		int cardinality = 0;
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = x[i] | y[i];
+			cardinality += Long.bitCount(words[i]);
+		}
+		return new BitmapContainer(words, cardinality);
+	}
+
+	private static Container andNot(Container a, Container b) {
+		if (a instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) a;
+			char[] values = new char[x.size];
+			int count = 0;
+			for (int i = 0; i < x.size; i++) {
+				if (!b.contains(x.values[i])) {
+					values[count++] = x.values[i];
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+		BitmapContainer x = (BitmapContainer) a;
+		if (b instanceof ArrayContainer) {
+			ArrayContainer y = (ArrayContainer) b;
+			BitmapContainer bitmap = new BitmapContainer(x.words.clone(), x.cardinality);
+			for (int j = 0; j < y.size; j++) {
+				bitmap.clear(y.values[j]);
+			}
+			return BitmapContainer.shrink(bitmap.words, bitmap.cardinality);
+		}
+		long[] y = ((BitmapContainer) b).words;
+		long[] words = new long[WORDS];
+		int cardinality = 0;
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = x.words[i] & ~y[i];
+			cardinality += Long.bitCount(words[i]);
+		}
+		return BitmapContainer.shrink(words, cardinality);
+	}
+
+	/**
+	 * The low 16 bits of the ids sharing the same high 16 bits.
+	 */
+	private static abstract class Container {
+		abstract int cardinality();
+		abstract boolean contains(char low);
+		/** Adds an id, returning the container to use from now on, which may be a new one. */
+		abstract Container add(char low);
+		abstract Container copy();
+		abstract void forEach(int high, IntConsumer action);
+		abstract long bytesUsed();
+	}
+
+	/**
+	 * A container of up to ARRAY_MAX ids, kept in a sorted array.
+	 */
+	private static final class ArrayContainer extends Container {
+		char[] values;
+		int size;
+
+		ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		int cardinality() {
+			return size;
+		}
+
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, 0, size, low) >= 0;
+		}
+
+		Container add(char low) {
+			int i = size > 0 && values[size - 1] < low ? -size - 1 : Arrays.binarySearch(values, 0, size, low);
+			if (i >= 0) {
+				return this;
+			}
+			if (size == ARRAY_MAX) {
+				BitmapContainer bitmap = toBitmap();
+				bitmap.set(low);
+				return bitmap;
+			}
+			i = -i - 1;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+			}
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = low;
+			size++;
+			return this;
+		}
+
+		Container copy() {
+			return new ArrayContainer(values.clone(), size);
+		}
+
+		void forEach(int high, IntConsumer action) {
+			for (int i = 0; i < size; i++) {
+				action.accept(high | values[i]);
+			}
+		}
+
+		long bytesUsed() {
+			return 32 + 2L * values.length;
+		}
+
+		BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer(new long[WORDS], 0);
+			for (int i = 0; i < size; i++) {
+				bitmap.set(values[i]);
+			}
+			return bitmap;
+		}
+
+		/**
+		 * Finds the first value at or after from that is not less than target, by galloping.
+		 */
+		static int advance(char[] values, int from, int size, char target) {
+			int step = 1, low = from, high = from;
+			while (high < size && values[high] < target) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			high = Math.min(high, size);
+			int i = Arrays.binarySearch(values, low, high, target);
+			return i >= 0 ? i : -i - 1;
+		}
+	}
+
+	/**
+	 * A container of more than ARRAY_MAX ids, kept as a bitmap of all 65536.
+	 */
+	private static final class BitmapContainer extends Container {
+		final long[] words;
+		int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		/**
+		 * Returns a container for the given bits, an array container if there are few enough.
+		 */
+		static Container shrink(long[] words, int cardinality) {
+			if (cardinality > ARRAY_MAX) {
+				return new BitmapContainer(words, cardinality);
+			}
+			char[] values = new char[cardinality];
+			int count = 0;
+			for (int i = 0; i < WORDS; i++) {
+				for (long word = words[i]; word != 0; word &= word - 1) {
+					values[count++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+
+		int cardinality() {
+			return cardinality;
+		}
+
+		boolean contains(char low) {
+			return (words[low >>> 6] & 1L << low) != 0;
+		}
+
+		Container add(char low) {
+			set(low);
+			return this;
+		}
+
+		void set(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) == 0) {
+				words[low >>> 6] |= bit;
+				cardinality++;
+			}
+		}
+
+		void clear(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) != 0) {
+				words[low >>> 6] &= ~bit;
+				cardinality--;
+			}
+		}
+
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		void forEach(int high, IntConsumer action) {
+			for (int i = 0; i < WORDS; i++) {
+				for (long word = words[i]; word != 0; word &= word - 1) {
+					action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+				}
+			}
+		}
+
+		long bytesUsed() {
+			return 24 + 8L * WORDS;
+		}
+	}
+}
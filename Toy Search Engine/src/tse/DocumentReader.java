@@ -0,0 +1,344 @@
+package tse;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This class reads a document and counts its keywords straight from the file bytes, without
+ * decoding to characters or building a String per line or per word. Small documents are read
+ * into a buffer, larger ones are memory mapped, and very large ones are split into chunks at
+ * whitespace boundaries that are tokenized in parallel.
+ *
+ * Words are recognized exactly as ToySearchEngine.getKey does: whitespace separated, at most one
+ * trailing punctuation character stripped, made up only of ASCII letters. Bytes outside ASCII are
+ * never letters, so a UTF-8 document gives the same keywords as when it is decoded first.
+ *
+ */
+public class DocumentReader {
+
+	/**
+	 * Documents smaller than this are read into a heap buffer instead of being mapped.
+	 */
+	static final int MAP_THRESHOLD = 1 << 18;
+
+	/**
+	 * Largest number of bytes tokenized as one chunk.
+	 */
+	static final int CHUNK_SIZE = 1 << 26;
+
+	/**
+	 * Noise words, which are dropped once the distinct words of the document are known.
+	 */
+	private final Set<String> noiseWords;
+
+	/**
+	 * True if word positions are recorded with every occurrence.
+	 */
+	private final boolean positional;
+
+	/**
+	 * Number of bytes tokenized as one chunk, CHUNK_SIZE unless changed for testing.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Metrics to record each document in, null if none.
+	 */
+	private final IndexMetrics metrics;
+
+	/**
+	 * Initializes a reader that drops the given noise words.
+	 *
+	 * @param noiseWords Noise words, in lower case
+	 * @param positional True if word positions should be recorded
+	 */
+	public DocumentReader(Set<String> noiseWords, boolean positional) {
+		this(noiseWords, positional, CHUNK_SIZE, null);
+	}
+
+	/**
+	 * Initializes a reader that drops the given noise words, and records what it reads.
+	 *
+	 * @param noiseWords Noise words, in lower case
+	 * @param positional True if word positions should be recorded
+	 * @param metrics Metrics to record bytes, tokens and read and tokenize times in
+	 */
+	public DocumentReader(Set<String> noiseWords, boolean positional, IndexMetrics metrics) {
+		this(noiseWords, positional, CHUNK_SIZE, metrics);
+	}
+
+	/**
+	 * Initializes a reader that splits documents into chunks of the given size.
+	 *
+	 * @param noiseWords Noise words, in lower case
+	 * @param positional True if word positions should be recorded
+	 * @param chunkSize Largest number of bytes tokenized as one chunk
+	 */
+	DocumentReader(Set<String> noiseWords, boolean positional, int chunkSize) {
+		this(noiseWords, positional, chunkSize, null);
+	}
+
+	private DocumentReader(Set<String> noiseWords, boolean positional, int chunkSize, IndexMetrics metrics) {
+		this.noiseWords = noiseWords;
+		this.positional = positional;
+		this.chunkSize = chunkSize;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Reads a document and returns the occurrence of each keyword in it. With metrics, the time
+	 * until the bytes are in memory is recorded as reading, and the rest as tokenizing. Mapped
+	 * pages are only read from disk as they are tokenized, so for large documents some of the
+	 * reading shows up as tokenizing.
+	 *
+	 * @param docFile Name of the document file
+	 * @return Hash table of keys in the given document, each associated with an Occurrence object
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 * @throws IOException If the document could not be read
+	 */
+	public HashMap<String, Occurrence> read(String docFile) throws IOException {
+		long start = metrics == null ? 0 : metrics.start(), tokenizeStart;
+		long size;
+		List<TokenCounts> chunks;
+		try (FileChannel channel = FileChannel.open(Paths.get(docFile), StandardOpenOption.READ)) {
+			size = channel.size();
+			if (size < MAP_THRESHOLD) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+				tokenizeStart = metrics == null ? 0 : metrics.start();
+				chunks = Collections.singletonList(tokenize(buffer));
+			} else {
+				List<long[]> ranges = split(channel, size);
+				tokenizeStart = metrics == null ? 0 : metrics.start();
+				chunks = ranges.parallelStream().map(range -> {
+					try {
+						return tokenize(channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}).collect(Collectors.toList());
+			}
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(docFile);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		// Combine the chunks in document order, shifting positions by the words before each chunk
+		HashMap<String, Occurrence> keysInDoc = new HashMap<>();
+		int wordsBefore = 0, noise = 0;
+		for (TokenCounts chunk : chunks) {
+			for (int id = 0; id < chunk.terms(); id++) {
+				String keyword = chunk.term(id);
+				if (noiseWords.contains(keyword)) {
+					noise += chunk.counts[id];
+					continue;
+				}
+				Occurrence occurrence = keysInDoc.get(keyword);
+				if (occurrence == null) {
+					occurrence = new Occurrence(docFile, 0);
+					keysInDoc.put(keyword, occurrence);
+				}
+				occurrence.frequency += chunk.counts[id];
+				if (positional) {
+					if (occurrence.positions == null) {
+						occurrence.positions = new PositionList();
+					}
+					for (int pos : chunk.positions[id].toArray()) {
+						occurrence.positions.add(wordsBefore + pos);
+					}
+				}
+			}
+			wordsBefore += chunk.words;
+		}
+		if (metrics != null) {
+			metrics.documentRead(size, wordsBefore, noise, start, tokenizeStart);
+		}
+		return keysInDoc;
+	}
+
+	/**
+	 * Splits a file into byte ranges of about chunkSize bytes, each ending at a whitespace byte
+	 * (or the end of the file) so that no word is cut in two.
+	 *
+	 * @param channel Open file
+	 * @param size Size of the file
+	 * @return List of {start, end} ranges covering the file
+	 * @throws IOException If the file could not be read
+	 */
+	private List<long[]> split(FileChannel channel, long size) throws IOException {
+		List<long[]> ranges = new ArrayList<>();
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		long start = 0;
+		while (start < size) {
+			long end = Math.min(start + chunkSize, size);
+			// Move the end forward to the next whitespace byte
+			scan:
+			while (end < size) {
+				probe.clear();
+				int n = channel.read(probe, end);
+				for (int i = 0; i < n; i++) {
+					if (isSpace(probe.get(i))) {
+						end += i;
+						break scan;
+					}
+				}
+				end += n;
+			}
+			ranges.add(new long[] {start, end});
+			start = end;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Counts the keywords in a buffer of document bytes.
+	 *
+	 * @param buffer Bytes from position 0 to the limit
+	 * @return Counts of the distinct keywords in the buffer
+	 */
+	TokenCounts tokenize(ByteBuffer buffer) {
+		TokenCounts counts = new TokenCounts(positional);
+		byte[] word = new byte[64];
+		int limit = buffer.limit();
+		int i = 0;
+		while (i < limit) {
+			// Skip whitespace
+			while (i < limit && isSpace(buffer.get(i))) {
+				i++;
+			}
+			if (i == limit) {
+				break;
+			}
+			int start = i;
+			while (i < limit && !isSpace(buffer.get(i))) {
+				i++;
+			}
+			int length = i - start;
+			// Strip one trailing punctuation character
+			if (isPunctuation(buffer.get(i - 1))) {
+				length--;
+			}
+			// Keep the word only if it is all letters, lower casing as it is copied
+			boolean letters = length > 0;
+			if (length > word.length) {
+				word = new byte[Math.max(length, word.length * 2)];
+			}
+			for (int j = 0; j < length && letters; j++) {
+				byte b = buffer.get(start + j);
+				if (b >= 'A' && b <= 'Z') {
+					word[j] = (byte) (b + ('a' - 'A'));
+				} else if (b >= 'a' && b <= 'z') {
+					word[j] = b;
+				} else {
+					letters = false;
+				}
+			}
+			if (letters) {
+				counts.add(word, length, counts.words);
+			}
+			counts.words++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Tells if a byte is whitespace, matching the \s character class.
+	 *
+	 * @param b Byte
+	 * @return True if b is a space, tab, newline, vertical tab, form feed or carriage return
+	 */
+	static boolean isSpace(byte b) {
+		return b == ' ' || (b >= '\t' && b <= '\r');
+	}
+
+	/**
+	 * Tells if a byte is one of the trailing punctuation characters stripped from words.
+	 *
+	 * @param b Byte
+	 * @return True if b is one of . , ? : ; !
+	 */
+	static boolean isPunctuation(byte b) {
+		return b == '.' || b == ',' || b == '?' || b == ':' || b == ';' || b == '!';
+	}
+
+	/**
+	 * Counts of the distinct words in a chunk. Words are numbered by a TermDictionary over their
+	 * bytes, so a String is only made once per distinct word.
+	 */
+	static class TokenCounts {
+
+		/**
+		 * Ids of the distinct words.
+		 */
+		final TermDictionary dictionary = new TermDictionary();
+
+		/**
+		 * Number of occurrences of each word, indexed by word id.
+		 */
+		int[] counts = new int[64];
+
+		/**
+		 * Positions of each word in the chunk, indexed by word id. Null if not positional.
+		 */
+		PositionList[] positions;
+
+		/**
+		 * Number of words in the chunk, including ones that are not keywords.
+		 */
+		int words;
+
+		TokenCounts(boolean positional) {
+			positions = positional ? new PositionList[64] : null;
+		}
+
+		/**
+		 * Counts one occurrence of a word.
+		 *
+		 * @param word Array holding the word bytes
+		 * @param length Number of bytes in the word
+		 * @param pos Position of the word in the chunk
+		 */
+		void add(byte[] word, int length, int pos) {
+			int id = dictionary.add(word, 0, length);
+			if (id == counts.length) {
+				counts = Arrays.copyOf(counts, id * 2);
+				if (positions != null) {
+					positions = Arrays.copyOf(positions, id * 2);
+				}
+			}
+			counts[id]++;
+			if (positions != null) {
+				if (positions[id] == null) {
+					positions[id] = new PositionList();
+				}
+				positions[id].add(pos);
+			}
+		}
+
+		/**
+		 * Returns the number of distinct words.
+		 *
+		 * @return Number of distinct words
+		 */
+		int terms() {
+			return dictionary.size();
+		}
+
+		/**
+		 * Returns the word with the given id.
+		 *
+		 * @param id Word id
+		 * @return Word
+		 */
+		String term(int id) {
+			return dictionary.term(id);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package tse;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class counts what indexing does: documents, bytes and tokens read, noise words dropped,
+ * and the time spent in each stage of the pipeline, which is reading a document's bytes,
+ * tokenizing them into keyword counts, merging the counts into the index, and publishing a
+ * snapshot. Each stage costs a couple of System.nanoTime calls and LongAdder updates per
+ * document, never per token, and nothing at all when metrics are disabled.
+ *
+ * Figures about the index itself, such as the distribution of posting list lengths and the
+ * estimated memory used, are computed from the latest snapshot when asked for.
+ *
+ * Metrics can be registered as a JMX MBean, and printed as one line every so often.
+ *
+ */
+public class IndexMetrics implements IndexMetricsMBean {
+
+	/**
+	 * Latest snapshot of the index measured.
+	 */
+	private final Supplier<IndexSnapshot> snapshots;
+
+	/**
+	 * False if nothing is to be recorded.
+	 */
+	private volatile boolean enabled = true;
+
+	/**
+	 * Counts since the last reset.
+	 */
+	private final LongAdder documents = new LongAdder(), failedDocuments = new LongAdder(),
+			bytesRead = new LongAdder(), tokens = new LongAdder(), noiseTokens = new LongAdder();
+
+	/**
+	 * Latency of each stage, per document, in microseconds.
+	 */
+	private final LatencyHistogram read = new LatencyHistogram(), tokenize = new LatencyHistogram(),
+			merge = new LatencyHistogram(), publish = new LatencyHistogram();
+
+	/**
+	 * Time of the last reset, in nanoseconds.
+	 */
+	private volatile long started = System.nanoTime();
+
+	/**
+	 * Last document that could not be read, and why.
+	 */
+	private volatile String lastError;
+
+	/**
+	 * Initializes metrics for an index.
+	 *
+	 * @param snapshots Gives the latest snapshot of the index
+	 */
+	public IndexMetrics(Supplier<IndexSnapshot> snapshots) {
+		this.snapshots = snapshots;
+	}
+
+	/**
+	 * Returns the time to measure a stage from, if enabled.
+	 *
+	 * @return System.nanoTime, or 0 if metrics are disabled
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records a document read and tokenized.
+	 *
+	 * @param bytes Size of the document
+	 * @param words Number of words in the document, keywords or not
+	 * @param noise Number of noise words among them
+	 * @param start Time reading started, from start()
+	 * @param tokenizeStart Time tokenizing started, from start()
+	 */
+	void documentRead(long bytes, long words, long noise, long start, long tokenizeStart) {
+		if (!enabled || start == 0) {
+			return;
+		}
+		long end = System.nanoTime();
+		documents.increment();
+		bytesRead.add(bytes);
+		tokens.add(words);
+		noiseTokens.add(noise);
+		read.record((tokenizeStart - start) / 1000);
+		tokenize.record((end - tokenizeStart) / 1000);
+	}
+
+	/**
+	 * Records a document that could not be read.
+	 *
+	 * @param docFile Name of the document file
+	 * @param e What went wrong
+	 */
+	void documentFailed(String docFile, IOException e) {
+		failedDocuments.increment();
+		lastError = docFile + ": " + e;
+	}
+
+	/**
+	 * Records the merge of a document's keywords into the index.
+	 *
+	 * @param start Time merging started, from start()
+	 */
+	void merged(long start) {
+		if (enabled && start != 0) {
+			merge.record((System.nanoTime() - start) / 1000);
+		}
+	}
+
+	/**
+	 * Records the publishing of a snapshot.
+	 *
+	 * @param start Time publishing started, from start()
+	 */
+	void published(long start) {
+		if (enabled && start != 0) {
+			publish.record((System.nanoTime() - start) / 1000);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public long getDocuments() {
+		return documents.sum();
+	}
+
+	public long getFailedDocuments() {
+		return failedDocuments.sum();
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getTokens() {
+		return tokens.sum();
+	}
+
+	public long getNoiseTokens() {
+		return noiseTokens.sum();
+	}
+
+	public double getNoiseRejectionRate() {
+		long t = tokens.sum();
+		return t == 0 ? 0 : (double) noiseTokens.sum() / t;
+	}
+
+	public double getDocumentsPerSecond() {
+		return documents.sum() / seconds();
+	}
+
+	public double getTokensPerSecond() {
+		return tokens.sum() / seconds();
+	}
+
+	public long getReadP50Micros() {
+		return read.percentile(0.5);
+	}
+
+	public long getReadP99Micros() {
+		return read.percentile(0.99);
+	}
+
+	public long getTokenizeP50Micros() {
+		return tokenize.percentile(0.5);
+	}
+
+	public long getTokenizeP99Micros() {
+		return tokenize.percentile(0.99);
+	}
+
+	public long getMergeP50Micros() {
+		return merge.percentile(0.5);
+	}
+
+	public long getMergeP99Micros() {
+		return merge.percentile(0.99);
+	}
+
+	public long getPublishP50Micros() {
+		return publish.percentile(0.5);
+	}
+
+	public long getPublishP99Micros() {
+		return publish.percentile(0.99);
+	}
+
+	public long getIndexVersion() {
+		return snapshots.get().version();
+	}
+
+	public int getKeywords() {
+		return snapshots.get().termCount();
+	}
+
+	public long getPostingLengthP50() {
+		return postingLengths().percentile(0.5);
+	}
+
+	public long getPostingLengthP99() {
+		return postingLengths().percentile(0.99);
+	}
+
+	public long getPostingLengthMax() {
+		IndexSnapshot snapshot = snapshots.get();
+		int max = 0;
+		for (int term = 0; term < snapshot.termCount(); term++) {
+			max = Math.max(max, snapshot.postings(term));
+		}
+		return max;
+	}
+
+	public long getIndexBytesEstimate() {
+		return snapshots.get().bytesUsed();
+	}
+
+	/**
+	 * Returns the distribution of posting list lengths in the latest snapshot.
+	 *
+	 * @return Histogram of the number of documents each keyword occurs in
+	 */
+	public LatencyHistogram postingLengths() {
+		IndexSnapshot snapshot = snapshots.get();
+		LatencyHistogram lengths = new LatencyHistogram();
+		for (int term = 0; term < snapshot.termCount(); term++) {
+			lengths.record(snapshot.postings(term));
+		}
+		return lengths;
+	}
+
+	/**
+	 * Forgets all counts and latencies, and starts measuring rates from now.
+	 */
+	public void reset() {
+		documents.reset();
+		failedDocuments.reset();
+		bytesRead.reset();
+		tokens.reset();
+		noiseTokens.reset();
+		read.reset();
+		tokenize.reset();
+		merge.reset();
+		publish.reset();
+		lastError = null;
+		started = System.nanoTime();
+	}
+
+	/**
+	 * Returns a one line summary of the metrics.
+	 *
+	 * @return Summary
+	 */
+	public String summary() {
+		return String.format("index docs=%d failed=%d docs/s=%.1f tokens/s=%.0f MB=%.1f noise=%.1f%% "
+				+ "read_p99_us=%d tokenize_p99_us=%d merge_p99_us=%d publish_p99_us=%d "
+				+ "version=%d keywords=%d postings_p99=%d index_MB=%.1f",
+				getDocuments(), getFailedDocuments(), getDocumentsPerSecond(), getTokensPerSecond(),
+				getBytesRead() / 1e6, 100 * getNoiseRejectionRate(),
+				getReadP99Micros(), getTokenizeP99Micros(), getMergeP99Micros(), getPublishP99Micros(),
+				getIndexVersion(), getKeywords(), getPostingLengthP99(), getIndexBytesEstimate() / 1e6);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, as tse:type=IndexMetrics,name=name.
+	 *
+	 * @param name Name telling this index from others in the same JVM
+	 * @throws JMException If the name is taken or not valid
+	 */
+	public void register(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("tse:type=IndexMetrics,name=" + ObjectName.quote(name)));
+	}
+
+	/**
+	 * Prints the summary line every period, on a daemon thread, until the returned future is
+	 * cancelled.
+	 *
+	 * @param out Stream to print to
+	 * @param period Time between lines
+	 * @param unit Unit of period
+	 * @return Future to cancel to stop printing
+	 */
+	public ScheduledFuture<?> log(PrintStream out, long period, TimeUnit unit) {
+		ScheduledThreadPoolExecutor logger = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "index-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// No more tasks are coming, so the thread ends once the line printing is cancelled
+		logger.setContinueExistingPeriodicTasksAfterShutdownPolicy(true);
+		logger.setRemoveOnCancelPolicy(true);
+		ScheduledFuture<?> future = logger.scheduleAtFixedRate(() -> out.println(summary()), period, period, unit);
+		logger.shutdown();
+		return future;
+	}
+
+	private double seconds() {
+		return Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+	}
+}
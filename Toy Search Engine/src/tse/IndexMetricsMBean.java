@@ -0,0 +1,61 @@
+package tse;
+
+/**
+ * This interface is the management view of IndexMetrics, as seen in JConsole or any other JMX
+ * client. Latencies are in microseconds.
+ *
+ */
+public interface IndexMetricsMBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getDocuments();
+
+	long getFailedDocuments();
+
+	String getLastError();
+
+	long getBytesRead();
+
+	long getTokens();
+
+	long getNoiseTokens();
+
+	double getNoiseRejectionRate();
+
+	double getDocumentsPerSecond();
+
+	double getTokensPerSecond();
+
+	long getReadP50Micros();
+
+	long getReadP99Micros();
+
+	long getTokenizeP50Micros();
+
+	long getTokenizeP99Micros();
+
+	long getMergeP50Micros();
+
+	long getMergeP99Micros();
+
+	long getPublishP50Micros();
+
+	long getPublishP99Micros();
+
+	long getIndexVersion();
+
+	int getKeywords();
+
+	long getPostingLengthP50();
+
+	long getPostingLengthP99();
+
+	long getPostingLengthMax();
+
+	long getIndexBytesEstimate();
+
+	void reset();
+}
@@ -0,0 +1,498 @@
+package tse;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is an immutable snapshot of the index of keys, taken with TermIndex.snapshot. All
+ * queries are answered from a snapshot, so any number of threads can query one without locks
+ * while the index goes on changing. Once published, a snapshot is never modified.
+ *
+ */
+public class IndexSnapshot {
+
+	/**
+	 * Version of the index this is a snapshot of. Versions go up by one with every snapshot.
+	 */
+	private final long version;
+
+	/**
+	 * Keyword ids, a view that only knows of the keywords in this snapshot.
+	 */
+	private final TermDictionary terms;
+
+	/**
+	 * Document names, indexed by document id. Entries beyond documentCount may be filled in later
+	 * by the index, and are not part of this snapshot.
+	 */
+	private final String[] documents;
+
+	/**
+	 * Number of documents in this snapshot.
+	 */
+	private final int documentCount;
+
+	/**
+	 * Postings of each keyword, see TermIndex. No array reachable from here is written again.
+	 */
+	final int[][] docs, freqs;
+
+	/**
+	 * Positions of each keyword's postings, null if the index is not positional.
+	 */
+	final PositionList[][] positions;
+
+	/**
+	 * Documents of each keyword, as bitmaps.
+	 */
+	final DocBitmap[] bitmaps;
+
+	/**
+	 * Number of postings of each keyword.
+	 */
+	final int[] lengths;
+
+	/**
+	 * All keywords in sorted order, made the first time a prefix or wildcard query needs them.
+	 */
+	private volatile SortedVocabulary vocabulary;
+
+	/**
+	 * Postings of each keyword in increasing order of document id, each packed as (document id,
+	 * frequency) in one long, made the first time a boolean query scores the keyword. The array
+	 * itself is made by the first boolean query.
+	 */
+	private volatile AtomicReferenceArray<long[]> byDoc;
+
+	IndexSnapshot(long version, TermDictionary terms, String[] documents, int documentCount,
+			int[][] docs, int[][] freqs, PositionList[][] positions, DocBitmap[] bitmaps, int[] lengths) {
+		this.version = version;
+		this.terms = terms;
+		this.documents = documents;
+		this.documentCount = documentCount;
+		this.docs = docs;
+		this.freqs = freqs;
+		this.positions = positions;
+		this.bitmaps = bitmaps;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * Returns the version of the index this is a snapshot of.
+	 *
+	 * @return Version number
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of documents.
+	 *
+	 * @return Number of documents
+	 */
+	public int documentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param id Document id
+	 * @return Document name
+	 */
+	public String document(int id) {
+		return documents[id];
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords
+	 */
+	public int termCount() {
+		return lengths.length;
+	}
+
+	/**
+	 * Returns the id of a keyword.
+	 *
+	 * @param keyword Keyword
+	 * @return Keyword id, -1 if the keyword is not in this snapshot
+	 */
+	public int termId(String keyword) {
+		return terms.id(keyword);
+	}
+
+	/**
+	 * Returns a keyword.
+	 *
+	 * @param term Keyword id
+	 * @return Keyword
+	 */
+	public String term(int term) {
+		return terms.term(term);
+	}
+
+	/**
+	 * Returns the number of documents a keyword occurs in.
+	 *
+	 * @param term Keyword id
+	 * @return Number of postings
+	 */
+	public int postings(int term) {
+		return lengths[term];
+	}
+
+	/**
+	 * Returns the documents a keyword occurs in, as a bitmap that must not be changed.
+	 *
+	 * @param term Keyword id
+	 * @return Bitmap of document ids
+	 */
+	public DocBitmap bitmap(int term) {
+		return bitmaps[term];
+	}
+
+	/**
+	 * Tells if positions are kept with postings.
+	 *
+	 * @return True if phrase and proximity queries can be answered
+	 */
+	public boolean isPositional() {
+		return positions != null;
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by the index as of this snapshot, counted the same way
+	 * as TermIndex.bytesUsed. Arrays shared with older snapshots are counted in full.
+	 *
+	 * @return Bytes used
+	 */
+	public long bytesUsed() {
+		long bytes = terms.bytesUsed() + 8L * 5 * lengths.length;
+		for (int term = 0; term < lengths.length; term++) {
+			bytes += 2 * (16 + 4L * docs[term].length) + bitmaps[term].bytesUsed();
+			if (positions != null) {
+				bytes += 16 + 8L * positions[term].length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns all keywords in sorted order, sorting them the first time.
+	 *
+	 * @return Sorted vocabulary
+	 */
+	public SortedVocabulary vocabulary() {
+		SortedVocabulary sorted = vocabulary;
+		if (sorted == null) {
+			// Two threads may both sort, either result will do
+			vocabulary = sorted = new SortedVocabulary(terms, termCount());
+		}
+		return sorted;
+	}
+
+	/**
+	 * Finds the k documents with the highest total frequency of two keywords, ties broken by
+	 * document name. See ToySearchEngine.top5search.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param k Number of documents to keep
+	 * @return Top k documents with their scores
+	 */
+	public TopK top(String kw1, String kw2, int k) {
+		int t1 = termId(kw1);
+		int t2 = termId(kw2);
+
+		// Pack each posting of both keywords as (document id, frequency) in one long, so that
+		// sorting brings the postings of the same document together
+		int n1 = t1 < 0 ? 0 : lengths[t1];
+		int n2 = t2 < 0 ? 0 : lengths[t2];
+		long[] postings = new long[n1 + n2];
+		for (int i = 0; i < n1; i++) {
+			postings[i] = (long) docs[t1][i] << 32 | freqs[t1][i];
+		}
+		for (int i = 0; i < n2; i++) {
+			postings[n1 + i] = (long) docs[t2][i] << 32 | freqs[t2][i];
+		}
+		Arrays.sort(postings);
+
+		// Add up the frequencies per document, keeping the k documents with the highest totals
+		TopK top = new TopK(this::document, k);
+		for (int i = 0; i < postings.length; ) {
+			int doc = (int) (postings[i] >>> 32);
+			int frequency = 0;
+			for (; i < postings.length && (int) (postings[i] >>> 32) == doc; i++) {
+				frequency += (int) postings[i];
+			}
+			top.offer(doc, frequency);
+		}
+		return top;
+	}
+
+	/**
+	 * Finds the k documents with the highest total frequency of all keywords matching a pattern.
+	 * See ToySearchEngine.wildcardSearch.
+	 *
+	 * @param pattern Keyword pattern, in lower case
+	 * @param k Number of documents to keep
+	 * @return Top k documents with their scores
+	 */
+	public TopK wildcard(String pattern, int k) {
+		int[] matches = vocabulary().matching(pattern);
+
+		// Add up frequencies per document in an array indexed by document id, remembering which
+		// documents were touched, so that thousands of keywords cost one pass over their postings
+		int[] scores = new int[documentCount];
+		int[] touched = new int[documentCount];
+		int count = 0;
+		for (int term : matches) {
+			int[] d = docs[term], f = freqs[term];
+			for (int i = 0; i < lengths[term]; i++) {
+				if (scores[d[i]] == 0) {
+					touched[count++] = d[i];
+				}
+				scores[d[i]] += f[i];
+			}
+		}
+
+		TopK top = new TopK(this::document, k);
+		for (int i = 0; i < count; i++) {
+			top.offer(touched[i], scores[touched[i]]);
+		}
+		return top;
+	}
+
+	/**
+	 * Finds the k documents matching a boolean query with the highest total frequency of the
+	 * query's keywords (those not under a NOT). See ToySearchEngine.booleanSearch.
+	 *
+	 * @param query Boolean query
+	 * @param k Number of documents to keep
+	 * @return Top k documents with their scores
+	 */
+	public TopK bool(BooleanQuery query, int k) {
+		DocBitmap matches = query.matches(this);
+		TopK top = new TopK(this::document, k);
+		if (matches.isEmpty()) {
+			return top;
+		}
+
+		// Score only the matching documents: both they and each keyword's postings by document are
+		// in increasing order, so each is found by galloping forward from the one before, which
+		// costs little more than the number of matches when a keyword has far more postings
+		int[] survivors = matches.toArray();
+		int[] scores = new int[survivors.length];
+		for (String keyword : query.scoredKeywords()) {
+			int term = termId(keyword);
+			if (term < 0) {
+				continue;
+			}
+			long[] postings = byDoc(term);
+			for (int i = 0, j = 0; i < survivors.length && j < postings.length; i++) {
+				j = advance(postings, j, survivors[i]);
+				if (j < postings.length && (int) (postings[j] >>> 32) == survivors[i]) {
+					scores[i] += (int) postings[j];
+				}
+			}
+		}
+		for (int i = 0; i < survivors.length; i++) {
+			top.offer(survivors[i], scores[i]);
+		}
+		return top;
+	}
+
+	/**
+	 * Returns the postings of a keyword in increasing order of document id, sorting them the first
+	 * time. Two threads may both sort, either result will do.
+	 */
+	private long[] byDoc(int term) {
+		AtomicReferenceArray<long[]> sorted = byDoc;
+		if (sorted == null) {
+			byDoc = sorted = new AtomicReferenceArray<long[]>(lengths.length);
+		}
+		long[] postings = sorted.get(term);
+		if (postings == null) {
+			postings = new long[lengths[term]];
+			for (int i = 0; i < postings.length; i++) {
+				postings[i] = (long) docs[term][i] << 32 | freqs[term][i];
+			}
+			Arrays.sort(postings);
+			sorted.set(term, postings);
+		}
+		return postings;
+	}
+
+	/**
+	 * Finds the first posting at or after from whose document is not less than doc, by galloping.
+	 */
+	private static int advance(long[] postings, int from, int doc) {
+		int step = 1, low = from, high = from;
+		while (high < postings.length && (int) (postings[high] >>> 32) < doc) {
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		high = Math.min(high, postings.length);
+		// Binary search for the first posting of doc or later in [low, high)
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if ((int) (postings[mid] >>> 32) < doc) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the k documents in which a phrase occurs most often. See ToySearchEngine.phraseSearch.
+	 *
+	 * @param keywords Keywords of the phrase
+	 * @param offsets Offset of each keyword from the start of the phrase
+	 * @param k Number of documents to keep
+	 * @return Top k documents with the number of times the phrase occurs in each
+	 * @throws IllegalStateException If the index is not positional
+	 */
+	public TopK phrase(String[] keywords, int[] offsets, int k) {
+		checkPositional();
+		TopK top = new TopK(this::document, k);
+		int[] ids = new int[keywords.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = termId(keywords[i]);
+			if (ids[i] < 0) {
+				return top; // A keyword that occurs nowhere can't be part of a match
+			}
+		}
+		if (ids.length == 0) {
+			return top;
+		}
+
+		// Order the terms from the rarest to the most common, so that the candidate set starts small
+		Integer[] order = new Integer[ids.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> lengths[ids[a]] - lengths[ids[b]]);
+
+		// Candidate phrase start positions per document, seeded from the rarest term
+		HashMap<Integer, int[]> starts = new HashMap<>();
+		int rarest = ids[order[0]];
+		for (int i = 0; i < lengths[rarest]; i++) {
+			int[] candidates = positions[rarest][i].toArray();
+			for (int j = 0; j < candidates.length; j++) {
+				candidates[j] -= offsets[order[0]];
+			}
+			starts.put(docs[rarest][i], candidates);
+		}
+
+		// Narrow the candidates with each remaining term, dropping documents that run out of starts
+		for (int t = 1; t < order.length && !starts.isEmpty(); t++) {
+			int term = ids[order[t]];
+			int termOffset = offsets[order[t]];
+			HashMap<Integer, int[]> next = new HashMap<>();
+			for (int i = 0; i < lengths[term]; i++) {
+				int doc = docs[term][i];
+				int[] candidates = starts.get(doc);
+				if (candidates == null) {
+					continue;
+				}
+				int[] kept = matchStarts(candidates, positions[term][i].toArray(), termOffset);
+				if (kept.length > 0) {
+					next.put(doc, kept);
+				}
+			}
+			starts = next;
+		}
+
+		for (Map.Entry<Integer, int[]> entry : starts.entrySet()) {
+			top.offer(entry.getKey(), entry.getValue().length);
+		}
+		return top;
+	}
+
+	/**
+	 * Finds the k documents in which kw1 occurs near kw2 most often. See
+	 * ToySearchEngine.proximitySearch.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param window Largest distance, in words, between the two keywords
+	 * @param k Number of documents to keep
+	 * @return Top k documents with the number of occurrences of kw1 near kw2 in each
+	 * @throws IllegalStateException If the index is not positional
+	 */
+	public TopK proximity(String kw1, String kw2, int window, int k) {
+		checkPositional();
+		TopK top = new TopK(this::document, k);
+		int t1 = termId(kw1);
+		int t2 = termId(kw2);
+		if (t1 < 0 || t2 < 0) {
+			return top;
+		}
+		// Index the postings of kw2 by document
+		HashMap<Integer, PositionList> probe = new HashMap<>();
+		for (int i = 0; i < lengths[t2]; i++) {
+			probe.put(docs[t2][i], positions[t2][i]);
+		}
+		for (int i = 0; i < lengths[t1]; i++) {
+			int doc = docs[t1][i];
+			PositionList other = probe.get(doc);
+			if (other == null) {
+				continue;
+			}
+			int[] a = positions[t1][i].toArray();
+			int[] b = other.toArray();
+			int count = 0, j = 0;
+			for (int p : a) {
+				j = PositionList.gallop(b, j, p - window);
+				if (j < b.length && b[j] <= p + window) {
+					count++;
+				}
+			}
+			if (count > 0) {
+				top.offer(doc, count);
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Keeps the phrase start positions for which the term occurs at the given offset from the start.
+	 * Both arrays are in increasing order, so each lookup gallops forward from the previous one.
+	 *
+	 * @param starts Candidate phrase start positions
+	 * @param positions Positions of the term in the same document
+	 * @param offset Offset of the term within the phrase
+	 * @return Start positions that are still candidates
+	 */
+	private static int[] matchStarts(int[] starts, int[] positions, int offset) {
+		int[] kept = new int[starts.length];
+		int count = 0, j = 0;
+		for (int start : starts) {
+			j = PositionList.gallop(positions, j, start + offset);
+			if (j == positions.length) {
+				break;
+			}
+			if (positions[j] == start + offset) {
+				kept[count++] = start;
+			}
+		}
+		return Arrays.copyOf(kept, count);
+	}
+
+	/**
+	 * Makes sure positions are kept, which phrase and proximity queries depend on.
+	 *
+	 * @throws IllegalStateException If the index is not positional
+	 */
+	private void checkPositional() {
+		if (positions == null) {
+			throw new IllegalStateException("phrase and proximity queries need a positional index");
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package tse;
+
+import java.util.List;
+
+/**
+ * This class is a shard held in this JVM, a ToySearchEngine of its own.
+ *
+ */
+public class LocalShard implements Shard {
+
+	/**
+	 * Engine holding this shard's documents.
+	 */
+	final ToySearchEngine engine;
+
+	/**
+	 * Initializes a shard over an engine.
+	 *
+	 * @param engine Engine holding this shard's documents
+	 */
+	public LocalShard(ToySearchEngine engine) {
+		this.engine = engine;
+	}
+
+	public List<SearchHit> top(String kw1, String kw2, int k) {
+		return engine.snapshot().top(kw1, kw2, k).hits();
+	}
+
+	public List<SearchHit> wildcard(String pattern, int k) {
+		return engine.snapshot().wildcard(pattern, k).hits();
+	}
+
+	public int documentFrequency(String keyword) {
+		IndexSnapshot snapshot = engine.snapshot();
+		int term = snapshot.termId(keyword);
+		return term < 0 ? 0 : snapshot.postings(term);
+	}
+
+	public int documentCount() {
+		return engine.snapshot().documentCount();
+	}
+}
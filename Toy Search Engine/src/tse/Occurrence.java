@@ -20,6 +20,12 @@ public class Occurrence {
 	 */
 	int frequency;
 	
+	/**
+	 * Word positions of the keyword in the above document, only recorded when the index
+	 * is built in positional mode. Null otherwise.
+	 */
+	PositionList positions;
+	
 	/**
 	 * Initializes this occurrence with the given document,frequency pair.
 	 * 
@@ -0,0 +1,164 @@
+package tse;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the word positions of a keyword in one document. Positions are
+ * appended in increasing order and stored as gaps from the previous position, each gap
+ * written as a variable length integer (7 bits per byte, high bit set on all but the
+ * last byte). Most gaps in running text fit in one byte.
+ *
+ */
+public class PositionList {
+
+	/**
+	 * Delta encoded positions.
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Number of bytes of the above array in use.
+	 */
+	private int length;
+
+	/**
+	 * Number of positions in this list.
+	 */
+	private int size;
+
+	/**
+	 * Last position appended, used to compute the next gap.
+	 */
+	private int last;
+
+	/**
+	 * Initializes an empty position list.
+	 */
+	public PositionList() {
+		bytes = new byte[4];
+		length = 0;
+		size = 0;
+		last = 0;
+	}
+
+	/**
+	 * Appends a position to the end of this list.
+	 *
+	 * @param pos Word position in the document
+	 * @throws IllegalArgumentException If pos is smaller than the last position appended
+	 */
+	public void add(int pos) {
+		if (size > 0 && pos < last) {
+			throw new IllegalArgumentException("position " + pos + " is before " + last);
+		}
+		int gap = size == 0 ? pos : pos - last;
+		if (length + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+		}
+		while ((gap & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+			gap >>>= 7;
+		}
+		bytes[length++] = (byte) gap;
+		last = pos;
+		size++;
+	}
+
+	/**
+	 * Returns the number of positions in this list.
+	 *
+	 * @return Number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Decodes all positions into an array, in increasing order.
+	 *
+	 * @return Array of positions
+	 */
+	public int[] toArray() {
+		int[] positions = new int[size];
+		int pos = 0, i = 0, value = 0, shift = 0;
+		for (int b = 0; b < length; b++) {
+			value |= (bytes[b] & 0x7F) << shift;
+			if ((bytes[b] & 0x80) != 0) {
+				shift += 7;
+				continue;
+			}
+			pos += value;
+			positions[i++] = pos;
+			value = 0;
+			shift = 0;
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns a new list holding the positions of both lists, in increasing order. This is
+	 * used when the same document is merged into the index more than once.
+	 *
+	 * @param a First list
+	 * @param b Second list
+	 * @return Merged list
+	 */
+	public static PositionList merge(PositionList a, PositionList b) {
+		int[] x = a.toArray(), y = b.toArray();
+		PositionList merged = new PositionList();
+		int i = 0, j = 0;
+		while (i < x.length || j < y.length) {
+			if (j == y.length || (i < x.length && x[i] <= y[j])) {
+				merged.add(x[i++]);
+			} else {
+				merged.add(y[j++]);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Finds the smallest index at or after from whose value is at least target, by
+	 * galloping (doubling the step) and then binary searching the last step. This is
+	 * cheap when the answer is close to from, which is the usual case when walking
+	 * two position lists in step.
+	 *
+	 * @param a Array sorted in increasing order
+	 * @param from Index to start the search at
+	 * @param target Value to search for
+	 * @return Index of the first value at least target, or a.length if there is none
+	 */
+	public static int gallop(int[] a, int from, int target) {
+		if (from >= a.length || a[from] >= target) {
+			return from;
+		}
+		// a[lo] < target is invariant
+		int lo = from, step = 1;
+		int hi = from + step;
+		while (hi < a.length && a[hi] < target) {
+			lo = hi;
+			step <<= 1;
+			hi = lo + step;
+		}
+		if (hi > a.length) {
+			hi = a.length;
+		}
+		// answer is in (lo, hi]
+		while (lo + 1 < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < target) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return hi;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,180 @@
+package tse;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches query results, evicting the least recently used entry when full. Every entry
+ * remembers the version of the index snapshot it was computed from, and only a lookup with that
+ * same version is a hit, so entries go stale as soon as a new snapshot is published and are
+ * replaced as they are asked for again.
+ *
+ * The cache is split into segments by key hash, each locked separately, so that threads looking
+ * up different keys rarely wait on each other.
+ *
+ */
+public class QueryCache {
+
+	/**
+	 * Stands in for a null result, which is cached like any other.
+	 */
+	private static final ArrayList<String> NO_RESULT = new ArrayList<String>();
+
+	/**
+	 * A cached result, with the version of the snapshot it came from.
+	 */
+	private static class Cached {
+		final long version;
+		final ArrayList<String> result;
+		Cached(long version, ArrayList<String> result) {
+			this.version = version;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Segments, each a map in access order with its own capacity.
+	 */
+	private final LinkedHashMap<String,Cached>[] segments;
+
+	/**
+	 * Number of lookups that were hits, misses, and entries evicted to make room.
+	 */
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param capacity Largest number of entries kept
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public QueryCache(int capacity) {
+		int count = Integer.highestOneBit(Math.max(1, Math.min(16, capacity / 64)));
+		int perSegment = Math.max(1, capacity / count);
+		segments = new LinkedHashMap[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new LinkedHashMap<String,Cached>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				protected boolean removeEldestEntry(Map.Entry<String,Cached> eldest) {
+					if (size() > perSegment) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Looks up a result.
+	 *
+	 * @param key Normalized query
+	 * @param version Version of the snapshot the query is run against
+	 * @return The cached result, null if there is no result for this version
+	 */
+	public Result get(String key, long version) {
+		LinkedHashMap<String,Cached> segment = segment(key);
+		Cached cached;
+		synchronized (segment) {
+			cached = segment.get(key);
+		}
+		if (cached == null || cached.version != version) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return new Result(cached.result == NO_RESULT ? null : new ArrayList<String>(cached.result));
+	}
+
+	/**
+	 * Caches a result, replacing any older entry for the same key.
+	 *
+	 * @param key Normalized query
+	 * @param version Version of the snapshot the result was computed from
+	 * @param result Result, may be null
+	 */
+	public void put(String key, long version, ArrayList<String> result) {
+		Cached cached = new Cached(version, result == null ? NO_RESULT : new ArrayList<String>(result));
+		LinkedHashMap<String,Cached> segment = segment(key);
+		synchronized (segment) {
+			Cached old = segment.get(key);
+			// Don't let a slow query on an old snapshot overwrite a newer result
+			if (old == null || old.version <= version) {
+				segment.put(key, cached);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of entries, stale or not.
+	 *
+	 * @return Number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for (LinkedHashMap<String,Cached> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups that found a current result.
+	 *
+	 * @return Number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found no result, or a stale one.
+	 *
+	 * @return Number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room.
+	 *
+	 * @return Number of evictions
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups that were hits.
+	 *
+	 * @return Hit ratio, 0 if there were no lookups
+	 */
+	public double hitRatio() {
+		long h = hits.sum(), total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	private LinkedHashMap<String,Cached> segment(String key) {
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+	}
+
+	/**
+	 * A cache hit. The result itself may be null, for a query that had no matches.
+	 */
+	public static class Result {
+
+		/**
+		 * The cached result, a copy the caller may change.
+		 */
+		public final ArrayList<String> documents;
+
+		Result(ArrayList<String> documents) {
+			this.documents = documents;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package tse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class serves queries against a ToySearchEngine over HTTP on the local machine, for load
+ * testing. Every request runs on a thread of the given executor and reads the engine's latest
+ * snapshot, so queries keep being answered while the engine indexes. Requests:
+ *
+ *   /search?kw1=alice&amp;kw2=rabbit   top5search
+ *   /wildcard?q=rabb*               wildcardSearch
+ *   /phrase?q=white+rabbit          phraseSearch
+ *   /boolean?q=alice+AND+NOT+queen  booleanSearch
+ *   /stats                          queries per second and latency percentiles
+ *
+ * Results are plain text, one document per line.
+ *
+ */
+public class QueryServer {
+
+	/**
+	 * Engine queries are answered by.
+	 */
+	private final ToySearchEngine engine;
+
+	/**
+	 * The HTTP server.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Latency of all queries, in microseconds.
+	 */
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * Time the server was started, in nanoseconds.
+	 */
+	private long started;
+
+	/**
+	 * Initializes a server on the given port of the loopback address.
+	 *
+	 * @param engine Engine to query
+	 * @param port Port, 0 for any free port
+	 * @param executor Executor requests are handled on. On a JDK with virtual threads, an executor
+	 *        that starts a virtual thread per task may be passed.
+	 * @throws IOException If the port can't be bound
+	 */
+	public QueryServer(ToySearchEngine engine, int port, Executor executor) throws IOException {
+		this.engine = engine;
+		server = HttpServer.create(new InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), port), 128);
+		server.setExecutor(executor);
+		server.createContext("/search", exchange -> query(exchange,
+				params -> engine.top5search(params.get("kw1"), params.get("kw2"))));
+		server.createContext("/wildcard", exchange -> query(exchange,
+				params -> engine.wildcardSearch(params.get("q"))));
+		server.createContext("/phrase", exchange -> query(exchange,
+				params -> engine.phraseSearch(params.get("q"))));
+		server.createContext("/boolean", exchange -> query(exchange,
+				params -> engine.booleanSearch(params.get("q"))));
+		server.createContext("/stats", exchange -> respond(exchange, 200, stats()));
+	}
+
+	/**
+	 * Starts serving.
+	 */
+	public void start() {
+		started = System.nanoTime();
+		server.start();
+	}
+
+	/**
+	 * Stops serving, waiting up to a second for requests in progress.
+	 */
+	public void stop() {
+		server.stop(1);
+	}
+
+	/**
+	 * Returns the port the server is bound to.
+	 *
+	 * @return Port
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns a report of queries per second since start, and latency percentiles.
+	 *
+	 * @return Report, one statistic per line
+	 */
+	public String stats() {
+		double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+		IndexSnapshot snapshot = engine.snapshot();
+		QueryCache cache = engine.cache;
+		return String.format("queries %d%nqps %.1f%nmean_us %.1f%np50_us %d%np90_us %d%np99_us %d%np999_us %d%n"
+				+ "cache_hits %d%ncache_misses %d%ncache_hit_ratio %.3f%ncache_evictions %d%n"
+				+ "index_version %d%ndocuments %d%nkeywords %d%n",
+				latency.count(), latency.count() / seconds, latency.mean(), latency.percentile(0.50),
+				latency.percentile(0.90), latency.percentile(0.99), latency.percentile(0.999),
+				cache.hits(), cache.misses(), cache.hitRatio(), cache.evictions(),
+				snapshot.version(), snapshot.documentCount(), snapshot.termCount());
+	}
+
+	/**
+	 * A query from request parameters to a result list.
+	 */
+	private interface Query {
+		ArrayList<String> run(Map<String,String> params);
+	}
+
+	private void query(HttpExchange exchange, Query query) throws IOException {
+		long start = System.nanoTime();
+		int status = 200;
+		StringBuilder body = new StringBuilder();
+		try {
+			ArrayList<String> result = query.run(params(exchange.getRequestURI().getRawQuery()));
+			if (result != null) {
+				for (String document : result) {
+					body.append(document).append('\n');
+				}
+			}
+		} catch (RuntimeException e) {
+			status = 400;
+			body.append(e).append('\n');
+		}
+		latency.record((System.nanoTime() - start) / 1000);
+		respond(exchange, status, body.toString());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String,String> params(String query) throws UnsupportedEncodingException {
+		Map<String,String> params = new HashMap<>();
+		if (query == null) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Starts a server, then builds the index while it serves, so that load tests see snapshots
+	 * being published. Stats and indexing metrics are printed every 10 seconds, and the indexing
+	 * metrics are registered over JMX.
+	 *
+	 * @param args port, docs file, noise words file, and optionally "positional"
+	 * @throws Exception If the server can't start or the index can't be built
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("usage: QueryServer port docsFile noiseWordsFile [positional]");
+			return;
+		}
+		ToySearchEngine engine = new ToySearchEngine(args.length > 3 && args[3].equals("positional"));
+		QueryServer server = new QueryServer(engine, Integer.parseInt(args[0]),
+				Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
+		server.start();
+		System.out.println("serving on port " + server.port());
+		engine.metrics().register("query-server-" + server.port());
+		engine.metrics().log(System.out, 10, TimeUnit.SECONDS);
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(() -> System.out.print(server.stats()), 10, 10, TimeUnit.SECONDS);
+		engine.buildIndex(args[1], args[2]);
+		System.out.println("index built, version " + engine.snapshot().version());
+	}
+}
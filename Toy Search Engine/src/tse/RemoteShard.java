@@ -0,0 +1,165 @@
+package tse;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class is a shard served by a ShardServer, possibly in another process. Requests go over
+ * one connection, one at a time, so a RemoteShard answers one query at a time however many
+ * threads use it; the connection is opened again if it breaks. Fields are encoded as
+ * ShardServer describes. Connecting and waiting for a response time out, so a hung shard
+ * fails its queries instead of holding up every later one.
+ *
+ */
+public class RemoteShard implements Shard {
+
+	/**
+	 * Milliseconds to wait for a connection to the shard server.
+	 */
+	static final int CONNECT_TIMEOUT = 5000;
+
+	/**
+	 * Milliseconds to wait for each line of a response.
+	 */
+	static final int READ_TIMEOUT = 30000;
+
+	/**
+	 * Address of the shard server.
+	 */
+	private final String host;
+	private final int port;
+
+	/**
+	 * The open connection, null if there is none.
+	 */
+	private Socket socket;
+	private BufferedReader in;
+	private PrintWriter out;
+
+	/**
+	 * Initializes a shard served at the given address. Nothing is connected until the first request.
+	 *
+	 * @param host Host name
+	 * @param port Port
+	 */
+	public RemoteShard(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public List<SearchHit> top(String kw1, String kw2, int k) throws IOException {
+		return hits("TOP " + k + " " + ShardServer.encode(kw1) + " " + ShardServer.encode(kw2));
+	}
+
+	public List<SearchHit> wildcard(String pattern, int k) throws IOException {
+		return hits("WILDCARD " + k + " " + ShardServer.encode(pattern));
+	}
+
+	public int documentFrequency(String keyword) throws IOException {
+		return Integer.parseInt(request("DF " + ShardServer.encode(keyword), 0).get(0));
+	}
+
+	public int documentCount() throws IOException {
+		return Integer.parseInt(request("COUNT", 0).get(0));
+	}
+
+	/**
+	 * Closes the connection, if open.
+	 */
+	public synchronized void close() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing more to do
+			}
+			socket = null;
+		}
+	}
+
+	private List<SearchHit> hits(String request) throws IOException {
+		List<String> lines = request(request, 1);
+		List<SearchHit> hits = new ArrayList<SearchHit>(lines.size() - 1);
+		for (String line : lines.subList(1, lines.size())) {
+			int tab = line.indexOf('\t');
+			hits.add(new SearchHit(ShardServer.decode(line.substring(tab + 1)), Integer.parseInt(line.substring(0, tab))));
+		}
+		return hits;
+	}
+
+	/**
+	 * Sends a request and reads the response. If the request fails on a connection left open by an
+	 * earlier one, which the server may have dropped since, it is sent once more on a new one. An
+	 * error answered by the server is not retried, and leaves the connection open.
+	 *
+	 * @param request Request line
+	 * @param counted 1 if the first line of the response is the number of lines that follow
+	 * @return Response lines
+	 * @throws ServerError If the shard answers with an error
+	 * @throws IOException If the shard can't be reached, times out or answers something garbled
+	 */
+	private synchronized List<String> request(String request, int counted) throws IOException {
+		for (;;) {
+			boolean reused = socket != null;
+			try {
+				if (socket == null) {
+					socket = new Socket();
+					socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+					socket.setSoTimeout(READ_TIMEOUT);
+					in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+					out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+				}
+				out.print(request + "\n");
+				out.flush();
+				List<String> lines = new ArrayList<String>();
+				lines.add(readLine());
+				if (counted == 1) {
+					int n = Integer.parseInt(lines.get(0));
+					for (int i = 0; i < n; i++) {
+						lines.add(readLine());
+					}
+				}
+				return lines;
+			} catch (ServerError e) {
+				throw e;
+			} catch (IOException e) {
+				close();
+				// Waiting for a hung shard again would only double the wait
+				if (!reused || e instanceof SocketTimeoutException) {
+					throw e;
+				}
+			} catch (RuntimeException e) {
+				// The rest of the response, if any, is still unread, so the connection is out of step
+				close();
+				throw new IOException("shard " + host + ":" + port + " sent a bad response to " + request, e);
+			}
+		}
+	}
+
+	private String readLine() throws IOException {
+		String line = in.readLine();
+		if (line == null) {
+			throw new EOFException("shard " + host + ":" + port + " closed the connection");
+		}
+		if (line.startsWith("ERR")) {
+			throw new ServerError("shard " + host + ":" + port + ": " + ShardServer.decode(line.substring(3).trim()));
+		}
+		return line;
+	}
+
+	/**
+	 * An error the shard server answered a request with. The connection is still in step, so it is
+	 * kept, and the request is not sent again.
+	 */
+	public static class ServerError extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ServerError(String message) {
+			super(message);
+		}
+	}
+}
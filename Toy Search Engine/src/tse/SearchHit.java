@@ -0,0 +1,47 @@
+package tse;
+
+/**
+ * This class is a document in a query result, with its score. Hits are ordered by descending
+ * score, ties broken by document name, the same order as TopK.
+ *
+ */
+public class SearchHit implements Comparable<SearchHit> {
+
+	/**
+	 * Document name.
+	 */
+	public final String document;
+
+	/**
+	 * Score of the document for the query.
+	 */
+	public final int score;
+
+	/**
+	 * Initializes a hit.
+	 *
+	 * @param document Document name
+	 * @param score Score
+	 */
+	public SearchHit(String document, int score) {
+		this.document = document;
+		this.score = score;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	public int compareTo(SearchHit other) {
+		if (score != other.score) {
+			return score > other.score ? -1 : 1;
+		}
+		return document.compareTo(other.document);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + document + "," + score + ")";
+	}
+}
@@ -0,0 +1,51 @@
+package tse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface is one shard of a ShardedSearchEngine: an index of some of the documents. A
+ * document is indexed by exactly one shard, so scores computed by a shard are final.
+ *
+ */
+public interface Shard {
+
+	/**
+	 * Finds the k documents of this shard with the highest total frequency of two keywords.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param k Number of documents
+	 * @return Up to k hits, best first
+	 * @throws IOException If a remote shard can't be reached
+	 */
+	List<SearchHit> top(String kw1, String kw2, int k) throws IOException;
+
+	/**
+	 * Finds the k documents of this shard with the highest total frequency of the keywords
+	 * matching a pattern.
+	 *
+	 * @param pattern Keyword pattern, in lower case
+	 * @param k Number of documents
+	 * @return Up to k hits, best first
+	 * @throws IOException If a remote shard can't be reached
+	 */
+	List<SearchHit> wildcard(String pattern, int k) throws IOException;
+
+	/**
+	 * Returns the number of documents of this shard that a keyword occurs in.
+	 *
+	 * @param keyword Keyword
+	 * @return Document frequency
+	 * @throws IOException If a remote shard can't be reached
+	 */
+	int documentFrequency(String keyword) throws IOException;
+
+	/**
+	 * Returns the number of documents in this shard.
+	 *
+	 * @return Number of documents
+	 * @throws IOException If a remote shard can't be reached
+	 */
+	int documentCount() throws IOException;
+}
@@ -0,0 +1,237 @@
+package tse;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class serves a shard over a plain socket, so that shards can run in separate processes
+ * and be queried with RemoteShard. The protocol is line based, one request per line, any number
+ * of requests per connection:
+ *
+ *   TOP k kw1 kw2         n, then n lines of "score TAB document"
+ *   WILDCARD k pattern    n, then n lines of "score TAB document"
+ *   DF keyword            document frequency of the keyword
+ *   COUNT                 number of documents
+ *
+ * Fields are separated by single spaces. Keywords, patterns and documents are URL-encoded (UTF-8),
+ * so whatever characters they have, a field never holds a space, tab or line break, and an empty
+ * one is an empty field; a null keyword is sent as "~", which encoding never gives. A request
+ * that can't be answered gets one line starting with "ERR".
+ *
+ */
+public class ShardServer {
+
+	/**
+	 * Shard being served.
+	 */
+	private final Shard shard;
+
+	/**
+	 * Socket connections are accepted on.
+	 */
+	private final ServerSocket socket;
+
+	/**
+	 * Threads connections are handled on.
+	 */
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+
+	/**
+	 * Connections being served, so stop can close them: closing the pool does not interrupt a
+	 * thread waiting for a client's next request.
+	 */
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Connections that could not be accepted, and the last reason.
+	 */
+	private final LongAdder acceptFailures = new LongAdder();
+	private volatile String lastError;
+
+	/**
+	 * Initializes a server for a shard on the given port of the loopback address.
+	 *
+	 * @param shard Shard to serve
+	 * @param port Port, 0 for any free port
+	 * @throws IOException If the port can't be bound
+	 */
+	public ShardServer(Shard shard, int port) throws IOException {
+		this.shard = shard;
+		socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Returns the port the server is bound to.
+	 *
+	 * @return Port
+	 */
+	public int port() {
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * Starts accepting connections, on a thread of its own.
+	 */
+	public void start() {
+		pool.execute(() -> {
+			while (!socket.isClosed()) {
+				try {
+					Socket connection = socket.accept();
+					connections.add(connection);
+					if (socket.isClosed()) {
+						// stop ran between accept and add, and did not see this one
+						connection.close();
+						break;
+					}
+					pool.execute(() -> serve(connection));
+				} catch (IOException e) {
+					if (!socket.isClosed()) {
+						acceptFailures.increment();
+						lastError = e.toString();
+						System.err.println("shard server on port " + port() + " could not accept: " + e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of connections that could not be accepted.
+	 *
+	 * @return Number of failed accepts
+	 */
+	public long acceptFailures() {
+		return acceptFailures.sum();
+	}
+
+	/**
+	 * Returns why the last connection could not be accepted.
+	 *
+	 * @return Error, null if there was none
+	 */
+	public String lastError() {
+		return lastError;
+	}
+
+	/**
+	 * Stops accepting connections, and closes the ones open.
+	 *
+	 * @throws IOException If the socket can't be closed
+	 */
+	public void stop() throws IOException {
+		socket.close();
+		for (Socket connection : connections) {
+			connection.close();
+		}
+		pool.shutdownNow();
+	}
+
+	private void serve(Socket connection) {
+		try (Socket s = connection;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				try {
+					answer(line.split(" ", -1), out);
+				} catch (RuntimeException e) {
+					out.print("ERR " + encode(e.toString()) + "\n");
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// The client went away, or stop closed the connection
+		} finally {
+			connections.remove(connection);
+		}
+	}
+
+	private void answer(String[] request, PrintWriter out) throws IOException {
+		switch (request[0]) {
+		case "TOP":
+			write(shard.top(decode(request[2]), decode(request[3]), Integer.parseInt(request[1])), out);
+			break;
+		case "WILDCARD":
+			write(shard.wildcard(decode(request[2]), Integer.parseInt(request[1])), out);
+			break;
+		case "DF":
+			out.print(shard.documentFrequency(decode(request[1])) + "\n");
+			break;
+		case "COUNT":
+			out.print(shard.documentCount() + "\n");
+			break;
+		default:
+			out.print("ERR unknown+request+" + encode(request[0]) + "\n");
+		}
+	}
+
+	private static void write(List<SearchHit> hits, PrintWriter out) {
+		out.print(hits.size() + "\n");
+		for (SearchHit hit : hits) {
+			out.print(hit.score + "\t" + encode(hit.document) + "\n");
+		}
+	}
+
+	/**
+	 * Encodes a field of a request or response.
+	 *
+	 * @param field Keyword, pattern or document, may be null
+	 * @return Field with no spaces, tabs or line breaks
+	 */
+	static String encode(String field) {
+		try {
+			return field == null ? "~" : URLEncoder.encode(field, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e); // UTF-8 is always supported
+		}
+	}
+
+	/**
+	 * Decodes a field encoded by encode.
+	 *
+	 * @param field Encoded field
+	 * @return Keyword, pattern or document, null if a null was encoded
+	 * @throws IllegalArgumentException If the field is not encoded properly
+	 */
+	static String decode(String field) {
+		try {
+			return field.equals("~") ? null : URLDecoder.decode(field, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Builds one shard of an index and serves it. The shard indexes the documents that
+	 * ShardedSearchEngine.shardOf assigns to it.
+	 *
+	 * @param args port, docs file, noise words file, shard number, number of shards
+	 * @throws Exception If the index can't be built or the port can't be bound
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 5) {
+			System.err.println("usage: ShardServer port docsFile noiseWordsFile shard shardCount");
+			return;
+		}
+		int shard = Integer.parseInt(args[3]), shardCount = Integer.parseInt(args[4]);
+		ArrayList<String> docFiles = new ArrayList<String>();
+		try (Scanner sc = new Scanner(new File(args[1]))) {
+			while (sc.hasNext()) {
+				String docFile = sc.next();
+				if (ShardedSearchEngine.shardOf(docFile, shardCount) == shard) {
+					docFiles.add(docFile);
+				}
+			}
+		}
+		ToySearchEngine engine = new ToySearchEngine();
+		engine.buildIndex(docFiles, args[2]);
+		ShardServer server = new ShardServer(new LocalShard(engine), Integer.parseInt(args[0]));
+		server.start();
+		System.out.println("shard " + shard + " of " + shardCount + ", " + docFiles.size()
+				+ " documents, serving on port " + server.port());
+	}
+}
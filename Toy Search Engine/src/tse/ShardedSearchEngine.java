@@ -0,0 +1,287 @@
+package tse;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class is a search engine whose documents are split among shards by a hash of the document
+ * name. A query is sent to every shard at once (scatter), each shard answers with its own top k,
+ * and the answers are merged into the overall top k (gather). Since every document is indexed by
+ * exactly one shard, a document's score in its shard is its final score, and the merged top k is
+ * the same as that of a single engine over all documents.
+ *
+ * Shards may be held in this JVM, or served by ShardServer processes and reached with RemoteShard.
+ *
+ */
+public class ShardedSearchEngine {
+
+	/**
+	 * The shards, in order: a document goes to shard shardOf(name, shards.size()).
+	 */
+	private final List<Shard> shards;
+
+	/**
+	 * Threads queries are sent to the shards on.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Initializes an engine with the given number of empty shards, held in this JVM.
+	 *
+	 * @param shardCount Number of shards
+	 */
+	public ShardedSearchEngine(int shardCount) {
+		this(localShards(shardCount));
+	}
+
+	/**
+	 * Initializes an engine over the given shards, which must already be built.
+	 *
+	 * @param shards Shards, in the order documents were assigned to them
+	 */
+	public ShardedSearchEngine(List<Shard> shards) {
+		this.shards = new ArrayList<Shard>(shards);
+		pool = Executors.newFixedThreadPool(shards.size(), r -> {
+			Thread thread = new Thread(r, "shard-query");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static List<Shard> localShards(int shardCount) {
+		List<Shard> shards = new ArrayList<Shard>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new LocalShard(new ToySearchEngine()));
+		}
+		return shards;
+	}
+
+	/**
+	 * Returns the shard a document belongs to. String.hashCode is the same in every JVM, so
+	 * separate ShardServer processes agree on the split.
+	 *
+	 * @param docFile Document name
+	 * @param shardCount Number of shards
+	 * @return Shard number, from 0 to shardCount-1
+	 */
+	public static int shardOf(String docFile, int shardCount) {
+		return Math.floorMod(docFile.hashCode(), shardCount);
+	}
+
+	/**
+	 * Splits the documents among the shards and indexes every shard, all shards at once. Only
+	 * shards held in this JVM can be built this way; remote shards are built by their own server.
+	 *
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 * @throws IllegalStateException If a shard is not held in this JVM
+	 */
+	public void buildIndex(String docsFile, String noiseWordsFile) throws FileNotFoundException {
+		List<List<String>> split = new ArrayList<List<String>>();
+		for (int i = 0; i < shards.size(); i++) {
+			if (!(shards.get(i) instanceof LocalShard)) {
+				throw new IllegalStateException("shard " + i + " is not held in this JVM");
+			}
+			split.add(new ArrayList<String>());
+		}
+		try (Scanner sc = new Scanner(new File(docsFile))) {
+			while (sc.hasNext()) {
+				String docFile = sc.next();
+				split.get(shardOf(docFile, shards.size())).add(docFile);
+			}
+		}
+
+		List<Future<?>> builds = new ArrayList<Future<?>>();
+		for (int i = 0; i < shards.size(); i++) {
+			ToySearchEngine engine = ((LocalShard) shards.get(i)).engine;
+			List<String> docFiles = split.get(i);
+			builds.add(pool.submit(() -> {
+				engine.buildIndex(docFiles, noiseWordsFile);
+				return null;
+			}));
+		}
+		for (Future<?> build : builds) {
+			try {
+				build.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while building shards", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof FileNotFoundException) {
+					throw (FileNotFoundException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", the same as ToySearchEngine.top5search over all documents.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of at most 5 documents in which either keyword occurs, best first. If there are no
+	 *         matches, returns null.
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return documents(top(kw1, kw2, 5));
+	}
+
+	/**
+	 * Search result for a keyword pattern, the same as ToySearchEngine.wildcardSearch over all
+	 * documents.
+	 *
+	 * @param pattern Keyword pattern, case-INsensitive
+	 * @return List of at most 5 documents in which a matching keyword occurs, best first. If there
+	 *         are no matches, returns null.
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public ArrayList<String> wildcardSearch(String pattern) {
+		return documents(wildcard(pattern.toLowerCase(), 5));
+	}
+
+	/**
+	 * Finds the k documents with the highest total frequency of two keywords, across all shards.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param k Number of documents
+	 * @return Up to k hits, best first
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public List<SearchHit> top(String kw1, String kw2, int k) {
+		return merge(scatter(shard -> shard.top(kw1, kw2, k)), k);
+	}
+
+	/**
+	 * Finds the k documents with the highest total frequency of the keywords matching a pattern,
+	 * across all shards.
+	 *
+	 * @param pattern Keyword pattern, in lower case
+	 * @param k Number of documents
+	 * @return Up to k hits, best first
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public List<SearchHit> wildcard(String pattern, int k) {
+		return merge(scatter(shard -> shard.wildcard(pattern, k)), k);
+	}
+
+	/**
+	 * Returns the number of documents a keyword occurs in, across all shards. Scores that weigh
+	 * keywords by rarity must use this global figure, not that of one shard.
+	 *
+	 * @param keyword Keyword
+	 * @return Document frequency
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public int documentFrequency(String keyword) {
+		int total = 0;
+		for (int df : scatter(shard -> shard.documentFrequency(keyword))) {
+			total += df;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of documents, across all shards.
+	 *
+	 * @return Number of documents
+	 * @throws UncheckedIOException If a remote shard can't be reached
+	 */
+	public int documentCount() {
+		int total = 0;
+		for (int count : scatter(Shard::documentCount)) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Stops the query threads. Remote shard connections are closed too.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+		for (Shard shard : shards) {
+			if (shard instanceof RemoteShard) {
+				((RemoteShard) shard).close();
+			}
+		}
+	}
+
+	/**
+	 * A request to one shard.
+	 */
+	private interface ShardRequest<T> {
+		T send(Shard shard) throws IOException;
+	}
+
+	/**
+	 * Sends a request to all shards at once, and waits for all answers.
+	 *
+	 * @param request Request
+	 * @return Answers, in shard order
+	 */
+	private <T> List<T> scatter(ShardRequest<T> request) {
+		List<Future<T>> futures = new ArrayList<Future<T>>(shards.size());
+		for (Shard shard : shards) {
+			futures.add(pool.submit(() -> request.send(shard)));
+		}
+		List<T> answers = new ArrayList<T>(shards.size());
+		for (Future<T> future : futures) {
+			try {
+				answers.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while waiting for shards", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw new UncheckedIOException((IOException) e.getCause());
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return answers;
+	}
+
+	/**
+	 * Merges the top k of every shard into the overall top k. Each shard's list is already in order,
+	 * so the lists are merged from their heads with a priority queue of one hit per shard.
+	 *
+	 * @param answers Hits of each shard, best first
+	 * @param k Number of hits to keep
+	 * @return Up to k hits, best first
+	 */
+	private static List<SearchHit> merge(List<List<SearchHit>> answers, int k) {
+		PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, answers.size()),
+				(a, b) -> answers.get(a[0]).get(a[1]).compareTo(answers.get(b[0]).get(b[1])));
+		for (int i = 0; i < answers.size(); i++) {
+			if (!answers.get(i).isEmpty()) {
+				heads.add(new int[] {i, 0});
+			}
+		}
+		List<SearchHit> merged = new ArrayList<SearchHit>(k);
+		while (merged.size() < k && !heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<SearchHit> answer = answers.get(head[0]);
+			merged.add(answer.get(head[1]));
+			if (++head[1] < answer.size()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+	private static ArrayList<String> documents(List<SearchHit> hits) {
+		if (hits.isEmpty()) {
+			return null;
+		}
+		ArrayList<String> documents = new ArrayList<String>(hits.size());
+		for (SearchHit hit : hits) {
+			documents.add(hit.document);
+		}
+		return documents;
+	}
+}
@@ -0,0 +1,184 @@
+package tse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class holds all keywords of an index in sorted order, so that the keywords starting with a
+ * prefix form one range that is found by binary search. Keyword bytes are copied into one array in
+ * sorted order, next to the keyword ids, so a range can be walked and matched against a wildcard
+ * pattern without going back to the dictionary.
+ *
+ * Wildcard patterns use '*' for any sequence of characters (including none) and '?' for exactly
+ * one character. The part of a pattern before its first wildcard is used as the prefix.
+ *
+ */
+public class SortedVocabulary {
+
+	/**
+	 * Bytes of all keywords, in sorted order of keywords.
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * Start of each keyword in bytes, by rank. The keyword ends where the next starts.
+	 */
+	private final int[] starts;
+
+	/**
+	 * Keyword id at each rank.
+	 */
+	private final int[] ids;
+
+	/**
+	 * Sorts the first count keywords of a dictionary.
+	 *
+	 * @param dictionary Dictionary of keywords
+	 * @param count Number of keywords, from id 0, to include
+	 */
+	public SortedVocabulary(TermDictionary dictionary, int count) {
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, dictionary::compare);
+		byte[][] terms = new byte[count][];
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			terms[i] = dictionary.term(order[i]).getBytes(StandardCharsets.UTF_8);
+			total += terms[i].length;
+		}
+		bytes = new byte[total];
+		starts = new int[count + 1];
+		ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(terms[i], 0, bytes, starts[i], terms[i].length);
+			starts[i + 1] = starts[i] + terms[i].length;
+			ids[i] = order[i];
+		}
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Returns the ids of all keywords matching a wildcard pattern, in sorted order of keywords.
+	 *
+	 * @param pattern Pattern, in lower case
+	 * @return Ids of matching keywords
+	 */
+	public int[] matching(String pattern) {
+		byte[] p = pattern.getBytes(StandardCharsets.UTF_8);
+		int literal = 0;
+		while (literal < p.length && p[literal] != '*' && p[literal] != '?') {
+			literal++;
+		}
+		// Ranks [from, to) hold exactly the keywords that start with the literal prefix
+		int from = lowerBound(p, literal);
+		int to = from < ids.length && startsWith(from, p, literal) ? upperBound(p, literal, from) : from;
+		int[] matches = new int[to - from];
+		int count = 0;
+		boolean prefixOnly = literal == p.length - 1 && p[literal] == '*';
+		for (int rank = from; rank < to; rank++) {
+			if (literal == p.length ? starts[rank + 1] - starts[rank] == literal
+					: prefixOnly || glob(p, literal, starts[rank] + literal, starts[rank + 1])) {
+				matches[count++] = ids[rank];
+			}
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Finds the first rank whose keyword is not before the given prefix.
+	 */
+	private int lowerBound(byte[] prefix, int length) {
+		int low = 0, high = ids.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, prefix, length) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first rank at or after from whose keyword does not start with the given prefix,
+	 * knowing that the keyword at from does.
+	 */
+	private int upperBound(byte[] prefix, int length, int from) {
+		int low = from, high = ids.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (startsWith(mid, prefix, length)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int compare(int rank, byte[] key, int length) {
+		int start = starts[rank], n = Math.min(starts[rank + 1] - start, length);
+		for (int i = 0; i < n; i++) {
+			int c = (bytes[start + i] & 0xFF) - (key[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return (starts[rank + 1] - start) - length;
+	}
+
+	private boolean startsWith(int rank, byte[] prefix, int length) {
+		int start = starts[rank];
+		if (starts[rank + 1] - start < length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (bytes[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Matches keyword bytes against a pattern, with backtracking to the last '*' on a mismatch.
+	 *
+	 * @param p Pattern
+	 * @param pi Index in the pattern to start at
+	 * @param ti Index in bytes to start at
+	 * @param end End of the keyword in bytes
+	 * @return True if the keyword matches the rest of the pattern
+	 */
+	private boolean glob(byte[] p, int pi, int ti, int end) {
+		int star = -1, mark = 0;
+		while (ti < end) {
+			if (pi < p.length && (p[pi] == '?' || p[pi] == bytes[ti])) {
+				pi++;
+				ti++;
+			} else if (pi < p.length && p[pi] == '*') {
+				star = pi++;
+				mark = ti;
+			} else if (star >= 0) {
+				pi = star + 1;
+				ti = ++mark;
+			} else {
+				return false;
+			}
+		}
+		while (pi < p.length && p[pi] == '*') {
+			pi++;
+		}
+		return pi == p.length;
+	}
+}
@@ -0,0 +1,382 @@
+package tse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class maps terms to dense int ids 0, 1, 2, ... in the order they are first added. The
+ * bytes of all terms are kept one after the other in an arena, and an open addressing hash table
+ * of ids is probed linearly, so a term costs its own bytes plus about 12 bytes of table. The arena
+ * and the table can be kept off the Java heap in direct buffers.
+ *
+ * Terms are never removed, and a filled slot is never emptied. So a view taken with view() can
+ * look up terms from other threads while the dictionary keeps growing: it knows of the first n
+ * ids, skips slots holding later ids as if they were still empty, and keeps the buffers it was
+ * taken with, which are only written beyond those n terms or replaced when they grow.
+ *
+ */
+public class TermDictionary {
+
+	/**
+	 * Bytes of all terms, one after the other.
+	 */
+	private ByteBuffer arena;
+
+	/**
+	 * Start of each term in the arena, indexed by id. A term ends where the next one starts.
+	 */
+	private IntBuffer starts;
+
+	/**
+	 * Hash table of id + 1, 0 for an empty slot. Size is a power of 2, at most half full.
+	 */
+	private IntBuffer slots;
+
+	/**
+	 * Number of terms.
+	 */
+	private int size;
+
+	/**
+	 * True if buffers are allocated off the heap.
+	 */
+	private final boolean offHeap;
+
+	/**
+	 * True if this is a view, to which terms can't be added.
+	 */
+	private final boolean frozen;
+
+	/**
+	 * Initializes an empty dictionary on the heap.
+	 */
+	public TermDictionary() {
+		this(false);
+	}
+
+	/**
+	 * Initializes an empty dictionary.
+	 *
+	 * @param offHeap True if the term bytes and the hash table should be kept in direct buffers
+	 */
+	public TermDictionary(boolean offHeap) {
+		this.offHeap = offHeap;
+		this.frozen = false;
+		arena = allocate(1024);
+		starts = allocateInts(64);
+		slots = allocateInts(128);
+		size = 0;
+	}
+
+	/**
+	 * Initializes a view of the terms a dictionary has now.
+	 *
+	 * @param source Dictionary
+	 */
+	private TermDictionary(TermDictionary source) {
+		offHeap = source.offHeap;
+		frozen = true;
+		arena = source.arena;
+		starts = source.starts;
+		slots = source.slots;
+		size = source.size;
+	}
+
+	/**
+	 * Returns a read only view of the terms in this dictionary now, which stays unchanged as terms
+	 * are added to this dictionary. Taking a view is cheap, buffers are shared.
+	 *
+	 * @return View of the dictionary
+	 */
+	public TermDictionary view() {
+		return frozen ? this : new TermDictionary(this);
+	}
+
+	/**
+	 * Returns the number of terms.
+	 *
+	 * @return Number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of a term.
+	 *
+	 * @param term Term
+	 * @return Id of the term, -1 if it is null or not in the dictionary
+	 */
+	public int id(String term) {
+		if (term == null) {
+			return -1;
+		}
+		if (!isAscii(term)) {
+			byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+			return id(bytes, 0, bytes.length);
+		}
+		int mask = slots.capacity() - 1;
+		for (int slot = hash(term) & mask; ; slot = (slot + 1) & mask) {
+			int id = slots.get(slot) - 1;
+			if (id < 0) {
+				return -1;
+			}
+			// Ids beyond size were added after this view was taken
+			if (id < size && matches(id, term)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of the term held in part of a byte array.
+	 *
+	 * @param bytes Array holding the term, in UTF-8
+	 * @param offset Start of the term in the array
+	 * @param length Number of bytes in the term
+	 * @return Id of the term, -1 if it is not in the dictionary
+	 */
+	public int id(byte[] bytes, int offset, int length) {
+		int mask = slots.capacity() - 1;
+		for (int slot = hash(bytes, offset, length) & mask; ; slot = (slot + 1) & mask) {
+			int id = slots.get(slot) - 1;
+			if (id < 0) {
+				return -1;
+			}
+			if (id < size && matches(id, bytes, offset, length)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Adds a term if it is not already in the dictionary.
+	 *
+	 * @param term Term
+	 * @return Id of the term
+	 * @throws UnsupportedOperationException If this is a view
+	 */
+	public int add(String term) {
+		byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+		return add(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Adds the term held in part of a byte array, if it is not already in the dictionary.
+	 *
+	 * @param bytes Array holding the term, in UTF-8
+	 * @param offset Start of the term in the array
+	 * @param length Number of bytes in the term
+	 * @return Id of the term
+	 * @throws UnsupportedOperationException If this is a view
+	 */
+	public int add(byte[] bytes, int offset, int length) {
+		if (frozen) {
+			throw new UnsupportedOperationException("can't add to a dictionary view");
+		}
+		int mask = slots.capacity() - 1;
+		int slot = hash(bytes, offset, length) & mask;
+		for (int id; (id = slots.get(slot) - 1) >= 0; slot = (slot + 1) & mask) {
+			if (matches(id, bytes, offset, length)) {
+				return id;
+			}
+		}
+		int id = size;
+		if (id + 2 > starts.capacity()) {
+			starts = grow(starts, starts.capacity() * 2);
+		}
+		int start = starts.get(id);
+		if (start + length > arena.capacity()) {
+			ByteBuffer bigger = allocate(Math.max(arena.capacity() * 2, start + length));
+			ByteBuffer old = arena.duplicate();
+			old.clear();
+			bigger.put(old);
+			arena = bigger;
+		}
+		for (int i = 0; i < length; i++) {
+			arena.put(start + i, bytes[offset + i]);
+		}
+		starts.put(id + 1, start + length);
+		size = id + 1;
+		if (size * 2 > slots.capacity()) {
+			rehash();
+		} else {
+			slots.put(slot, id + 1);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the term with the given id.
+	 *
+	 * @param id Term id
+	 * @return Term
+	 */
+	public String term(int id) {
+		int start = starts.get(id);
+		byte[] bytes = new byte[starts.get(id + 1) - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = arena.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares two terms by their bytes, taken as unsigned. For ASCII terms this is the same order as
+	 * String.compareTo.
+	 *
+	 * @param id1 First term id
+	 * @param id2 Second term id
+	 * @return Negative, zero or positive as the first term is before, the same as or after the second
+	 */
+	public int compare(int id1, int id2) {
+		int s1 = starts.get(id1), e1 = starts.get(id1 + 1);
+		int s2 = starts.get(id2), e2 = starts.get(id2 + 1);
+		int n = Math.min(e1 - s1, e2 - s2);
+		for (int i = 0; i < n; i++) {
+			int c = (arena.get(s1 + i) & 0xFF) - (arena.get(s2 + i) & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return (e1 - s1) - (e2 - s2);
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by this dictionary, on or off the heap.
+	 *
+	 * @return Bytes used
+	 */
+	public long bytesUsed() {
+		return arena.capacity() + 4L * starts.capacity() + 4L * slots.capacity();
+	}
+
+	private boolean matches(int id, String term) {
+		int start = starts.get(id);
+		int length = term.length();
+		if (starts.get(id + 1) - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (arena.get(start + i) != term.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matches(int id, byte[] bytes, int offset, int length) {
+		int start = starts.get(id);
+		if (starts.get(id + 1) - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (arena.get(start + i) != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves all ids into a table twice the size.
+	 */
+	private void rehash() {
+		IntBuffer bigger = allocateInts(slots.capacity() * 2);
+		int mask = bigger.capacity() - 1;
+		for (int id = 0; id < size; id++) {
+			int start = starts.get(id);
+			int slot = hash(start, starts.get(id + 1) - start) & mask;
+			while (bigger.get(slot) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			bigger.put(slot, id + 1);
+		}
+		slots = bigger;
+	}
+
+	private IntBuffer grow(IntBuffer buffer, int capacity) {
+		IntBuffer bigger = allocateInts(capacity);
+		IntBuffer old = buffer.duplicate();
+		old.clear();
+		bigger.put(old);
+		bigger.clear();
+		return bigger;
+	}
+
+	private ByteBuffer allocate(int bytes) {
+		return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+	}
+
+	private IntBuffer allocateInts(int ints) {
+		if (offHeap) {
+			return ByteBuffer.allocateDirect(ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.allocate(ints);
+	}
+
+	private int hash(int start, int length) {
+		int h = 0;
+		for (int i = start; i < start + length; i++) {
+			h = 31 * h + arena.get(i);
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Hashes term bytes.
+	 *
+	 * @param bytes Array holding the term
+	 * @param offset Start of the term in the array
+	 * @param length Number of bytes in the term
+	 * @return Hash code
+	 */
+	static int hash(byte[] bytes, int offset, int length) {
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Hashes an ASCII term the same way as its bytes.
+	 *
+	 * @param term ASCII term
+	 * @return Hash code
+	 */
+	private static int hash(String term) {
+		int h = 0;
+		for (int i = 0; i < term.length(); i++) {
+			h = 31 * h + term.charAt(i);
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Mixes every bit of a polynomial hash into every other (the MurmurHash3 finalizer). The slots
+	 * are probed linearly from the low bits, and short terms differ only in the low bits of 31 * h
+	 * + c, so without mixing they fill runs of adjacent slots and lookups walk those runs.
+	 *
+	 * @param h Polynomial hash
+	 * @return Mixed hash
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean isAscii(String term) {
+		for (int i = 0; i < term.length(); i++) {
+			if (term.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
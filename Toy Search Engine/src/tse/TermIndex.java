@@ -0,0 +1,341 @@
+package tse;
+
+import java.util.*;
+
+/**
+ * This class is the index of all keys. Keywords are mapped to int ids by a TermDictionary, and
+ * documents to int ids by the order they are first seen. The postings of a keyword are kept in
+ * parallel primitive arrays indexed by its id: the documents it occurs in, and its frequency in
+ * each, maintained in DESCENDING order of frequencies. Alongside, the documents of each keyword
+ * are kept in a DocBitmap, for boolean queries.
+ *
+ * An IndexSnapshot taken with snapshot() shares the postings arrays of this index. Arrays are
+ * copied before they are written to for the first time after a snapshot, so that a snapshot never
+ * changes.
+ *
+ */
+public class TermIndex {
+
+	/**
+	 * Keyword ids.
+	 */
+	final TermDictionary terms;
+
+	/**
+	 * Document names, indexed by document id. Names are only ever appended.
+	 */
+	private String[] documents;
+
+	/**
+	 * Number of documents.
+	 */
+	private int documentCount;
+
+	/**
+	 * Document ids, by name.
+	 */
+	private final HashMap<String,Integer> documentIds;
+
+	/**
+	 * Documents of each keyword's postings, indexed by keyword id.
+	 */
+	int[][] docs;
+
+	/**
+	 * Frequencies of each keyword's postings, parallel to docs.
+	 */
+	int[][] freqs;
+
+	/**
+	 * Positions of each keyword's postings, parallel to docs. Null if the index is not positional.
+	 */
+	PositionList[][] positions;
+
+	/**
+	 * Documents of each keyword, as bitmaps, indexed by keyword id.
+	 */
+	DocBitmap[] bitmaps;
+
+	/**
+	 * Number of postings of each keyword, indexed by keyword id.
+	 */
+	int[] lengths;
+
+	/**
+	 * Largest document id in each keyword's postings. A document with a larger id can be appended
+	 * without looking for an existing posting.
+	 */
+	private int[] maxDoc;
+
+	/**
+	 * Number of snapshots taken so far.
+	 */
+	private int epoch;
+
+	/**
+	 * Epoch in which each keyword's postings arrays were last copied. Arrays copied in the current
+	 * epoch are not shared with any snapshot, and can be written in place.
+	 */
+	private int[] copied;
+
+	/**
+	 * Initializes an empty index.
+	 *
+	 * @param positional True if positions are kept with postings
+	 * @param offHeap True if the keyword dictionary should be kept off the heap
+	 */
+	public TermIndex(boolean positional, boolean offHeap) {
+		terms = new TermDictionary(offHeap);
+		documents = new String[16];
+		documentCount = 0;
+		documentIds = new HashMap<String,Integer>();
+		docs = new int[64][];
+		freqs = new int[64][];
+		positions = positional ? new PositionList[64][] : null;
+		bitmaps = new DocBitmap[64];
+		lengths = new int[64];
+		maxDoc = new int[64];
+		copied = new int[64];
+		epoch = 0;
+	}
+
+	/**
+	 * Returns the id of a document, giving it the next id if it has not been seen before.
+	 *
+	 * @param name Document name
+	 * @return Document id
+	 */
+	public int documentId(String name) {
+		Integer id = documentIds.get(name);
+		if (id == null) {
+			id = documentCount;
+			if (id == documents.length) {
+				documents = Arrays.copyOf(documents, id * 2);
+			}
+			documents[id] = name;
+			documentCount = id + 1;
+			documentIds.put(name, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param id Document id
+	 * @return Document name
+	 */
+	public String document(int id) {
+		return documents[id];
+	}
+
+	/**
+	 * Returns the number of documents seen.
+	 *
+	 * @return Number of documents
+	 */
+	public int documentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the id of a keyword.
+	 *
+	 * @param keyword Keyword
+	 * @return Keyword id, -1 if the keyword is not in the index
+	 */
+	public int termId(String keyword) {
+		return terms.id(keyword);
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords
+	 */
+	public int termCount() {
+		return terms.size();
+	}
+
+	/**
+	 * Returns the number of documents a keyword occurs in.
+	 *
+	 * @param term Keyword id
+	 * @return Number of postings
+	 */
+	public int postings(int term) {
+		return lengths[term];
+	}
+
+	/**
+	 * Adds the occurrence of a keyword in a document. If the keyword already has a posting for the
+	 * document, the frequencies are added. Either way the posting is moved to its place in
+	 * descending order of frequencies, using the same binary search as insertLastOccurrence in
+	 * ToySearchEngine, so ties end up in the same order.
+	 *
+	 * @param keyword Keyword
+	 * @param doc Document id
+	 * @param frequency Frequency of the keyword in the document
+	 * @param pos Positions of the keyword in the document, null if not recorded
+	 */
+	public void add(String keyword, int doc, int frequency, PositionList pos) {
+		int term = terms.add(keyword);
+		if (term == lengths.length) {
+			int capacity = lengths.length * 2;
+			docs = Arrays.copyOf(docs, capacity);
+			freqs = Arrays.copyOf(freqs, capacity);
+			if (positions != null) {
+				positions = Arrays.copyOf(positions, capacity);
+			}
+			bitmaps = Arrays.copyOf(bitmaps, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			maxDoc = Arrays.copyOf(maxDoc, capacity);
+			copied = Arrays.copyOf(copied, capacity);
+		}
+		int length = lengths[term];
+		if (length == 0) {
+			docs[term] = new int[2];
+			freqs[term] = new int[2];
+			if (positions != null) {
+				positions[term] = new PositionList[2];
+			}
+			bitmaps[term] = new DocBitmap();
+			maxDoc[term] = -1;
+			copied[term] = epoch;
+		} else if (copied[term] != epoch) {
+			// The arrays are shared with a snapshot, write to copies instead
+			docs[term] = docs[term].clone();
+			freqs[term] = freqs[term].clone();
+			if (positions != null) {
+				positions[term] = positions[term].clone();
+			}
+			bitmaps[term] = bitmaps[term].copy();
+			copied[term] = epoch;
+		}
+		int[] d = docs[term], f = freqs[term];
+
+		// Look for an existing posting, only possible if the document was merged before
+		if (doc <= maxDoc[term]) {
+			for (int i = 0; i < length; i++) {
+				if (d[i] == doc) {
+					f[i] += frequency;
+					if (positions != null && positions[term][i] != null && pos != null) {
+						positions[term][i] = PositionList.merge(positions[term][i], pos);
+					}
+					// The frequency went up, move the posting towards the front
+					for (; i > 0 && f[i - 1] < f[i]; i--) {
+						swap(term, i, i - 1);
+					}
+					return;
+				}
+			}
+		}
+
+		if (length == d.length) {
+			docs[term] = d = Arrays.copyOf(d, length * 2);
+			freqs[term] = f = Arrays.copyOf(f, length * 2);
+			if (positions != null) {
+				positions[term] = Arrays.copyOf(positions[term], length * 2);
+			}
+		}
+		int at = insertionPoint(f, length, frequency);
+		System.arraycopy(d, at, d, at + 1, length - at);
+		System.arraycopy(f, at, f, at + 1, length - at);
+		d[at] = doc;
+		f[at] = frequency;
+		if (positions != null) {
+			System.arraycopy(positions[term], at, positions[term], at + 1, length - at);
+			positions[term][at] = pos;
+		}
+		bitmaps[term].add(doc);
+		lengths[term] = length + 1;
+		maxDoc[term] = Math.max(maxDoc[term], doc);
+	}
+
+	/**
+	 * Returns the occurrences of a keyword, in descending order of frequencies.
+	 *
+	 * @param keyword Keyword
+	 * @return List of occurrences, null if the keyword is not in the index
+	 */
+	public ArrayList<Occurrence> occurrences(String keyword) {
+		int term = terms.id(keyword);
+		if (term < 0) {
+			return null;
+		}
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>(lengths[term]);
+		for (int i = 0; i < lengths[term]; i++) {
+			Occurrence occ = new Occurrence(documents[docs[term][i]], freqs[term][i]);
+			if (positions != null) {
+				occ.positions = positions[term][i];
+			}
+			occs.add(occ);
+		}
+		return occs;
+	}
+
+	/**
+	 * Takes an immutable snapshot of this index. The snapshot shares the dictionary buffers and the
+	 * postings arrays, only the arrays of references to them are copied.
+	 *
+	 * @param version Version number of the snapshot
+	 * @return Snapshot of the index as it is now
+	 */
+	public IndexSnapshot snapshot(long version) {
+		int count = terms.size();
+		IndexSnapshot snapshot = new IndexSnapshot(version, terms.view(), documents, documentCount,
+				Arrays.copyOf(docs, count), Arrays.copyOf(freqs, count),
+				positions == null ? null : Arrays.copyOf(positions, count), Arrays.copyOf(bitmaps, count),
+				Arrays.copyOf(lengths, count));
+		epoch++;
+		return snapshot;
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by this index.
+	 *
+	 * @return Bytes used
+	 */
+	public long bytesUsed() {
+		long bytes = terms.bytesUsed() + 8L * 5 * lengths.length;
+		for (int term = 0; term < terms.size(); term++) {
+			bytes += 2 * (16 + 4L * docs[term].length) + bitmaps[term].bytesUsed();
+			if (positions != null) {
+				bytes += 16 + 8L * positions[term].length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Finds where a posting with the given frequency goes among the first length postings, which
+	 * are in descending order of frequencies.
+	 *
+	 * @param f Frequencies
+	 * @param length Number of postings
+	 * @param frequency Frequency of the posting to insert
+	 * @return Index to insert at
+	 */
+	private static int insertionPoint(int[] f, int length, int frequency) {
+		int low = 0, high = length - 1;
+		while (low <= high) {
+			int mid = (low + high) / 2;
+			if (f[mid] == frequency) {
+				return mid + 1;
+			} else if (f[mid] < frequency) {
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	private void swap(int term, int i, int j) {
+		int t = docs[term][i]; docs[term][i] = docs[term][j]; docs[term][j] = t;
+		t = freqs[term][i]; freqs[term][i] = freqs[term][j]; freqs[term][j] = t;
+		if (positions != null) {
+			PositionList p = positions[term][i]; positions[term][i] = positions[term][j]; positions[term][j] = p;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package tse;
+
+import java.util.ArrayList;
+import java.util.function.IntFunction;
+
+/**
+ * This class keeps the k documents with the highest scores offered to it. Ties in score are
+ * broken by document name, smaller name first. Documents are offered by id, and names are only
+ * looked up to break ties among the documents that are kept.
+ *
+ */
+public class TopK {
+
+	/**
+	 * Document names, by id.
+	 */
+	private final IntFunction<String> names;
+
+	/**
+	 * Kept documents and their scores, best first.
+	 */
+	private final int[] docs, scores;
+
+	/**
+	 * Number of documents kept.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty top k.
+	 *
+	 * @param names Document names, by id
+	 * @param k Number of documents to keep
+	 */
+	public TopK(IntFunction<String> names, int k) {
+		this.names = names;
+		docs = new int[k];
+		scores = new int[k];
+		size = 0;
+	}
+
+	/**
+	 * Offers a document. It is kept if it beats the worst document kept so far, or there is room.
+	 *
+	 * @param doc Document id
+	 * @param score Score of the document
+	 */
+	public void offer(int doc, int score) {
+		if (docs.length == 0 || (size == docs.length && !before(doc, score, size - 1))) {
+			return;
+		}
+		int i = size < docs.length ? size++ : size - 1;
+		// Shift worse documents down to make room
+		for (; i > 0 && before(doc, score, i - 1); i--) {
+			docs[i] = docs[i - 1];
+			scores[i] = scores[i - 1];
+		}
+		docs[i] = doc;
+		scores[i] = score;
+	}
+
+	/**
+	 * Returns the number of documents kept.
+	 *
+	 * @return Number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the kept document at a rank.
+	 *
+	 * @param rank Rank, 0 for the best
+	 * @return Document id
+	 */
+	public int document(int rank) {
+		return docs[rank];
+	}
+
+	/**
+	 * Returns the score of the kept document at a rank.
+	 *
+	 * @param rank Rank, 0 for the best
+	 * @return Score
+	 */
+	public int score(int rank) {
+		return scores[rank];
+	}
+
+	/**
+	 * Returns the names of the kept documents, best first.
+	 *
+	 * @return List of document names, null if no document was kept
+	 */
+	public ArrayList<String> documents() {
+		if (size == 0) {
+			return null;
+		}
+		ArrayList<String> result = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(names.apply(docs[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the kept documents with their scores, best first.
+	 *
+	 * @return List of hits, empty if no document was kept
+	 */
+	public ArrayList<SearchHit> hits() {
+		ArrayList<SearchHit> hits = new ArrayList<SearchHit>(size);
+		for (int i = 0; i < size; i++) {
+			hits.add(new SearchHit(names.apply(docs[i]), scores[i]));
+		}
+		return hits;
+	}
+
+	private boolean before(int doc, int score, int rank) {
+		if (score != scores[rank]) {
+			return score > scores[rank];
+		}
+		return names.apply(doc).compareTo(names.apply(docs[rank])) < 0;
+	}
+}
@@ -6,119 +6,187 @@ import java.util.*;
 /**
  * This class builds an index of keywords. Each keyword maps to a set of pages in
  * which it occurs, with frequency of occurrence in each page.
+ * 
+ * Queries are answered from the latest published IndexSnapshot, which is immutable, so
+ * any number of threads may query while one thread goes on indexing. buildIndex publishes a
+ * new snapshot every PUBLISH_INTERVAL documents. Documents added with mergeKeys are published
+ * by the next query, or by snapshot() or publish(), so merging many documents in a row
+ * publishes once, not once per document.
  *
  */
 public class ToySearchEngine {
 	
 	/**
-	 * This is a hash table of all keys. The key is the actual keyword, and the associated value is
-	 * an array list of all occurrences of the keyword in documents. The array list is maintained in 
-	 * DESCENDING order of frequencies.
+	 * This is the index of all keys. Each keyword is mapped to an int id, and the postings of a keyword
+	 * (the documents it occurs in, with its frequency in each) are kept in primitive arrays indexed
+	 * by that id. Postings are maintained in DESCENDING order of frequencies.
 	 */
-	HashMap<String,ArrayList<Occurrence>> keysIndex;
+	TermIndex keysIndex;
 	
 	/**
 	 * The hash set of all noise words.
 	 */
 	HashSet<String> noiseWords;
 	
+	/**
+	 * True if word positions are recorded with every occurrence, which is needed for
+	 * phrase and proximity queries.
+	 */
+	boolean positional;
+	
+	/**
+	 * Number of documents buildIndex indexes between publishing snapshots.
+	 */
+	static final int PUBLISH_INTERVAL = 64;
+	
+	/**
+	 * The latest published snapshot of keysIndex, read by queries without locking.
+	 */
+	private volatile IndexSnapshot snapshot;
+	
+	/**
+	 * True if mergeKeys has added documents that are not published yet.
+	 */
+	private volatile boolean unpublished;
+	
+	/**
+	 * Version of the latest published snapshot.
+	 */
+	private long version;
+	
+	/**
+	 * Largest number of query results cached.
+	 */
+	static final int CACHE_CAPACITY = 10000;
+	
+	/**
+	 * Cache of query results. Results are only reused for the snapshot version they were
+	 * computed from, so every publish invalidates them.
+	 */
+	final QueryCache cache = new QueryCache(CACHE_CAPACITY);
+	
+	/**
+	 * Counters and timers of the indexing pipeline: reading, tokenizing, merging and publishing.
+	 */
+	final IndexMetrics metrics = new IndexMetrics(() -> snapshot);
+	
 	/**
 	 * Creates the keysIndex and noiseWords hash tables.
 	 */
 	public ToySearchEngine() {
-		keysIndex = new HashMap<String,ArrayList<Occurrence>>(1000,2.0f);
+		this(false);
+	}
+	
+	/**
+	 * Creates the keysIndex and noiseWords hash tables.
+	 * 
+	 * @param positional True if word positions should be recorded with every occurrence
+	 */
+	public ToySearchEngine(boolean positional) {
+		this(positional, false);
+	}
+	
+	/**
+	 * Creates the keysIndex and noiseWords hash tables.
+	 * 
+	 * @param positional True if word positions should be recorded with every occurrence
+	 * @param offHeap True if the keyword dictionary should be kept off the Java heap
+	 */
+	public ToySearchEngine(boolean positional, boolean offHeap) {
+		keysIndex = new TermIndex(positional, offHeap);
 		noiseWords = new HashSet<String>(100,2.0f);
+		this.positional = positional;
+		version = 0;
+		snapshot = keysIndex.snapshot(version);
 	}
 	
 	/**
 	 * Scans a document, and loads all keywords found into a hash table of key occurrences
-	 * in the document. Uses the getKey method to separate keywords from other words.
+	 * in the document. Keywords are separated from other words by the same rules as the getKey
+	 * method, applied by a DocumentReader directly to the bytes of the file. Words that are not
+	 * keywords are skipped. A document that can't be read, including one that is not found, is
+	 * counted as failed in the metrics, and gives no keywords, so the rest are still indexed.
 	 * 
 	 * @param docFile Name of the document file to be scanned and loaded
 	 * @return Hash table of keys in the given document, each associated with an Occurrence object
-	 * @throws FileNotFoundException If the document file is not found on disk
+	 * @throws FileNotFoundException Not thrown any more, as a missing document is skipped
 	 */
 	public HashMap<String, Occurrence> loadKeysFromDocument(String docFile) throws FileNotFoundException {
-	    // Initialize a HashMap to store the occurrences of keywords in the doc
-	    HashMap<String, Occurrence> keysInDoc = new HashMap<>();
-	    
-	    // Open and read through docFile provided
-	    try (BufferedReader reader = new BufferedReader(new FileReader(docFile))) {
-	        String line;
-	        // Read each line in the document
-	        while ((line = reader.readLine()) != null) {
-	            // Split the line into words
-	            String[] words = line.split("\\s+");
-	            // Process each word
-	            for (String word : words) {
-	                // Get the keyword for the word
-	                String keyword = getKey(word);
-	                // Check if the keyword is not a noise word
-	                if (!noiseWords.contains(keyword)) {
-	                    // If the keyword already exists in the HashMap, update its occurrence frequency
-	                    if (keysInDoc.containsKey(keyword)) {
-	                        Occurrence occurrence = keysInDoc.get(keyword);
-	                        occurrence.frequency++;
-	                    } else { 
-	                    	// Else, add a new occurrence to the HashMap
-	                        Occurrence occurrence = new Occurrence(docFile, 1);
-	                        keysInDoc.put(keyword, occurrence);
-	                    }
-	                }
-	            }
-	        }
+	    try {
+	        return new DocumentReader(noiseWords, positional, metrics).read(docFile);
 	    } 
-	    // If exception, print stack trace
+	    // If exception, count the document as failed and go on without it
 	    catch (IOException e) {
-	        e.printStackTrace();
+	        metrics.documentFailed(docFile, e);
+	        System.err.println("skipping " + docFile + ": " + e);
+	        return new HashMap<>();
 	    }
-	    
-	    // Return the HashMap containing occurrences of keywords in the doc
-	    return keysInDoc;
 	}
 	/**
-	 * Merges the keys for a single document into the master keysIndex
-	 * hash table. For each key, its Occurrence in the current document
-	 * must be inserted in the correct place (according to descending order of
-	 * frequency) in the same key's Occurrence list in the master hash table. 
-	 * This is done by calling the insertLastOccurrence method.
+	 * Merges the keys for a single document into the master keysIndex.
+	 * For each key, its Occurrence in the current document is inserted in the
+	 * correct place (according to descending order of frequency) in the same
+	 * key's postings in the master index. The document is published by the next
+	 * query, so queries see it right away, but a run of merges with no queries in
+	 * between is published once, not once per document.
+	 * 
+	 * @param kws Keywords hash table for a document
+	 */
+	public synchronized void mergeKeys(HashMap<String, Occurrence> kws) {
+	    addKeys(kws);
+	    unpublished = true;
+	}
+	
+	/**
+	 * Adds the keys for a single document to keysIndex, without publishing.
 	 * 
 	 * @param kws Keywords hash table for a document
 	 */
-	public void mergeKeys(HashMap<String, Occurrence> kws) {
+	private void addKeys(HashMap<String, Occurrence> kws) {
+	    long start = metrics.start();
 	    // Iterate over each entry (keyword and occurrence) in the provided HashMap
 	    for (Map.Entry<String, Occurrence> entry : kws.entrySet()) {
-	        // Extract the keyword and occurrence from the entry
-	        String keyword = entry.getKey(); 
 	        Occurrence occ = entry.getValue(); 
-	        
-	        // Check if the keyword already exists in the keysIndex
-	        if (keysIndex.containsKey(keyword)) {
-	            // If the keyword exists, get the list of occurrences associated with it
-	            ArrayList<Occurrence> occList = keysIndex.get(keyword);
-	            boolean found = false;
-	            // Iterate over existing occurrences to find a match with the provided occurrence
-	            for (Occurrence existingOcc : occList) {
-	                // If an occurrence with the same doc is found, update its frequency
-	                if (existingOcc.document.equals(occ.document)) {
-	                    existingOcc.frequency += occ.frequency; // Update frequency
-	                    found = true;
-	                    break;
-	                }
-	            }
-	            // If no matching occurrence is found, add the provided occurrence to the list
-	            // and reorder occurrences based on frequency
-	            if (!found) {
-	                occList.add(occ); // Add occurrence from a different doc
-	                insertLastOccurrence(occList); // Reorder occurrences
-	            }
-	        } else {
-	            // If the keyword does not exist in keysIndex, create a new list and add the occurrence
-	            ArrayList<Occurrence> occList = new ArrayList<>();
-	            occList.add(occ);
-	            keysIndex.put(keyword, occList);
-	        }
+	        // Documents are numbered the first time they are seen
+	        int doc = keysIndex.documentId(occ.document);
+	        // Add to the keyword's postings, combining with an earlier posting for the same doc if any
+	        keysIndex.add(entry.getKey(), doc, occ.frequency, occ.positions);
 	    }
+	    metrics.merged(start);
+	}
+	
+	/**
+	 * Publishes a snapshot of keysIndex as it is now. Queries that start after this returns
+	 * see everything merged before it was called.
+	 * 
+	 * @return The published snapshot
+	 */
+	public synchronized IndexSnapshot publish() {
+	    long start = metrics.start();
+	    unpublished = false;
+	    snapshot = keysIndex.snapshot(++version);
+	    metrics.published(start);
+	    return snapshot;
+	}
+	
+	/**
+	 * Returns the latest published snapshot, first publishing documents merged with mergeKeys
+	 * since the last one. All queries are answered from it.
+	 * 
+	 * @return Latest snapshot of keysIndex
+	 */
+	public IndexSnapshot snapshot() {
+	    return unpublished ? publish() : snapshot;
+	}
+	
+	/**
+	 * Returns the metrics of the indexing pipeline. Register them with IndexMetrics.register to
+	 * see them over JMX, or print them with IndexMetrics.log.
+	 * 
+	 * @return Indexing metrics
+	 */
+	public IndexMetrics metrics() {
+	    return metrics;
 	}
 	
 	/**
@@ -213,6 +281,25 @@ public class ToySearchEngine {
 	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
 	 */
 	public void buildIndex(String docsFile, String noiseWordsFile) 
+	throws FileNotFoundException {
+		// read the names of all documents
+		ArrayList<String> docFiles = new ArrayList<String>();
+		Scanner sc = new Scanner(new File(docsFile));
+		while (sc.hasNext()) {
+			docFiles.add(sc.next());
+		}
+		sc.close();
+		buildIndex(docFiles, noiseWordsFile);
+	}
+	
+	/**
+	 * This method indexes all words found in the given documents, see buildIndex above.
+	 * 
+	 * @param docFiles Names of the document files
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public void buildIndex(Iterable<String> docFiles, String noiseWordsFile) 
 	throws FileNotFoundException {
 		// load noise words to hash table
 		Scanner sc = new Scanner(new File(noiseWordsFile));
@@ -220,15 +307,22 @@ public class ToySearchEngine {
 			String word = sc.next();
 			noiseWords.add(word);
 		}
+		sc.close();
 		
-		// index all words
-		sc = new Scanner(new File(docsFile));
-		while (sc.hasNext()) {
-			String docFile = sc.next();
+		// index all words, publishing every so often so queries can run meanwhile
+		int documents = 0;
+		for (String docFile : docFiles) {
 			HashMap<String,Occurrence> kws = loadKeysFromDocument(docFile);
-			mergeKeys(kws);
+			synchronized (this) {
+				addKeys(kws);
+				if (++documents % PUBLISH_INTERVAL == 0) {
+					publish();
+				}
+			}
 		}
-		sc.close();
+		
+		// publish, and sort the keywords for prefix and wildcard queries
+		publish().vocabulary();
 	}
 	
 	/**
@@ -245,76 +339,148 @@ public class ToySearchEngine {
 	 *         frequencies. The result size is limited to 5 documents. If there are no matches, returns null.
 	 */
 	public ArrayList<String> top5search(String kw1, String kw2) {
-	    // Create a map to store document frequencies
-	    HashMap<String, Integer> documentFreq = new HashMap<>();
-
-	    // Update document frequencies for both keywords
-	    updateDocFreq(documentFreq, kw1, kw2);
-
-	    // Sort document frequencies in descending order
-	    ArrayList<Map.Entry<String, Integer>> sortedFreq = new ArrayList<>(documentFreq.entrySet());
-	    sortedFreq.sort((entry1, entry2) -> {
-	        int freqComparison = entry2.getValue().compareTo(entry1.getValue());
-	        if (freqComparison == 0) {
-	            // If frequencies are equal, use lexicographical order for document names
-	            return entry1.getKey().compareTo(entry2.getKey());
-	        }
-	        return freqComparison;
-	    });
-
-	    // Create a list to store the top 5 documents
-	    ArrayList<String> top5Documents = new ArrayList<>();
-
-	    // Add top 5 documents to the result list
-	    int count = 0;
-	    for (Map.Entry<String, Integer> entry : sortedFreq) {
-	        top5Documents.add(entry.getKey());
-	        count++;
-	        if (count == 5) {
-	            break; // Limit reached
-	        }
+	    IndexSnapshot current = snapshot();
+	    
+	    // "kw1 or kw2" is the same query as "kw2 or kw1", so the cache key puts them in order
+	    String key1 = keyField(kw1), key2 = keyField(kw2);
+	    String key = key1.compareTo(key2) <= 0 ? "or:" + key1 + key2 : "or:" + key2 + key1;
+	    QueryCache.Result cached = cache.get(key, current.version());
+	    if (cached != null) {
+	        return cached.documents;
 	    }
-
-	    // Return the top 5 documents
 	    
-	    return top5Documents.isEmpty() ? null : top5Documents;
+	    // Add up the frequencies per document, keeping the 5 documents with the highest totals
+	    ArrayList<String> result = current.top(kw1, kw2, 5).documents();
+	    cache.put(key, current.version(), result);
+	    return result;
+	}
+	
+	/**
+	 * Writes a keyword as one field of a cache key: its length, a colon, then the keyword, so
+	 * that two fields read back only one way whatever characters the keywords have. A null keyword,
+	 * which matches nothing, is a lone dash.
+	 */
+	static String keyField(String keyword) {
+	    return keyword == null ? "-" : keyword.length() + ":" + keyword;
 	}
+	
 	/**
-	 * updateDocFreq gets occurrences of kw1 and kw2 from keysIndex, and uses these to adjust the frequencies 
-	 * of both keywords in documentFrequencies, a hashmap that contains the document name, and the frequency of the 
-	 * keyword in that document.
+	 * Returns all keywords in the index that match a pattern, in sorted order. In the pattern, '*'
+	 * stands for any sequence of letters (including none) and '?' for exactly one letter, so "rabb*"
+	 * gives all keywords that start with "rabb".
 	 * 
-	 * @param documentFrequencies Hashmap of document name, and frequency of a specified keyword in the document
-	 * @param kw1 keyword1, a string keyword1, that we are searching for
-	 * @param kw2 keyword2, a string keyword2, that we are searching for
+	 * @param pattern Keyword pattern, case-INsensitive
+	 * @return List of matching keywords, empty if there are none
 	 */
-	private void updateDocFreq(HashMap<String, Integer> documentFrequencies, String kw1, String kw2) {
-	    // Get occurrences for both keywords
-		// If there are no occurrences, an empty ArrayList is returned, as per getOrDefault
-	    ArrayList<Occurrence> occurrencesKw1 = keysIndex.getOrDefault(kw1, new ArrayList<>());
-	    ArrayList<Occurrence> occurrencesKw2 = keysIndex.getOrDefault(kw2, new ArrayList<>());
-	    
-	    //System.out.println("Occ of " + kw1 + ": " + occurrencesKw1);
-	    //System.out.println("Occ of " + kw2 + ": " + occurrencesKw2);
-
-	    // Update document frequencies based on frequency of kw1
-	    for (Occurrence occurrence : occurrencesKw1) {
-	        String document = occurrence.document;
-	        int frequency = occurrence.frequency;
-
-	        // Update document frequency by adding the frequency of the occurrence
-	        documentFrequencies.put(document, documentFrequencies.getOrDefault(document, 0) + frequency);
+	public ArrayList<String> matchingKeywords(String pattern) {
+	    IndexSnapshot current = snapshot();
+	    ArrayList<String> keywords = new ArrayList<>();
+	    for (int term : current.vocabulary().matching(pattern.toLowerCase())) {
+	        keywords.add(current.term(term));
 	    }
-	    
-	    // Update document frequencies based on frequency of kw2
-	    for (Occurrence occurrence : occurrencesKw2) {
-	        String document = occurrence.document;
-	        int frequency = occurrence.frequency;
-
-	        // Update document frequency by adding the frequency of the occurrence
-	        documentFrequencies.put(document, documentFrequencies.getOrDefault(document, 0) + frequency);
-	        
-	        //System.out.println("Document Freq: " + documentFrequencies);
+	    return keywords;
+	}
+	
+	/**
+	 * Search result for a keyword pattern such as "rabb*" (see matchingKeywords). A document is in the
+	 * result set if any matching keyword occurs in it, and its score is the total frequency of all
+	 * matching keywords in it. Result set is arranged in descending order of scores, ties broken by
+	 * document name, and is limited to 5 entries.
+	 * 
+	 * @param pattern Keyword pattern, case-INsensitive
+	 * @return List of documents in which a matching keyword occurs, at most 5. If there are no matches, returns null.
+	 */
+	public ArrayList<String> wildcardSearch(String pattern) {
+	    IndexSnapshot current = snapshot();
+	    String key = "wildcard:" + pattern.toLowerCase();
+	    QueryCache.Result cached = cache.get(key, current.version());
+	    if (cached != null) {
+	        return cached.documents;
 	    }
+	    ArrayList<String> result = current.wildcard(pattern.toLowerCase(), 5).documents();
+	    cache.put(key, current.version(), result);
+	    return result;
+	}
+	
+	/**
+	 * Search result for a boolean query, such as "alice AND (rabbit OR hole) AND NOT queen". The
+	 * operators are AND, OR and NOT, in upper case, and parentheses group; every other word is
+	 * taken as a keyword with getKey. A document is in the result set if it matches the query, and
+	 * its score is the total frequency in it of the query's keywords that are not under a NOT.
+	 * Result set is arranged in descending order of scores, ties broken by document name, and is
+	 * limited to 5 entries.
+	 * 
+	 * @param query Boolean query
+	 * @return List of matching documents, at most 5. If there are no matches, returns null.
+	 * @throws IllegalArgumentException If the query is not well formed
+	 */
+	public ArrayList<String> booleanSearch(String query) {
+	    return booleanSearch(BooleanQuery.parse(query, this::getKey));
+	}
+	
+	/**
+	 * Search result for a boolean query built with the BooleanQuery factory methods, see above.
+	 * 
+	 * @param query Boolean query, with keywords in lower case
+	 * @return List of matching documents, at most 5. If there are no matches, returns null.
+	 */
+	public ArrayList<String> booleanSearch(BooleanQuery query) {
+	    IndexSnapshot current = snapshot();
+	    String key = "bool:" + query.key();
+	    QueryCache.Result cached = cache.get(key, current.version());
+	    if (cached != null) {
+	        return cached.documents;
+	    }
+	    ArrayList<String> result = current.bool(query, 5).documents();
+	    cache.put(key, current.version(), result);
+	    return result;
+	}
+	
+	/**
+	 * Search result for a phrase, such as "white rabbit". A document is in the result set if all
+	 * keywords of the phrase occur in it at the same relative positions as in the phrase. Noise words
+	 * in the phrase are not looked up, but they still take up a position, so "down the hole" matches
+	 * "down the hole" and "down a hole", but not "down hole". Result set is arranged in descending
+	 * order of the number of times the phrase occurs, ties broken by document name, and is limited
+	 * to 5 entries. Only the index is consulted, documents are not read again.
+	 * 
+	 * @param phrase Words of the phrase, separated by whitespace
+	 * @return List of documents that contain the phrase, at most 5. If there are no matches, returns null.
+	 * @throws IllegalStateException If the index was not built in positional mode
+	 */
+	public ArrayList<String> phraseSearch(String phrase) {
+	    // Collect the keywords of the phrase with their offsets from the start of the phrase
+	    ArrayList<String> keywords = new ArrayList<>();
+	    ArrayList<Integer> offsets = new ArrayList<>();
+	    int offset = 0;
+	    for (String word : phrase.trim().split("\\s+")) {
+	        String keyword = getKey(word);
+	        if (keyword != null) {
+	            keywords.add(keyword);
+	            offsets.add(offset);
+	        }
+	        offset++;
+	    }
+	    int[] offsetArray = new int[offsets.size()];
+	    for (int i = 0; i < offsetArray.length; i++) {
+	        offsetArray[i] = offsets.get(i);
+	    }
+	    return snapshot().phrase(keywords.toArray(new String[0]), offsetArray, 5).documents();
+	}
+	
+	/**
+	 * Search result for "kw1 near kw2". A document is in the result set if kw1 and kw2 occur in it,
+	 * in either order, no more than window words apart. Result set is arranged in descending order of
+	 * the number of occurrences of kw1 that have kw2 nearby, ties broken by document name, and is
+	 * limited to 5 entries.
+	 * 
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param window Largest distance, in words, between the two keywords
+	 * @return List of documents in which kw1 occurs near kw2, at most 5. If there are no matches, returns null.
+	 * @throws IllegalStateException If the index was not built in positional mode
+	 */
+	public ArrayList<String> proximitySearch(String kw1, String kw2, int window) {
+	    return snapshot().proximity(kw1, kw2, window, 5).documents();
 	}
 }